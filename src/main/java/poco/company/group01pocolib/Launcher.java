@@ -6,6 +6,7 @@
  */
 package poco.company.group01pocolib;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 
@@ -16,6 +17,7 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import poco.company.group01pocolib.db.DBWatcher;
 import poco.company.group01pocolib.mvc.controller.PocoLibController;
 import poco.company.group01pocolib.mvc.model.*;
 
@@ -34,11 +36,20 @@ public class Launcher extends Application {
     public static final String USER_SET_SERIALIZED_PATH = "data/ser/userset.ser";
     public static final String LENDING_SET_SERIALIZED_PATH = "data/ser/lendingset.ser";
 
+    // System property enabling the checksum column of the DB files, e.g. `-Dpocolib.checksums=true`
+    public static final String CHECKSUMS_PROPERTY = "pocolib.checksums";
+
+    // System property enabling the write-behind mode of the DBs, e.g. `-Dpocolib.writeBehind=true`
+    public static final String WRITE_BEHIND_PROPERTY = "pocolib.writeBehind";
+
     // Sets
     private static BookSet bookSet;
     private static UserSet userSet;
     private static LendingSet lendingSet;
 
+    // Watcher of the DB files, `null` if they can't be watched
+    private static DBWatcher dbWatcher;
+
     /**
      * @brief   Restores the book set of the application.
      * @details Uses the `loadFromSerialized` method to restore the data.
@@ -63,6 +74,35 @@ public class Launcher extends Application {
         return LendingSet.loadFromSerialized(LENDING_SET_SERIALIZED_PATH, LENDING_SET_DB_PATH, bookSet, userSet);
     }
 
+    /**
+     * @brief   Starts watching the DB files, so that records edited by hand while the application is running show up
+     *          right away.
+     * @details The changes found by the watcher are applied to the sets on the JavaFX Application Thread, the only one
+     *          touching the sets, and the tabs are refreshed afterwards. If the DB files can't be watched, external
+     *          edits are only noticed on the next startup.
+     *
+     * @param   controller The main controller, whose tabs show the sets.
+     */
+    private static void startWatchingDBs(PocoLibController controller) {
+        try {
+            dbWatcher = new DBWatcher();
+            dbWatcher.watch(bookSet.getBookDB(), diff -> Platform.runLater(() -> {
+                bookSet.applyExternalChanges(diff);
+                controller.refreshTabData();
+            }));
+            dbWatcher.watch(userSet.getUserDB(), diff -> Platform.runLater(() -> {
+                userSet.applyExternalChanges(diff);
+                controller.refreshTabData();
+            }));
+            dbWatcher.watch(lendingSet.getLendingDB(), diff -> Platform.runLater(() -> {
+                lendingSet.applyExternalChanges(diff, bookSet, userSet);
+                controller.refreshTabData();
+            }));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * @brief Starts the JavaFX application by loading the main FXML layout and setting up the primary stage.
      * @param stage The primary stage for this application.
@@ -81,8 +121,28 @@ public class Launcher extends Application {
         userSet = restoreUserSet();
         lendingSet = restoreLendingSet();
 
+        // Lines are stored with a checksum only if asked to, since the column gets in the way of editing the DB files
+        // by hand (a DB file converted once keeps its checksums, which are detected when it is loaded)
+        if (Boolean.getBoolean(CHECKSUMS_PROPERTY)) {
+            bookSet.getBookDB().setChecksummed(true);
+            userSet.getUserDB().setChecksummed(true);
+            lendingSet.getLendingDB().setChecksummed(true);
+        }
+
+        // Saves can be persisted by the flusher threads of the DBs, so that they never block the UI, only if asked to,
+        // since an edit made right before a crash is lost if it didn't reach the DB file yet
+        if (Boolean.getBoolean(WRITE_BEHIND_PROPERTY)) {
+            bookSet.getBookDB().setWriteBehind(true);
+            userSet.getUserDB().setWriteBehind(true);
+            lendingSet.getLendingDB().setWriteBehind(true);
+        }
+
+        // Old returned lendings are moved to the archive, so that the live lending DB only grows with active ones
+        lendingSet.archiveOldLendings();
+
         controller.loadData(bookSet, userSet, lendingSet);
         controller.refreshTabData();
+        startWatchingDBs(controller);
 
         stage.setScene(new Scene(root));
         stage.setTitle("PocoLib");
@@ -96,6 +156,20 @@ public class Launcher extends Application {
             Task<Void> saveTask = new Task<>() {
                 @Override
                 protected Void call() {
+                    // The application is writing the DB files one last time, there's nothing to reconcile anymore
+                    if (dbWatcher != null) {
+                        try {
+                            dbWatcher.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+
+                    // Pending edits must reach the DB files before the hashes saved along with the sets are valid
+                    bookSet.getBookDB().close();
+                    userSet.getUserDB().close();
+                    lendingSet.getLendingDB().close();
+
                     bookSet.saveToSerialized();
                     userSet.saveToSerialized();
                     lendingSet.saveToSerialized();
@@ -0,0 +1,182 @@
+package poco.company.group01pocolib.db;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @class   BinaryRecordFile
+ * @brief   Reads and writes files of binary records, the binary counterpart of a text DB file.
+ * @details The file starts with a header holding a magic number, the version of the format, the hash of the DB
+ *          content the records were written from, the schema of the records and their number. Each record follows as
+ *          its fields, in the order of the schema: strings are length-prefixed UTF-8, integers are fixed-width and dates
+ *          are epoch days, so records are decoded without any text parsing.
+ */
+class BinaryRecordFile {
+    static final int MAGIC = 0x50524543;       ///< "PREC"
+    static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * @brief   Writes records to a file, atomically replacing it.
+     *
+     * @param   file        The file to write.
+     * @param   codec       The codec converting the items to records.
+     * @param   items       The items to write.
+     * @param   sourceHash  The hash of the DB content the items come from.
+     * @throws  IOException If the file can't be written.
+     */
+    static <T> void write(Path file, RecordCodec<T> codec, Collection<T> items, String sourceHash) throws IOException {
+        RecordSchema schema = codec.getSchema();
+        Path tempFile = file.resolveSibling(file.getFileName() + DB.TEMP_EXTENSION);
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(sourceHash);
+                schema.writeTo(output);
+                output.writeInt(items.size());
+
+                for (T item : items) {
+                    Object[] record = codec.toRecord(item);
+                    for (int i = 0; i < schema.getFieldCount(); i++) {
+                        writeField(output, schema.getType(i), record[i]);
+                    }
+                }
+            }
+
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @brief   Reads the records of a file, if they were written from the expected DB content with the same schema.
+     *
+     * @param   file        The file to read.
+     * @param   codec       The codec converting the records to items.
+     * @param   sourceHash  The hash of the DB content the records are expected to come from.
+     * @return  The items read, in file order, or `null` if the file comes from a different DB content or schema.
+     * @throws  IOException If the file can't be read or is corrupted.
+     */
+    static <T> List<T> read(Path file, RecordCodec<T> codec, String sourceHash) throws IOException {
+        RecordSchema schema = codec.getSchema();
+
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return null;
+            if (!input.readUTF().equals(sourceHash)) return null;
+            if (!RecordSchema.readFrom(input).equals(schema)) return null;
+
+            int recordCount = input.readInt();
+            List<T> items = new ArrayList<>(recordCount);
+
+            for (int r = 0; r < recordCount; r++) {
+                Object[] record = new Object[schema.getFieldCount()];
+                for (int i = 0; i < record.length; i++) {
+                    record[i] = readField(input, schema.getType(i));
+                }
+
+                T item = codec.fromRecord(record);
+                if (item != null) items.add(item);
+            }
+
+            return items;
+        }
+    }
+
+    /**
+     * @brief   Writes a field of a record.
+     *
+     * @param   output  The output to write to.
+     * @param   type    The type of the field.
+     * @param   value   The value of the field.
+     * @throws  IOException If the output can't be written.
+     */
+    private static void writeField(DataOutput output, FieldType type, Object value) throws IOException {
+        switch (type) {
+            case STRING -> writeString(output, (String) value);
+            case STRING_LIST -> {
+                List<?> list = (List<?>) value;
+                output.writeInt(list.size());
+                for (Object element : list) {
+                    writeString(output, (String) element);
+                }
+            }
+            case INT -> output.writeInt((Integer) value);
+            case BOOLEAN -> output.writeBoolean((Boolean) value);
+            case DATE -> output.writeLong(((LocalDate) value).toEpochDay());
+        }
+    }
+
+    /**
+     * @brief   Reads a field of a record.
+     *
+     * @param   input   The input to read from.
+     * @param   type    The type of the field.
+     * @return  The value of the field.
+     * @throws  IOException If the input can't be read.
+     */
+    private static Object readField(DataInput input, FieldType type) throws IOException {
+        return switch (type) {
+            case STRING -> readString(input);
+            case STRING_LIST -> {
+                int size = input.readInt();
+                List<String> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readString(input));
+                }
+                yield list;
+            }
+            case INT -> input.readInt();
+            case BOOLEAN -> input.readBoolean();
+            case DATE -> LocalDate.ofEpochDay(input.readLong());
+        };
+    }
+
+    /**
+     * @brief   Writes a length-prefixed UTF-8 string, unlike `DataOutput.writeUTF` not limited to 64 KB.
+     *
+     * @param   output  The output to write to.
+     * @param   value   The string to write, possibly `null`.
+     * @throws  IOException If the output can't be written.
+     */
+    private static void writeString(DataOutput output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL_LENGTH);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * @brief   Reads a length-prefixed UTF-8 string.
+     *
+     * @param   input The input to read from.
+     * @return  The string read, possibly `null`.
+     * @throws  IOException If the input can't be read.
+     */
+    private static String readString(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length == NULL_LENGTH) return null;
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,175 @@
+package poco.company.group01pocolib.db;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * @class   BloomFilter
+ * @brief   Set of keys that can tell for sure that a key is not in it, using a few bits per key.
+ * @details Each key sets `hashCount` bits of a bit array, chosen by two halves of its XXH64 hash (the i-th bit is
+ *          `h1 + i * h2`). A key whose bits are not all set was never added; a key whose bits are all set was
+ *          probably added, with a false positive rate that stays close to the one the filter was sized for as long
+ *          as no more keys than its capacity are added.
+ *          <br><br>
+ *          Bits can't be cleared, since they are shared by several keys: removed keys are only counted, and keep
+ *          answering "maybe" until the filter is rebuilt from the keys left. `needsRebuild` tells when that is
+ *          worth it, i.e. when the filter is over capacity, or when too many of its keys were removed.
+ *          <br><br>
+ *          The filter is `Serializable`, so it's saved along with the set that owns it.
+ */
+public class BloomFilter implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    public static final int MIN_CAPACITY = 64;
+
+    /// A rebuild is needed once more than this fraction of the added keys were removed
+    static final double MAX_REMOVED_RATIO = 0.25;
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private final double falsePositiveRate;
+
+    private int added;      ///< Keys added, counting a key once per `add`
+    private int removed;    ///< Keys removed since the filter was built
+
+    /**
+     * @brief   Creates an empty filter.
+     *
+     * @param   capacity            The number of keys the filter is sized for.
+     * @param   falsePositiveRate   The rate of false positives when the filter holds `capacity` keys, between 0 and 1.
+     */
+    public BloomFilter(int capacity, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid false positive rate: " + falsePositiveRate);
+        }
+
+        this.capacity = Math.max(MIN_CAPACITY, capacity);
+        this.falsePositiveRate = falsePositiveRate;
+
+        // Optimal sizes: m = -n ln(p) / ln(2)^2 bits and k = m / n ln(2) hashes
+        double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bitCount = (long) Math.ceil(this.capacity * bitsPerKey);
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, bitCount));
+        this.hashCount = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+        this.bits = new long[(this.bitCount + 63) / 64];
+    }
+
+    /**
+     * @brief   Creates a filter holding some keys, sized for twice their number, so that it can grow before it
+     *          needs to be rebuilt.
+     *
+     * @param   keys                The keys.
+     * @param   falsePositiveRate   The rate of false positives when the filter is full, between 0 and 1.
+     * @return  The filter.
+     */
+    public static BloomFilter of(Collection<String> keys, double falsePositiveRate) {
+        BloomFilter filter = new BloomFilter(2 * keys.size(), falsePositiveRate);
+        for (String key : keys) {
+            filter.add(key);
+        }
+        return filter;
+    }
+
+    /**
+     * @brief   Adds a key to the filter.
+     * @param   key The key.
+     */
+    public void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < this.hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, this.bitCount);
+            this.bits[bit >>> 6] |= 1L << bit;
+        }
+        this.added++;
+    }
+
+    /**
+     * @brief   Checks whether a key may have been added to the filter.
+     *
+     * @param   key The key.
+     * @return  `false` if the key was never added, `true` if it probably was.
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < this.hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, this.bitCount);
+            if ((this.bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @brief   Records that a key was removed. The bits of the key stay set until the filter is rebuilt.
+     */
+    public void recordRemoval() {
+        this.removed++;
+    }
+
+    /**
+     * @brief   Checks whether the filter should be rebuilt from the keys it should hold.
+     * @return  `true` if more keys than its capacity were added, or if more than `MAX_REMOVED_RATIO` of the added
+     *          keys were removed.
+     */
+    public boolean needsRebuild() {
+        return this.added > this.capacity || this.removed > MAX_REMOVED_RATIO * Math.max(this.added, MIN_CAPACITY);
+    }
+
+    /**
+     * @brief   Gets the number of keys the filter is sized for.
+     * @return  The capacity of the filter.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @brief   Gets the false positive rate the filter is sized for.
+     * @return  The false positive rate at capacity.
+     */
+    public double getFalsePositiveRate() {
+        return this.falsePositiveRate;
+    }
+
+    /**
+     * @brief   Gets the size of the bit array of the filter.
+     * @return  The number of bits.
+     */
+    public int getBitCount() {
+        return this.bitCount;
+    }
+
+    /**
+     * @brief   Gets the number of bits set for each key.
+     * @return  The number of hashes.
+     */
+    public int getHashCount() {
+        return this.hashCount;
+    }
+
+    /**
+     * @brief   Hashes a key with XXH64.
+     *
+     * @param   key The key.
+     * @return  The 64-bit hash of the UTF-8 bytes of the key.
+     */
+    private static long hash(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+
+        XxHash64 hasher = new XxHash64(0);
+        hasher.update(bytes, 0, bytes.length);
+        return ByteBuffer.wrap(hasher.digest()).getLong();
+    }
+}
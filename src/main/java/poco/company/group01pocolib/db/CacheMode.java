@@ -0,0 +1,12 @@
+package poco.company.group01pocolib.db;
+
+/**
+ * @enum    CacheMode
+ * @brief   Defines how a {@link poco.company.group01pocolib.db.DB DB} keeps the lines of its file in memory.
+ */
+public enum CacheMode {
+    EAGER,      ///< Every line of the DB file is loaded on the heap when the cache is built
+    PAGED,      ///< Only an index of line offsets is built, lines are loaded in fixed-size pages on demand
+    COMPRESSED, ///< The DB file is stored as independently compressed blocks of lines, decompressed on demand
+    OFF_HEAP    ///< Every line of the DB file is loaded as UTF-8 bytes off the heap, and decoded when it is read
+}
@@ -0,0 +1,321 @@
+package poco.company.group01pocolib.db;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * @class   ChecksummedLineList
+ * @brief   A view of the lines of a DB file that adds and verifies a CRC32C checksum column on each line.
+ * @details When checksums are enabled, every line written through the view is stored followed by
+ *          `CHECKSUM_SEPARATOR` and the CRC32C of its UTF-8 bytes, as 8 hexadecimal digits. The column is stripped
+ *          when a line is read, and the checksum is verified right then, so a line costs nothing until it is
+ *          actually read (and verifying it takes a single pass of the hardware-accelerated `CRC32C`).
+ *          <br><br>
+ *          A line whose checksum doesn't match is quarantined: it is reported and copied to the quarantine file, and
+ *          read as `null`, so that a damaged line is skipped on its own instead of being parsed as if it were valid.
+ *          The damaged line is kept as it is in the backing list (and so in the DB file) until it is overwritten or
+ *          removed.
+ *          <br><br>
+ *          Lines without the checksum column are read as they are, since they were written by hand (e.g. while
+ *          editing the DB file in a text editor) rather than damaged, and get their column with `addMissingChecksums`.
+ *          Only a line holding a `CHECKSUM_SEPARATOR` that isn't the start of a complete column is damaged. This also
+ *          lets a DB file be switched between the two formats line by line.
+ */
+class ChecksummedLineList extends AbstractList<String> implements RandomAccess, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    static final char CHECKSUM_SEPARATOR = '\u001D';
+    private static final int CHECKSUM_DIGITS = 8;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final List<String> storedLines;
+    private boolean checksummed;
+    private String quarantinePath;
+    private long version;           ///< Incremented by every edit of the lines
+
+    /// Damaged lines already quarantined, so that reading them again doesn't report them again
+    private transient Set<String> quarantined;
+
+    /**
+     * @brief   Creates a view over the lines stored in a DB file.
+     *
+     * @param   storedLines     The lines as they are stored in the DB file.
+     * @param   quarantinePath  The file damaged lines are copied to.
+     */
+    ChecksummedLineList(List<String> storedLines, String quarantinePath) {
+        this.storedLines = storedLines;
+        this.quarantinePath = quarantinePath;
+    }
+
+    /**
+     * @brief   Gets the lines as they are stored in the DB file, checksum column included.
+     * @return  The backing list of the view.
+     */
+    List<String> getStoredLines() {
+        return this.storedLines;
+    }
+
+    /**
+     * @brief   Creates a view with the same format and quarantine file as this one over other stored lines.
+     * @details Damaged lines already quarantined by this view are not reported again by the new one.
+     *
+     * @param   storedLines The lines as they are stored in the DB file.
+     * @return  The view over the lines.
+     */
+    ChecksummedLineList viewOf(List<String> storedLines) {
+        ChecksummedLineList view = new ChecksummedLineList(storedLines, this.quarantinePath);
+        view.checksummed = this.checksummed;
+        view.version = this.version;
+
+        synchronized (this) {
+            if (this.quarantined == null) this.quarantined = ConcurrentHashMap.newKeySet();
+            view.quarantined = this.quarantined;
+        }
+        return view;
+    }
+
+    /**
+     * @brief   Gets the version of the lines, incremented by every edit and every time they are loaded again.
+     * @return  The version of the lines.
+     */
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @brief   Marks the stored lines as loaded again from the DB file, bypassing the view.
+     */
+    void reloaded() {
+        this.version++;
+    }
+
+    /**
+     * @brief   Sets the file damaged lines are copied to.
+     * @param   quarantinePath The path of the quarantine file.
+     */
+    void setQuarantinePath(String quarantinePath) {
+        this.quarantinePath = quarantinePath;
+    }
+
+    /**
+     * @brief   Checks whether lines are written with a checksum column.
+     * @return  `true` if checksums are enabled.
+     */
+    boolean isChecksummed() {
+        return this.checksummed;
+    }
+
+    /**
+     * @brief   Enables or disables checksums, converting every stored line to the new format.
+     * @details Damaged lines keep their checksum column either way, so that they are still recognized as damaged.
+     *
+     * @param   checksummed `true` to enable checksums.
+     */
+    void setChecksummed(boolean checksummed) {
+        this.checksummed = checksummed;
+        this.version++;
+
+        for (int i = 0; i < this.storedLines.size(); i++) {
+            String stored = this.storedLines.get(i);
+
+            if (checksummed && !hasChecksumColumn(stored)) {
+                this.storedLines.set(i, encode(stored));
+            } else if (!checksummed && hasChecksumColumn(stored) && !isDamaged(stored)) {
+                this.storedLines.set(i, strip(stored));
+            }
+        }
+    }
+
+    /**
+     * @brief   Adds the checksum column to the stored lines that don't have it, if checksums are enabled.
+     * @details Lines without the column were written by hand, so their content is taken as it is. Damaged lines are
+     *          left alone.
+     *
+     * @return  The number of lines that got a checksum column.
+     */
+    int addMissingChecksums() {
+        if (!this.checksummed) return 0;
+
+        int added = 0;
+        for (int i = 0; i < this.storedLines.size(); i++) {
+            String stored = this.storedLines.get(i);
+
+            if (!hasChecksumColumn(stored) && !isDamaged(stored)) {
+                this.storedLines.set(i, encode(stored));
+                added++;
+            }
+        }
+
+        if (added > 0) this.version++;
+        return added;
+    }
+
+    /**
+     * @brief   Detects whether the stored lines have a checksum column, after they were loaded from the DB file.
+     * @details Only the first and the last line are checked, so that a single damaged line can't hide the format of
+     *          the file. An empty file keeps the current format.
+     */
+    void detectChecksums() {
+        if (this.storedLines.isEmpty()) return;
+
+        this.checksummed = hasChecksumColumn(this.storedLines.getFirst())
+                || hasChecksumColumn(this.storedLines.getLast());
+    }
+
+    /**
+     * @brief   Gets a line, verifying its checksum.
+     *
+     * @param   index The position of the line.
+     * @return  The line without its checksum column, or `null` if the line is damaged.
+     */
+    @Override
+    public String get(int index) {
+        String stored = this.storedLines.get(index);
+
+        if (!isDamaged(stored)) return strip(stored);
+
+        this.quarantine(index, stored);
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return this.storedLines.size();
+    }
+
+    @Override
+    public String set(int index, String line) {
+        String replaced = strip(this.storedLines.set(index, this.encode(line)));
+        this.version++;
+
+        return replaced;
+    }
+
+    @Override
+    public void add(int index, String line) {
+        this.storedLines.add(index, this.encode(line));
+        this.modCount++;
+        this.version++;
+    }
+
+    @Override
+    public String remove(int index) {
+        String removed = strip(this.storedLines.remove(index));
+        this.modCount++;
+        this.version++;
+
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        this.storedLines.clear();
+        this.modCount++;
+        this.version++;
+    }
+
+    /**
+     * @brief   Checks whether a stored line is damaged.
+     * @details A line without the checksum column was written by hand, and is not damaged, unless it holds a
+     *          `CHECKSUM_SEPARATOR`, which means that its column is there but was cut short or damaged itself.
+     *
+     * @param   stored The line as it is stored in the DB file.
+     * @return  `true` if the checksum of the line doesn't match its content.
+     */
+    boolean isDamaged(String stored) {
+        if (!hasChecksumColumn(stored)) return stored.indexOf(CHECKSUM_SEPARATOR) != -1;
+
+        int contentLength = stored.length() - CHECKSUM_DIGITS - 1;
+        try {
+            return HexFormat.fromHexDigits(stored, contentLength + 1, stored.length())
+                    != checksum(stored.substring(0, contentLength));
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @brief   Reports a damaged line and copies it to the quarantine file, the first time it is found.
+     *
+     * @param   index   The position of the line.
+     * @param   stored  The line as it is stored in the DB file.
+     */
+    private void quarantine(int index, String stored) {
+        synchronized (this) {
+            if (this.quarantined == null) this.quarantined = ConcurrentHashMap.newKeySet();
+        }
+        if (!this.quarantined.add(stored)) return;
+
+        System.err.println("Warning: Quarantining damaged line " + index + " of " + this.quarantinePath);
+
+        synchronized (this) {
+            try {
+                Files.writeString(Path.of(this.quarantinePath), stored + System.lineSeparator(),
+                        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @brief   Adds the checksum column to a line, if checksums are enabled.
+     *
+     * @param   line The line.
+     * @return  The line as it is stored in the DB file.
+     */
+    private String encode(String line) {
+        if (!this.checksummed) return line;
+
+        return line + CHECKSUM_SEPARATOR + HEX.toHexDigits(checksum(line));
+    }
+
+    /**
+     * @brief   Removes the checksum column from a stored line, without verifying it.
+     *
+     * @param   stored The line as it is stored in the DB file.
+     * @return  The line without its checksum column.
+     */
+    static String strip(String stored) {
+        if (!hasChecksumColumn(stored)) return stored;
+
+        return stored.substring(0, stored.length() - CHECKSUM_DIGITS - 1);
+    }
+
+    /**
+     * @brief   Checks whether a stored line ends with a checksum column.
+     *
+     * @param   stored The line as it is stored in the DB file.
+     * @return  `true` if the line has a checksum column.
+     */
+    static boolean hasChecksumColumn(String stored) {
+        return stored.length() > CHECKSUM_DIGITS
+                && stored.charAt(stored.length() - CHECKSUM_DIGITS - 1) == CHECKSUM_SEPARATOR;
+    }
+
+    /**
+     * @brief   Calculates the CRC32C of a line.
+     *
+     * @param   line The line.
+     * @return  The CRC32C of the UTF-8 bytes of the line.
+     */
+    static int checksum(String line) {
+        CRC32C crc = new CRC32C();
+        crc.update(line.getBytes(StandardCharsets.UTF_8));
+
+        return (int) crc.getValue();
+    }
+}
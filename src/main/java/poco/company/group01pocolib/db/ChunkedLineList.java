@@ -0,0 +1,305 @@
+package poco.company.group01pocolib.db;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @class   ChunkedLineList
+ * @brief   A `List` of lines stored in chunks, which can be snapshotted in time proportional to the number of chunks.
+ * @details Lines are stored in chunks of about `CHUNK_LINES` lines. A snapshot copies the references to the chunks,
+ *          not the lines, and from then on the chunks are shared with it: the first edit of a shared chunk copies it
+ *          (copy-on-write), so the snapshot keeps seeing the lines it was taken with, while every following edit of
+ *          the same chunk is made in place. Each chunk is tagged with the epoch it was last copied in, and a chunk is
+ *          shared if it is older than the last snapshot.
+ *          <br><br>
+ *          Snapshots are counted while they are open: once every snapshot is released the chunks are no longer
+ *          shared with anyone, and edits go back to being made in place without copying.
+ *          <br><br>
+ *          This is the backing `List` of a {@link poco.company.group01pocolib.db.DB DB} in `CacheMode.EAGER`.
+ */
+class ChunkedLineList extends AbstractList<String> implements RandomAccess, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    static final int CHUNK_LINES = 256;
+
+    /**
+     * @class   Chunk
+     * @brief   A run of consecutive lines of the list.
+     */
+    private static class Chunk implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        final ArrayList<String> lines;
+        long epoch;                     ///< Epoch of the list when the chunk was created or copied
+
+        Chunk(ArrayList<String> lines, long epoch) {
+            this.lines = lines;
+            this.epoch = epoch;
+        }
+    }
+
+    private ArrayList<Chunk> chunks = new ArrayList<>();
+    private int size;
+    private long epoch;                 ///< Incremented by every snapshot
+
+    /// Position of the first line of each chunk, `null` until it is calculated again after chunks are split or dropped
+    private transient int[] starts;
+    private transient AtomicInteger openSnapshots;
+
+    @Override
+    public String get(int index) {
+        int chunk = this.chunkOf(index);
+        return this.chunks.get(chunk).lines.get(index - this.starts[chunk]);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public String set(int index, String line) {
+        int chunk = this.chunkOf(index);
+        return this.writableChunk(chunk).lines.set(index - this.starts[chunk], line);
+    }
+
+    @Override
+    public void add(int index, String line) {
+        if (index < 0 || index > this.size) throw new IndexOutOfBoundsException(index);
+
+        if (index == this.size) {
+            this.append(line);
+        } else {
+            int chunk = this.chunkOf(index);
+            Chunk writable = this.writableChunk(chunk);
+            writable.lines.add(index - this.starts[chunk], line);
+
+            if (writable.lines.size() > 2 * CHUNK_LINES) {
+                this.split(chunk);
+            } else {
+                this.shiftStarts(chunk, 1);
+            }
+        }
+
+        this.size++;
+        this.modCount++;
+    }
+
+    @Override
+    public String remove(int index) {
+        int chunk = this.chunkOf(index);
+        Chunk writable = this.writableChunk(chunk);
+        String removed = writable.lines.remove(index - this.starts[chunk]);
+
+        if (writable.lines.isEmpty()) {
+            this.chunks.remove(chunk);
+            this.starts = null;
+        } else {
+            this.shiftStarts(chunk, -1);
+        }
+
+        this.size--;
+        this.modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        // Snapshots may hold the chunks, which are dropped as they are
+        this.chunks = new ArrayList<>();
+        this.starts = null;
+        this.size = 0;
+        this.modCount++;
+    }
+
+    /**
+     * @brief   Takes a snapshot of the list, and counts it as open until it is released.
+     * @details Only the references to the chunks are copied. The chunks are shared with the snapshot from now on,
+     *          and are copied by the list before it edits them.
+     *
+     * @return  An unmodifiable `List` with the current lines of the list.
+     */
+    List<String> snapshot() {
+        this.ensureStarts();
+
+        List<ArrayList<String>> lines = new ArrayList<>(this.chunks.size());
+        for (Chunk chunk : this.chunks) {
+            lines.add(chunk.lines);
+        }
+
+        this.epoch++;
+        this.openSnapshots().incrementAndGet();
+
+        return new Snapshot(lines, Arrays.copyOf(this.starts, this.chunks.size()), this.size);
+    }
+
+    /**
+     * @brief   Gets the action releasing a snapshot of the list.
+     * @details The action doesn't reference the snapshot, so it can also be run once the snapshot is unreachable.
+     *
+     * @return  The action releasing a snapshot, to be run once per snapshot.
+     */
+    Runnable snapshotReleaser() {
+        AtomicInteger openSnapshots = this.openSnapshots();
+        return openSnapshots::decrementAndGet;
+    }
+
+    /**
+     * @brief   Gets the number of snapshots of the list that weren't released yet.
+     * @return  The number of open snapshots.
+     */
+    int getOpenSnapshots() {
+        return this.openSnapshots().get();
+    }
+
+    /**
+     * @brief   Gets the counter of the open snapshots, creating it after the list is deserialized.
+     * @return  The counter of the open snapshots.
+     */
+    private synchronized AtomicInteger openSnapshots() {
+        if (this.openSnapshots == null) this.openSnapshots = new AtomicInteger();
+        return this.openSnapshots;
+    }
+
+    /**
+     * @brief   Gets a chunk that can be edited, copying it first if it is shared with an open snapshot.
+     *
+     * @param   chunk The position of the chunk.
+     * @return  The chunk, or its copy.
+     */
+    private Chunk writableChunk(int chunk) {
+        Chunk current = this.chunks.get(chunk);
+        if (current.epoch == this.epoch) return current;
+
+        if (this.openSnapshots().get() == 0) {
+            // Nobody holds the chunk anymore
+            current.epoch = this.epoch;
+            return current;
+        }
+
+        Chunk copy = new Chunk(new ArrayList<>(current.lines), this.epoch);
+        this.chunks.set(chunk, copy);
+        return copy;
+    }
+
+    /**
+     * @brief   Appends a line to the last chunk, or to a new chunk if the last one is full.
+     * @param   line The line.
+     */
+    private void append(String line) {
+        if (this.chunks.isEmpty() || this.chunks.getLast().lines.size() >= CHUNK_LINES) {
+            this.ensureStarts();
+            this.starts = Arrays.copyOf(this.starts, this.chunks.size() + 1);
+            this.starts[this.chunks.size()] = this.size;
+
+            this.chunks.add(new Chunk(new ArrayList<>(CHUNK_LINES), this.epoch));
+        }
+
+        this.writableChunk(this.chunks.size() - 1).lines.add(line);
+    }
+
+    /**
+     * @brief   Splits a chunk grown too big in two halves.
+     * @param   chunk The position of the chunk.
+     */
+    private void split(int chunk) {
+        ArrayList<String> lines = this.chunks.get(chunk).lines;
+        int half = lines.size() / 2;
+
+        this.chunks.set(chunk, new Chunk(new ArrayList<>(lines.subList(0, half)), this.epoch));
+        this.chunks.add(chunk + 1, new Chunk(new ArrayList<>(lines.subList(half, lines.size())), this.epoch));
+        this.starts = null;
+    }
+
+    /**
+     * @brief   Shifts the position of the first line of the chunks following one that grew or shrank.
+     *
+     * @param   chunk   The position of the chunk that grew or shrank.
+     * @param   delta   The number of lines the chunk grew by.
+     */
+    private void shiftStarts(int chunk, int delta) {
+        if (this.starts == null) return;
+
+        for (int i = chunk + 1; i < this.chunks.size(); i++) {
+            this.starts[i] += delta;
+        }
+    }
+
+    /**
+     * @brief   Calculates the position of the first line of each chunk, if it isn't known.
+     */
+    private void ensureStarts() {
+        if (this.starts != null) return;
+
+        this.starts = new int[this.chunks.size()];
+        int start = 0;
+        for (int i = 0; i < this.chunks.size(); i++) {
+            this.starts[i] = start;
+            start += this.chunks.get(i).lines.size();
+        }
+    }
+
+    /**
+     * @brief   Finds the chunk holding a line.
+     *
+     * @param   index The position of the line.
+     * @return  The position of the chunk.
+     * @throws  IndexOutOfBoundsException If there is no line at that position.
+     */
+    private int chunkOf(int index) {
+        if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException(index);
+
+        this.ensureStarts();
+        return findChunk(this.starts, this.chunks.size(), index);
+    }
+
+    /**
+     * @brief   Finds the chunk holding a line, by binary search on the position of the first line of each chunk.
+     *
+     * @param   starts      The position of the first line of each chunk.
+     * @param   chunkCount  The number of chunks.
+     * @param   index       The position of the line, which must be in the list.
+     * @return  The position of the chunk.
+     */
+    private static int findChunk(int[] starts, int chunkCount, int index) {
+        int chunk = Arrays.binarySearch(starts, 0, chunkCount, index);
+        return chunk >= 0 ? chunk : -chunk - 2;
+    }
+
+    /**
+     * @class   Snapshot
+     * @brief   Unmodifiable view of the lines of the list at the time a snapshot was taken.
+     */
+    private static class Snapshot extends AbstractList<String> implements RandomAccess {
+        private final List<ArrayList<String>> lines;    ///< Lines of each chunk, never edited once shared
+        private final int[] starts;
+        private final int size;
+
+        Snapshot(List<ArrayList<String>> lines, int[] starts, int size) {
+            this.lines = lines;
+            this.starts = starts;
+            this.size = size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= this.size) throw new IndexOutOfBoundsException(index);
+
+            int chunk = findChunk(this.starts, this.lines.size(), index);
+            return this.lines.get(chunk).get(index - this.starts[chunk]);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+}
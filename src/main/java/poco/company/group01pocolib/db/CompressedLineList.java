@@ -0,0 +1,525 @@
+package poco.company.group01pocolib.db;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * @class   CompressedLineList
+ * @brief   A `List` of the lines of a file stored as independently compressed blocks of lines.
+ * @details The file starts with a small block directory (the offset, compressed length, uncompressed length and number
+ *          of lines of each block), followed by the blocks, each one holding its lines, terminated by '\n', compressed
+ *          with `Deflater`. When the list is reloaded only the directory is read: blocks are decompressed the first
+ *          time one of their lines is requested, and at most `maxBlocks` unchanged blocks are kept in memory, evicting
+ *          the least recently used one.
+ *          <br><br>
+ *          Edited blocks are kept in memory until the list is written, and only them are compressed again: unchanged
+ *          blocks are copied from the current file as they are. Blocks grow and shrink with the edits, a block is split
+ *          in two when it gets twice as big as `blockSize` lines and dropped when it gets empty.
+ *          <br><br>
+ *          A file that is not in the compressed format (e.g. a plain text DB file) is read as text, and converted the
+ *          next time the list is written.
+ *          <br><br>
+ *          This is the backing `List` of a {@link poco.company.group01pocolib.db.DB DB} in `CacheMode.COMPRESSED`.
+ */
+class CompressedLineList extends AbstractList<String> implements RandomAccess, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    static final int MAGIC = 0x50434442;        ///< "PCDB"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int DIRECTORY_ENTRY_BYTES = 20;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @class   Block
+     * @brief   A block of lines, either still compressed in the file or loaded in memory.
+     */
+    private static class Block {
+        long offset;            ///< Offset of the compressed block in the file, meaningless if the block is dirty
+        int compressedLength;
+        int rawLength;
+        int lineCount;
+        List<String> lines;     ///< The lines of the block, `null` if the block is not loaded
+        boolean dirty;          ///< `true` if the block changed since the file was written
+    }
+
+    private final Path file;
+    private final int blockSize;
+    private int maxBlocks;
+
+    private final List<Block> blocks = new ArrayList<>();
+    private int[] blockStarts = new int[0];     ///< Index of the first line of each block, `null` if stale
+    private int size;
+
+    private final LinkedHashMap<Block, Boolean> loadedBlocks;   ///< Unchanged blocks kept in memory, in LRU order
+
+    /**
+     * @brief   Creates an empty compressed list for a file. The list has to be reloaded before use.
+     *
+     * @param   file        The file whose lines are listed.
+     * @param   blockSize   The number of lines in a block.
+     * @param   maxBlocks   The maximum number of unchanged blocks kept in memory.
+     */
+    CompressedLineList(Path file, int blockSize, int maxBlocks) {
+        this.file = file;
+        this.blockSize = blockSize;
+        this.maxBlocks = maxBlocks;
+        this.loadedBlocks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Block, Boolean> eldest) {
+                if (size() <= CompressedLineList.this.maxBlocks) return false;
+
+                eldest.getKey().lines = null;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @brief   Sets the maximum number of unchanged blocks kept in memory.
+     * @param   maxBlocks The new block budget.
+     */
+    synchronized void setMaxBlocks(int maxBlocks) {
+        this.maxBlocks = maxBlocks;
+
+        Iterator<Block> iterator = this.loadedBlocks.keySet().iterator();
+        while (this.loadedBlocks.size() > maxBlocks && iterator.hasNext()) {
+            iterator.next().lines = null;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @brief   Gets the number of blocks currently kept in memory, unchanged or not.
+     * @return  The number of loaded blocks.
+     */
+    synchronized int getLoadedBlockCount() {
+        int loaded = 0;
+        for (Block block : this.blocks) {
+            if (block.lines != null) loaded++;
+        }
+
+        return loaded;
+    }
+
+    /**
+     * @brief   Checks whether a file is in the compressed format.
+     *
+     * @param   file The file to check.
+     * @return  `true` if the file starts with the magic number of the compressed format.
+     * @throws  IOException If the file can't be read.
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) != -1);
+
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * @brief   Reloads the block directory from the file, discarding every edit and every loaded block.
+     * @throws  IOException If the file can't be read, or its directory is corrupted.
+     */
+    synchronized void reload() throws IOException {
+        this.blocks.clear();
+        this.loadedBlocks.clear();
+        this.size = 0;
+        this.modCount++;
+
+        if (!Files.exists(this.file)) {
+            this.blockStarts = null;
+            return;
+        }
+
+        if (!isCompressed(this.file)) {
+            this.loadText();
+            return;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)))) {
+            input.readInt();    // Magic number, already checked
+            int version = input.readInt();
+            if (version != VERSION) throw new IOException("Unsupported DB file version " + version);
+
+            int blockCount = input.readInt();
+            for (int i = 0; i < blockCount; i++) {
+                Block block = new Block();
+                block.offset = input.readLong();
+                block.compressedLength = input.readInt();
+                block.rawLength = input.readInt();
+                block.lineCount = input.readInt();
+
+                this.blocks.add(block);
+                this.size += block.lineCount;
+            }
+        }
+
+        this.blockStarts = null;
+    }
+
+    /**
+     * @brief   Loads a file that is not in the compressed format as text, in dirty blocks.
+     * @throws  IOException If the file can't be read.
+     */
+    private void loadText() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+            Block block = null;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (block == null || block.lineCount == this.blockSize) {
+                    block = new Block();
+                    block.lines = new ArrayList<>(this.blockSize);
+                    block.dirty = true;
+                    this.blocks.add(block);
+                }
+
+                block.lines.add(line);
+                block.lineCount++;
+                this.size++;
+            }
+        }
+
+        this.blockStarts = null;
+    }
+
+    /**
+     * @brief   Recalculates the index of the first line of each block, if stale.
+     */
+    private void updateBlockStarts() {
+        if (this.blockStarts != null) return;
+
+        this.blockStarts = new int[this.blocks.size()];
+
+        int start = 0;
+        for (int i = 0; i < this.blocks.size(); i++) {
+            this.blockStarts[i] = start;
+            start += this.blocks.get(i).lineCount;
+        }
+    }
+
+    /**
+     * @brief   Finds the block containing a line.
+     *
+     * @param   index The index of the line.
+     * @return  The index of the block.
+     */
+    private int locate(int index) {
+        this.updateBlockStarts();
+
+        int found = Arrays.binarySearch(this.blockStarts, index);
+
+        // Empty blocks are never kept, so no two blocks start at the same line
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /**
+     * @brief   Makes sure the lines of a block are in memory, decompressing them from the file if needed.
+     *
+     * @param   block The block.
+     * @return  The lines of the block.
+     */
+    private List<String> load(Block block) {
+        if (block.lines != null) {
+            if (!block.dirty) this.loadedBlocks.get(block);     // Marks the block as recently used
+            return block.lines;
+        }
+
+        byte[] compressed = new byte[block.compressedLength];
+        byte[] raw = new byte[block.rawLength];
+
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(compressed);
+            while (buffer.hasRemaining() && channel.read(buffer, block.offset + buffer.position()) != -1);
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int inflated = 0;
+                while (inflated < raw.length && !inflater.finished()) {
+                    int count = inflater.inflate(raw, inflated, raw.length - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    inflated += count;
+                }
+
+                if (inflated != raw.length) {
+                    throw new IllegalStateException("DB file " + this.file + " changed since it was loaded");
+                }
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted block in DB file " + this.file, e);
+        }
+
+        List<String> lines = new ArrayList<>(block.lineCount);
+        int lineStart = 0;
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i] == '\n') {
+                lines.add(new String(raw, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+
+        if (lines.size() != block.lineCount) {
+            throw new IllegalStateException("Corrupted block in DB file " + this.file);
+        }
+
+        block.lines = lines;
+        this.loadedBlocks.put(block, Boolean.TRUE);
+        return lines;
+    }
+
+    /**
+     * @brief   Loads a block to edit it, keeping it in memory until the list is written.
+     *
+     * @param   block The block.
+     * @return  The lines of the block.
+     */
+    private List<String> edit(Block block) {
+        List<String> lines = this.load(block);
+
+        if (!block.dirty) {
+            this.loadedBlocks.remove(block);
+            block.dirty = true;
+        }
+
+        return lines;
+    }
+
+    @Override
+    public synchronized String get(int index) {
+        Objects.checkIndex(index, this.size);
+
+        int blockIndex = this.locate(index);
+        return this.load(this.blocks.get(blockIndex)).get(index - this.blockStarts[blockIndex]);
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized String set(int index, String line) {
+        Objects.checkIndex(index, this.size);
+
+        int blockIndex = this.locate(index);
+        return this.edit(this.blocks.get(blockIndex)).set(index - this.blockStarts[blockIndex], line);
+    }
+
+    @Override
+    public synchronized void add(int index, String line) {
+        Objects.checkIndex(index, this.size + 1);
+
+        if (this.blocks.isEmpty()) {
+            Block block = new Block();
+            block.lines = new ArrayList<>();
+            block.dirty = true;
+            this.blocks.add(block);
+            this.blockStarts = null;
+        }
+
+        // A line appended at the end goes to the last block
+        this.updateBlockStarts();
+        int blockIndex = index == this.size ? this.blocks.size() - 1 : this.locate(index);
+        Block block = this.blocks.get(blockIndex);
+
+        this.edit(block).add(index - this.blockStarts[blockIndex], line);
+        block.lineCount++;
+        this.size++;
+        this.modCount++;
+
+        if (block.lineCount >= 2 * this.blockSize) {
+            Block second = new Block();
+            second.lines = new ArrayList<>(block.lines.subList(this.blockSize, block.lineCount));
+            second.lineCount = second.lines.size();
+            second.dirty = true;
+
+            block.lines = new ArrayList<>(block.lines.subList(0, this.blockSize));
+            block.lineCount = this.blockSize;
+            this.blocks.add(blockIndex + 1, second);
+        }
+
+        this.blockStarts = null;
+    }
+
+    @Override
+    public synchronized String remove(int index) {
+        Objects.checkIndex(index, this.size);
+
+        int blockIndex = this.locate(index);
+        Block block = this.blocks.get(blockIndex);
+
+        String removed = this.edit(block).remove(index - this.blockStarts[blockIndex]);
+        block.lineCount--;
+        this.size--;
+        this.modCount++;
+
+        if (block.lineCount == 0) this.blocks.remove(blockIndex);
+        this.blockStarts = null;
+
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.blocks.clear();
+        this.loadedBlocks.clear();
+        this.blockStarts = null;
+        this.size = 0;
+        this.modCount++;
+    }
+
+    /**
+     * @brief   Writes the list in the compressed format.
+     * @details Only dirty blocks are compressed, unchanged blocks are copied from the current file as they are. The
+     *          list keeps referring to the current file: it has to be reloaded once the written content replaces it.
+     *
+     * @param   output The stream to write to.
+     * @throws  IOException If the current file can't be read or the output can't be written.
+     */
+    synchronized void writeTo(OutputStream output) throws IOException {
+        List<byte[]> compressedBlocks = new ArrayList<>(this.blocks.size());
+        for (Block block : this.blocks) {
+            compressedBlocks.add(block.dirty ? this.compress(block) : null);
+        }
+
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(this.blocks.size());
+
+        long offset = HEADER_BYTES + (long) DIRECTORY_ENTRY_BYTES * this.blocks.size();
+        for (Block block : this.blocks) {
+            data.writeLong(offset);
+            data.writeInt(block.compressedLength);
+            data.writeInt(block.rawLength);
+            data.writeInt(block.lineCount);
+            offset += block.compressedLength;
+        }
+
+        try (FileChannel channel = this.hasCleanBlocks() ? FileChannel.open(this.file, StandardOpenOption.READ) : null) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+            for (int i = 0; i < this.blocks.size(); i++) {
+                Block block = this.blocks.get(i);
+
+                if (block.dirty) {
+                    data.write(compressedBlocks.get(i));
+                    continue;
+                }
+
+                // Unchanged blocks are copied as they are, without decompressing them
+                for (long copied = 0; copied < block.compressedLength; ) {
+                    buffer.clear().limit((int) Math.min(COPY_BUFFER_SIZE, block.compressedLength - copied));
+                    int read = channel.read(buffer, block.offset + copied);
+                    if (read == -1) throw new EOFException("DB file " + this.file + " changed since it was loaded");
+
+                    data.write(buffer.array(), 0, read);
+                    copied += read;
+                }
+            }
+        }
+
+        data.flush();
+    }
+
+    /**
+     * @brief   Checks whether some block is unchanged since the file was written.
+     * @return  `true` if at least one block has to be copied from the current file.
+     */
+    private boolean hasCleanBlocks() {
+        for (Block block : this.blocks) {
+            if (!block.dirty) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @brief   Compresses the lines of a dirty block, updating its lengths.
+     *
+     * @param   block The block.
+     * @return  The compressed block.
+     * @throws  IOException If the block can't be compressed.
+     */
+    private byte[] compress(Block block) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        for (String line : block.lines) {
+            raw.write(line.getBytes(StandardCharsets.UTF_8));
+            raw.write('\n');
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 4 + 16);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+            raw.writeTo(deflater);
+        }
+
+        block.rawLength = raw.size();
+        block.compressedLength = compressed.size();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * @brief   Serializes the list as the path of its file and its block settings, so that serializing it never
+     *          decompresses the whole file.
+     * @details The list is deserialized empty, and its block directory is read from its file again the first time the
+     *          {@link poco.company.group01pocolib.db.DB DB} owning it needs its lines (replaying the journal, if any, on
+     *          top of them).
+     *
+     * @return  The serialized form of the list.
+     */
+    @Serial
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    /**
+     * @class   SerializedForm
+     * @brief   What is serialized of a compressed list: the path of its file and its block settings.
+     */
+    private static class SerializedForm implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String file;
+        private final int blockSize;
+        private final int maxBlocks;
+
+        /**
+         * @brief   Creates the serialized form of a list.
+         * @param   list The list to serialize.
+         */
+        SerializedForm(CompressedLineList list) {
+            this.file = list.file.toString();
+            this.blockSize = list.blockSize;
+            synchronized (list) {
+                this.maxBlocks = list.maxBlocks;
+            }
+        }
+
+        /**
+         * @brief   Creates the deserialized list, still to be reloaded from its file.
+         * @return  The deserialized list.
+         */
+        @Serial
+        private Object readResolve() {
+            return new CompressedLineList(Path.of(this.file), this.blockSize, this.maxBlocks);
+        }
+    }
+}
@@ -1,12 +1,27 @@
 package poco.company.group01pocolib.db;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 
 /**
@@ -29,268 +44,2374 @@ import java.util.regex.Pattern;
  *          The DB class, being reliant on a simple text file, allows easy "legacy support" by any future versions of
  *          the application, as well as easy manual editing of the data if needed. (and, if needed, importing and
  *          exporting data from and to other machines through these simple text files).
+ *          <br><br>
+ *          Optionally, the DB can work in journal mode: instead of rewriting the whole file on every edit, each
+ *          mutation is appended as a small insert/replace/delete record to a journal file next to the DB file (see
+ *          {@link poco.company.group01pocolib.db.DB#getJournalPath getJournalPath()}). The journal is replayed every
+ *          time the cache is built, and folded back into the DB file by a checkpoint once it grows bigger than the DB
+ *          file itself, so the cost of a write scales with the size of the change rather than the size of the table.
+ *          <br><br>
+ *          The DB file is never written in place: its new content is written to a temporary file next to it, which then
+ *          atomically replaces the original, so a crash mid-write can't leave a truncated DB behind. When the new
+ *          content is forced to disk is decided by the {@link poco.company.group01pocolib.db.DurabilityPolicy
+ *          DurabilityPolicy} of the DB.
+ *          <br><br>
+ *          By default every line is kept in the cache, but a DB can also be opened in `CacheMode.PAGED`: in that case
+ *          the cache only holds an index with the offset of each line in the file, and loads lines in fixed-size pages
+ *          when they are read, keeping at most a configurable number of pages in memory. This bounds the heap used by
+ *          big tables, at the cost of reading from the file the lines that aren't in memory.
+ *          <br><br>
+ *          In `CacheMode.COMPRESSED` the DB file itself is stored as independently compressed blocks of lines, behind a
+ *          small block directory (see {@link poco.company.group01pocolib.db.CompressedLineList CompressedLineList}).
+ *          Blocks are decompressed only when one of their lines is read, and only edited blocks are compressed again
+ *          when the DB file is rewritten, cutting the bytes read and written on both load and sync.
+ *          <br><br>
+ *          In `CacheMode.OFF_HEAP` every line is kept in the cache as well, but as UTF-8 bytes in off-heap memory (see
+ *          {@link poco.company.group01pocolib.db.OffHeapLineList OffHeapLineList}), and decoded only when it is read,
+ *          which keeps the content of big tables out of the heap and out of the work of the garbage collector.
+ *          <br><br>
+ *          Multiple edits can be grouped in a batch (see {@link poco.company.group01pocolib.db.DB#beginBatch
+ *          beginBatch()}): edits made during a batch only change the cache, and are persisted all together, with a
+ *          single write of the DB file (or of the journal) and a single hash update, when the batch is committed. A
+ *          batch belongs to the thread that began it, and edits from other threads wait for it to end.
+ *          <br><br>
+ *          In write-behind mode (see {@link poco.company.group01pocolib.db.DB#setWriteBehind setWriteBehind()}) edits
+ *          only change the cache, and a dedicated flusher thread persists them in the background, coalescing the edits
+ *          made while it was busy. At most `writeBehindCapacity` edits can be pending: further edits wait for the
+ *          flusher to catch up. {@link poco.company.group01pocolib.db.DB#flush flush()} waits until every pending edit
+ *          is persisted.
+ *          <br><br>
+ *          If a key field is set (see {@link poco.company.group01pocolib.db.DB#setKeyField setKeyField()}), the DB keeps
+ *          a hash index from the key of each line (the field at that position, fields being separated by
+ *          `FIELD_SEPARATOR`) to its line number, so that lines can be read, replaced and deleted by key in constant
+ *          time instead of matching a regex against every line. Lines kept in key order can also be inserted in
+ *          their place, and replaced, by their key (see {@link poco.company.group01pocolib.db.DB#writeLineInKeyOrder
+ *          writeLineInKeyOrder()}), so that the same content is always written in the same order.
+ *          <br><br>
+ *          Lines can also be stored with a CRC32C checksum column (see
+ *          {@link poco.company.group01pocolib.db.DB#setChecksummed setChecksummed()}), verified when each line is
+ *          read, so that a damaged line is quarantined and read as `null` instead of discarding the whole file. Lines
+ *          written by hand, without the column, are read as they are, and get their column when the file is rewritten.
+ *          <br><br>
+ *          A DB file edited by hand while the DB is open is picked up by
+ *          {@link poco.company.group01pocolib.db.DB#reconcile reconcile()}, which reports the lines that changed, and
+ *          can be called automatically as soon as the file is saved by a
+ *          {@link poco.company.group01pocolib.db.DBWatcher DBWatcher}.
  */
 public class DB implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
-    private String DBPath;
-    private String lineSeparator;
-    private final ArrayList<String> cache;
-    private String DBFileHash;
+    private String DBPath;
+    private String lineSeparator;
+    private final ChecksummedLineList cache;  ///< View of the lines stored in the DB file, checksums stripped
+    private final CacheMode cacheMode;
+    private String DBFileHash;
+
+    private boolean journaled;
+    private long journalBytes;      ///< Bytes appended to the journal since the last checkpoint
+
+    private DurabilityPolicy durabilityPolicy = DurabilityPolicy.SYNC_EVERY_COMMIT;
+    private long syncIntervalMillis = DEFAULT_SYNC_INTERVAL_MILLIS;
+    private transient long lastSyncTime;
+    private transient boolean deferredSyncScheduled;
+
+    /// What was learned about the DB file the last time it was loaded, valid until the cache or the file are changed
+    private transient MappedFileLoader.Result loadSnapshot;
+
+    private transient Thread batchOwner;
+    private transient Deque<Runnable> batchUndo;        ///< Undoes the edits of the batch, most recent first
+    private transient List<String> batchRecords;        ///< Journal records of the edits of the batch
+    private transient boolean batchRewrite;             ///< `true` if the batch has to rewrite the whole DB file
+    private transient GroupCommit groupCommit;
+
+    private transient boolean writeBehind;
+    private int writeBehindCapacity = DEFAULT_WRITE_BEHIND_CAPACITY;
+    private transient Thread flusher;
+    private transient List<String> pendingRecords;      ///< Journal records of the edits waiting for the flusher
+    private transient boolean pendingRewrite;           ///< `true` if the flusher has to rewrite the whole DB file
+    private transient int pendingEdits;
+    private transient boolean flushRequested;           ///< `true` if someone is waiting for the pending edits
+    private transient long flushRound;                  ///< Number of flushes attempted by the flusher
+    private transient boolean lastFlushSucceeded;
+    private transient boolean flushing;                 ///< `true` while the flusher writes outside the lock of the DB
+
+    private HashStrategy hashStrategy = DEFAULT_HASH_STRATEGY;
+    private transient MerkleTree merkleTree;             ///< Fingerprint of the cache, see `getDBFileHash`
+
+    private int keyField = NO_KEY_FIELD;
+    private transient Map<String, Integer> keyIndex;    ///< Line of the first occurrence of each key, `null` if stale
+    private transient boolean duplicateKeys;            ///< `true` if some key was found on more than one line
+
+    public static final int PAGE_SIZE = 1024;
+    public static final int DEFAULT_MAX_CACHED_PAGES = 16;
+
+    public static final String JOURNAL_EXTENSION = ".journal";
+    private static final String JOURNAL_BASE = "B";
+    private static final String JOURNAL_INSERT = "I";
+    private static final String JOURNAL_REPLACE = "R";
+    private static final String JOURNAL_DELETE = "D";
+    private static final long MIN_JOURNAL_CHECKPOINT_BYTES = 64 * 1024;
+
+    public static final String TEMP_EXTENSION = ".tmp";
+    public static final String RECORDS_EXTENSION = ".rec";
+    public static final String QUARANTINE_EXTENSION = ".quarantine";
+    public static final String METADATA_EXTENSION = ".meta";
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+    public static final HashStrategy DEFAULT_HASH_STRATEGY = HashAlgorithm.XXH64;
+
+    private static ScheduledExecutorService syncScheduler;     ///< Runs the deferred syncs of `SYNC_INTERVAL` DBs
+
+    public static final long GROUP_COMMIT_WINDOW_MILLIS = 2;
+    public static final int MAX_BATCH_JOURNAL_RECORDS = 4096;
+
+    public static final int DEFAULT_WRITE_BEHIND_CAPACITY = 1024;
+    public static final long WRITE_BEHIND_DELAY_MILLIS = 50;
+    private static final long FLUSH_RETRY_MILLIS = 1000;
+
+    private static final int MIN_PARALLEL_SCAN_LINES = 4096;
+
+    public static final char FIELD_SEPARATOR = '\u001C';
+    public static final int NO_KEY_FIELD = -1;
+
+    /**
+     * @brief   Constructs a new DB object with the specified file path.
+     * @details This constructor initializes the DB object with the provided file path. It also preloads the lines
+     *          from the DB file into an internal cache for faster access and calculates the initial hash of the DB file.
+     *
+     * @param   DBPath The path to the database file.
+     */
+    public DB(Path DBPath) {
+        this(DBPath.toString(), false);
+    }
+
+    /**
+     * @brief   Constructs a new DB object with the specified file path.
+     * @details This constructor initializes the DB object with the provided file path. It also preloads the lines
+     *          from the DB file into an internal cache for faster access and calculates the initial hash of the DB file.
+     *
+     * @param   DBPath The path to the database file.
+     */
+    public DB(String DBPath) {
+        this(DBPath, false);
+    }
+
+    /**
+     * @brief   Constructs a new DB object with the specified file path, optionally in journal mode.
+     *
+     * @param   DBPath      The path to the database file.
+     * @param   journaled   If `true`, edits are appended to the journal instead of rewriting the DB file.
+     */
+    public DB(Path DBPath, boolean journaled) {
+        this(DBPath.toString(), journaled);
+    }
+
+    /**
+     * @brief   Constructs a new DB object with the specified file path, optionally in journal mode.
+     * @details This constructor initializes the DB object with the provided file path. It also preloads the lines
+     *          from the DB file into an internal cache for faster access and calculates the initial hash of the DB file.
+     *          <br><br>
+     *          A journal left behind by a previous session is always replayed on the cache, whatever the mode of this
+     *          object is, and then folded into the DB file with a checkpoint, so that the DB file reflects the real
+     *          content of the DB right after opening it.
+     *
+     * @param   DBPath      The path to the database file.
+     * @param   journaled   If `true`, edits are appended to the journal instead of rewriting the DB file.
+     */
+    public DB(String DBPath, boolean journaled) {
+        this(DBPath, journaled, CacheMode.EAGER);
+    }
+
+    /**
+     * @brief   Constructs a new DB object with the specified file path and cache mode.
+     *
+     * @param   DBPath      The path to the database file.
+     * @param   cacheMode   How the lines of the DB file are kept in memory.
+     */
+    public DB(Path DBPath, CacheMode cacheMode) {
+        this(DBPath.toString(), false, cacheMode);
+    }
+
+    /**
+     * @brief   Constructs a new DB object with the specified file path, journal mode and cache mode.
+     * @details This constructor initializes the DB object with the provided file path. It also preloads the lines
+     *          from the DB file into an internal cache for faster access (or just indexes them, in `CacheMode.PAGED`)
+     *          and calculates the initial hash of the DB file.
+     *          <br><br>
+     *          A journal left behind by a previous session is always replayed on the cache, whatever the mode of this
+     *          object is, and then folded into the DB file with a checkpoint, so that the DB file reflects the real
+     *          content of the DB right after opening it.
+     *
+     * @param   DBPath      The path to the database file.
+     * @param   journaled   If `true`, edits are appended to the journal instead of rewriting the DB file.
+     * @param   cacheMode   How the lines of the DB file are kept in memory.
+     */
+    public DB(String DBPath, boolean journaled, CacheMode cacheMode) {
+        this.DBPath = DBPath;
+        this.journaled = journaled;
+        this.cacheMode = cacheMode;
+        // An eagerly loaded cache detects the line separator while loading the file
+        this.lineSeparator = cacheMode == CacheMode.PAGED ? detectLineSeparator() : System.lineSeparator();
+
+        // Preload lines into cache (replaying the journal, if any)
+        List<String> storedLines = switch (cacheMode) {
+            case EAGER -> new ChunkedLineList();
+            case PAGED -> new PagedLineList(this.getDBPathAsPath(), PAGE_SIZE, DEFAULT_MAX_CACHED_PAGES);
+            case COMPRESSED -> new CompressedLineList(this.getDBPathAsPath(), PAGE_SIZE, DEFAULT_MAX_CACHED_PAGES);
+            case OFF_HEAP -> new OffHeapLineList();
+        };
+        this.cache = new ChecksummedLineList(storedLines, this.getQuarantinePath().toString());
+        this.buildCache();
+
+        // Fold a leftover journal into the DB file
+        if (this.journalBytes > 0) {
+            this.checkpoint();
+        }
+
+        // Calculate initial file hash (without reading a paged or compressed DB file page by page just to hash it)
+        if (this.holdsAllLines() || !this.loadFileHash()) updateDBFileHash();
+
+        // Record the metadata of the DB file, unless the sidecar already holds it
+        if (this.DBFileHash != null) {
+            FileMetadata metadata = this.readCurrentMetadata();
+            if (metadata == null || !metadata.getHash().equals(this.DBFileHash)) this.recordMetadata();
+        }
+    }
+
+    /**
+     * @brief   Gets the path to the DB file as a `String`.
+     * @return  The path to the DB file.
+     */
+    public String getDBPath() {
+        return DBPath;
+    }
+
+    /**
+     * @brief   Gets the path to the DB file as a `Path` object.
+     * @return  The path to the DB file.
+     */
+    public Path getDBPathAsPath() {
+        return FileSystems.getDefault().getPath(this.DBPath);
+    }
+
+    /**
+     * @brief   Sets the path to the DB file from a `String`.
+     * @param   DBPath The new path to the DB file.
+     */
+    public void setDBPath(String DBPath) {
+        this.DBPath = DBPath;
+        this.groupCommit = null;
+        this.cache.setQuarantinePath(this.getQuarantinePath().toString());
+    }
+
+    /**
+     * @brief   Sets the path to the DB file from a `Path` object.
+     * @param   DBPath The new path to the DB file.
+     */
+    public void setDBPath(Path DBPath) {
+        this.DBPath = DBPath.toString();
+        this.groupCommit = null;
+        this.cache.setQuarantinePath(this.getQuarantinePath().toString());
+    }
+
+    /**
+     * @brief   Gets the stored hash of the DB file.
+     * @details The hash is the Merkle root of the lines of the DB file (see `updateDBFileHash`), so it doesn't depend on
+     *          the line separator of the file, calculated with the hash strategy of the DB (see `setHashStrategy`).
+     *
+     * @return  The stored hash of the DB file.
+     */
+    public String getDBFileHash() {
+        return DBFileHash;
+    }
+
+    /**
+     * @brief   Gets the hash strategy used to calculate the hash of the DB file.
+     * @return  The hash strategy of the DB.
+     */
+    public synchronized HashStrategy getHashStrategy() {
+        // DBs serialized before hash strategies existed use the default one
+        if (this.hashStrategy == null) this.hashStrategy = DEFAULT_HASH_STRATEGY;
+
+        return this.hashStrategy;
+    }
+
+    /**
+     * @brief   Sets the hash strategy used to calculate the hash of the DB file, and recalculates the hash with it.
+     * @details Hashes calculated with different strategies can't be compared: whoever stores the hash of the DB
+     *          should store the name of the strategy along with it, and set it back before comparing hashes.
+     *
+     * @param   hashStrategy The new hash strategy.
+     */
+    public synchronized void setHashStrategy(HashStrategy hashStrategy) {
+        if (hashStrategy.equals(this.getHashStrategy())) return;
+
+        this.hashStrategy = hashStrategy;
+        this.merkleTree = null;
+        this.updateDBFileHash();
+    }
+
+    /**
+     * @brief   Gets the line separator used in the DB file.
+     * @return  The line separator used in the DB file.
+     */
+    public String getLineSeparator() {
+        return this.lineSeparator;
+    }
+
+    /**
+     * @brief   Gets the cache mode of the DB.
+     * @return  How the lines of the DB file are kept in memory.
+     */
+    public CacheMode getCacheMode() {
+        return cacheMode;
+    }
+
+    /**
+     * @brief   Checks whether every line of the DB is held in memory, so that it can be read by any number of threads
+     *          at once and needs no file access.
+     * @return  `true` in `CacheMode.EAGER` and `CacheMode.OFF_HEAP`, `false` otherwise.
+     */
+    private boolean holdsAllLines() {
+        return this.cacheMode == CacheMode.EAGER || this.cacheMode == CacheMode.OFF_HEAP;
+    }
+
+    /**
+     * @brief   Sets the maximum number of pages (or blocks) of lines kept in memory. Only has effect in
+     *          `CacheMode.PAGED` and `CacheMode.COMPRESSED`.
+     * @param   maxCachedPages The new page budget.
+     */
+    public synchronized void setMaxCachedPages(int maxCachedPages) {
+        if (this.cache.getStoredLines() instanceof PagedLineList pagedCache) {
+            pagedCache.setMaxPages(maxCachedPages);
+        } else if (this.cache.getStoredLines() instanceof CompressedLineList compressedCache) {
+            compressedCache.setMaxBlocks(maxCachedPages);
+        }
+    }
+
+    /**
+     * @brief   Checks whether the DB is in journal mode.
+     * @return  `true` if edits are appended to the journal, `false` if they rewrite the DB file.
+     */
+    public boolean isJournaled() {
+        return journaled;
+    }
+
+    /**
+     * @brief   Enables or disables journal mode.
+     * @details Disabling journal mode performs a checkpoint, so that no edit is left only in the journal.
+     *
+     * @param   journaled `true` to append edits to the journal, `false` to rewrite the DB file on every edit.
+     */
+    public synchronized void setJournaled(boolean journaled) {
+        if (this.journaled && !journaled) {
+            this.checkpoint();
+        }
+
+        this.journaled = journaled;
+    }
+
+    /**
+     * @brief   Checks whether the lines of the DB file carry a checksum column.
+     * @return  `true` if every line is stored along with its CRC32C checksum.
+     */
+    public synchronized boolean isChecksummed() {
+        return this.cache.isChecksummed();
+    }
+
+    /**
+     * @brief   Enables or disables the checksum column of the lines of the DB file, rewriting the whole file.
+     * @details With checksums enabled, every line is stored along with the CRC32C of its content, which is verified
+     *          each time the line is read: a damaged line is reported, copied to the quarantine file (see
+     *          `getQuarantinePath`) and read as `null`, so that it is skipped on its own instead of being parsed as if
+     *          it were valid. Whether the DB file has checksums is detected when it is loaded, so this only has to be
+     *          called once to convert the file.
+     *
+     * @param   checksummed `true` to store a checksum on every line, `false` to remove them.
+     * @return  `true` if the DB file was converted, `false` otherwise.
+     * @throws  IllegalStateException If the calling thread has an open batch on this DB.
+     */
+    public synchronized boolean setChecksummed(boolean checksummed) {
+        if (this.isInBatch()) {
+            throw new IllegalStateException("Cannot convert DB " + this.DBPath + " during a batch");
+        }
+        if (!this.awaitWriteAccess()) return false;
+        if (this.cache.isChecksummed() == checksummed) return true;
+        if (!this.ensureCache()) return false;
+
+        this.loadSnapshot = null;
+        this.cache.setChecksummed(checksummed);
+        this.merkleTree().invalidate();
+
+        if (this.writeBehind) {
+            this.enqueue(List.of(), true);
+        } else if (!this.checkpoint()) {
+            return false;
+        }
+
+        this.updateDBFileHash();
+        return true;
+    }
+
+    /**
+     * @brief   Verifies the checksum of every line of DB, quarantining the damaged ones.
+     * @return  Indices of the damaged lines, in file order.
+     */
+    public synchronized int[] findDamagedLines() {
+        if (!this.awaitBatchAccess()) return new int[0];
+        if (!this.ensureCache()) return new int[0];
+
+        return IntStream.range(0, this.cache.size())
+                .filter(i -> this.cache.get(i) == null)
+                .toArray();
+    }
+
+    /**
+     * @brief   Checks whether the DB is in write-behind mode.
+     * @return  `true` if edits are persisted in the background by the flusher thread.
+     */
+    public synchronized boolean isWriteBehind() {
+        return this.writeBehind;
+    }
+
+    /**
+     * @brief   Enables or disables write-behind mode.
+     * @details Enabling write-behind mode starts the flusher thread of the DB. Disabling it waits until every pending
+     *          edit is persisted, then stops the flusher: if pending edits couldn't be persisted, write-behind mode is
+     *          left enabled, so that the flusher keeps retrying.
+     *
+     * @param   writeBehind `true` to persist edits in the background, `false` to persist them on the calling thread.
+     * @return  `true` if the mode was changed (or already set), `false` if pending edits couldn't be persisted.
+     * @throws  IllegalStateException If the calling thread has an open batch on this DB.
+     */
+    public boolean setWriteBehind(boolean writeBehind) {
+        Thread stoppedFlusher;
+
+        synchronized (this) {
+            if (writeBehind) {
+                if (this.flusher == null) {
+                    this.pendingRecords = new ArrayList<>();
+                    this.flusher = Thread.ofPlatform()
+                                         .daemon()
+                                         .name("DB-flusher-" + this.getDBPathAsPath().getFileName())
+                                         .start(this::runFlusher);
+                }
+                this.writeBehind = true;
+                return true;
+            }
+
+            if (!this.writeBehind) return true;
+            if (!this.flush()) return false;
+
+            this.writeBehind = false;
+            stoppedFlusher = this.flusher;
+            this.flusher = null;
+            this.notifyAll();
+        }
+
+        // The flusher needs the lock of the DB to stop, so it is joined outside of it
+        try {
+            stoppedFlusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return true;
+    }
+
+    /**
+     * @brief   Gets the maximum number of edits that can wait for the flusher in write-behind mode.
+     * @return  The capacity of the write-behind queue.
+     */
+    public synchronized int getWriteBehindCapacity() {
+        return this.writeBehindCapacity;
+    }
+
+    /**
+     * @brief   Sets the maximum number of edits that can wait for the flusher in write-behind mode.
+     * @param   writeBehindCapacity The new capacity of the write-behind queue.
+     */
+    public synchronized void setWriteBehindCapacity(int writeBehindCapacity) {
+        this.writeBehindCapacity = writeBehindCapacity;
+        this.notifyAll();
+    }
+
+    /**
+     * @brief   Waits until every edit pending in write-behind mode is persisted.
+     * @return  `true` if there are no pending edits, `false` if the flusher failed to persist them (they are kept
+     *          pending and retried later) or the calling thread was interrupted.
+     * @throws  IllegalStateException If the calling thread has an open batch on this DB.
+     */
+    public synchronized boolean flush() {
+        if (this.isInBatch()) {
+            throw new IllegalStateException("Cannot flush DB " + this.DBPath + " during a batch");
+        }
+
+        long round = this.flushRound;
+        this.flushRequested = this.pendingEdits > 0;
+        this.notifyAll();   // Wakes the flusher up, in case it is waiting for more edits to coalesce
+
+        while (this.pendingEdits > 0 || this.flushing) {
+            if (this.flusher == null) return false;
+
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            if (this.flushRound != round && !this.lastFlushSucceeded) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @brief   Persists every pending edit, stops the flusher thread and forces the DB files to disk.
+     * @details To be called before the application exits, since the flusher is a daemon thread and doesn't keep
+     *          the application alive until pending edits are persisted.
+     *
+     * @return  `true` if everything was persisted, `false` otherwise.
+     */
+    public boolean close() {
+        return this.setWriteBehind(false) && this.sync();
+    }
+
+    /**
+     * @brief   Gets the position of the key field of the lines of the DB.
+     * @return  The position of the key field, or `NO_KEY_FIELD` if lines are not indexed by key.
+     */
+    public synchronized int getKeyField() {
+        return this.keyField;
+    }
+
+    /**
+     * @brief   Sets the position of the key field of the lines of the DB.
+     * @details The key index is built from the cache the first time a line is looked up by key, and kept up to date
+     *          on every edit from then on.
+     *
+     * @param   keyField The position of the key field (0-based), or `NO_KEY_FIELD` to stop indexing lines by key.
+     */
+    public synchronized void setKeyField(int keyField) {
+        this.keyField = keyField;
+        this.keyIndex = null;
+    }
+
+    /**
+     * @brief   Gets the durability policy of the DB.
+     * @return  The policy deciding when commits are forced to disk.
+     */
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    /**
+     * @brief   Sets the durability policy of the DB.
+     * @param   durabilityPolicy The policy deciding when commits are forced to disk.
+     */
+    public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy) {
+        this.durabilityPolicy = durabilityPolicy;
+    }
+
+    /**
+     * @brief   Gets the maximum time a commit can stay unsynced under the `SYNC_INTERVAL` policy.
+     * @return  The sync interval in milliseconds.
+     */
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * @brief   Sets the maximum time a commit can stay unsynced under the `SYNC_INTERVAL` policy.
+     * @param   syncIntervalMillis The sync interval in milliseconds.
+     */
+    public void setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * @brief   Gets the path to the journal file of this DB.
+     * @return  The path to the journal file (the DB path followed by `JOURNAL_EXTENSION`).
+     */
+    public Path getJournalPath() {
+        return FileSystems.getDefault().getPath(this.DBPath + JOURNAL_EXTENSION);
+    }
+
+    /**
+     * @brief   Gets the path to the binary record snapshot of this DB.
+     * @return  The path to the record snapshot (the DB path followed by `RECORDS_EXTENSION`).
+     */
+    public Path getRecordsPath() {
+        return FileSystems.getDefault().getPath(this.DBPath + RECORDS_EXTENSION);
+    }
+
+    /**
+     * @brief   Gets the path to the quarantine file of this DB, where damaged lines are copied to.
+     * @return  The path to the quarantine file (the DB path followed by `QUARANTINE_EXTENSION`).
+     */
+    public Path getQuarantinePath() {
+        return FileSystems.getDefault().getPath(this.DBPath + QUARANTINE_EXTENSION);
+    }
+
+    /**
+     * @brief   Gets the path to the metadata sidecar of this DB, recording the metadata and the hash of the DB file.
+     * @return  The path to the metadata sidecar (the DB path followed by `METADATA_EXTENSION`).
+     */
+    public Path getMetadataPath() {
+        return FileSystems.getDefault().getPath(this.DBPath + METADATA_EXTENSION);
+    }
+
+    /**
+     * @brief   Writes a binary record snapshot of the content of this DB.
+     * @details The snapshot holds the same data of the DB as typed binary records (see
+     *          {@link poco.company.group01pocolib.db.BinaryRecordFile BinaryRecordFile}), tagged with the hash of the
+     *          DB content: as long as the DB doesn't change, it can be loaded with `readRecordSnapshot` without parsing
+     *          a single line of text. The text DB file stays the reference copy of the data.
+     *          <br><br>
+     *          Edits not yet in the DB file are checkpointed first, so that the hash covers the whole content.
+     *
+     * @param   codec   The codec converting the items to records.
+     * @param   items   The items of the DB, i.e. the items its lines were written from.
+     * @return  `true` if the snapshot was written, `false` otherwise.
+     */
+    public synchronized <T> boolean writeRecordSnapshot(RecordCodec<T> codec, Collection<T> items) {
+        if (!this.awaitBatchAccess()) return false;
+
+        String hash = this.forceHashOnFile();
+        if (hash == null) return false;
+
+        try {
+            BinaryRecordFile.write(this.getRecordsPath(), codec, items, hash);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @brief   Reads the binary record snapshot of this DB, if it is up to date.
+     *
+     * @param   codec The codec converting the records to items.
+     * @return  The items of the snapshot in file order, or `null` if there is no snapshot, it was written from a
+     *          different content of the DB or with a different schema, or it can't be read.
+     */
+    public synchronized <T> List<T> readRecordSnapshot(RecordCodec<T> codec) {
+        if (!this.awaitBatchAccess()) return null;
+        if (!Files.exists(this.getRecordsPath()) || this.DBFileHash == null) return null;
+
+        // The hash only covers the DB file, edits replayed from the journal would go unnoticed
+        if (this.journalBytes > 0 || this.pendingEdits > 0) return null;
+
+        try {
+            return BinaryRecordFile.read(this.getRecordsPath(), codec, this.DBFileHash);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @brief   Updates the stored hash of the DB file.
+     * @details This method recalculates the hash of the DB file based on its current content. It uses the internal
+     *          cache of lines to compute the hash efficiently. If the cache is empty and cannot be built, it sets the
+     *          hash to `null`, indicating an issue with the file.
+     *          <br><br>
+     *          The hash is the root of a Merkle tree over fixed-size blocks of lines (see
+     *          {@link poco.company.group01pocolib.db.MerkleTree MerkleTree}): the whole cache is digested in parallel
+     *          when it is loaded, and after an edit only the block of the edited line (or, for inserted and removed
+     *          lines, the blocks following it) and the path to the root are digested again.
+     */
+    public synchronized void updateDBFileHash() {
+        if (!this.ensureCache()) {
+            // If cache build fails, there's something wrong with the file, so we set the hash to null
+            DBFileHash = null;
+            return;
+        }
+
+        // The lines of a paged (or compressed) cache are loaded one page at a time, and are digested sequentially
+        this.DBFileHash = this.merkleTree().getRoot(this.cache.getStoredLines(), this.holdsAllLines());
+    }
+
+    /**
+     * @brief   Sets the hash of a paged (or compressed) DB file that was just loaded, without reading its lines
+     *          through the cache.
+     * @details The hash and the digests of the blocks of lines are taken from the sidecar, if it is up to date, or
+     *          else calculated from the raw DB file in a single sequential pass (decompressing one block at a time, in
+     *          `CacheMode.COMPRESSED`). Either way the Merkle tree of the
+     *          cache is restored from the digests of the blocks, so the next hash only digests the blocks edited from
+     *          now on.
+     *
+     * @return  `true` if the hash was set, `false` if it has to be calculated from the cache.
+     */
+    private boolean loadFileHash() {
+        if (this.holdsAllLines() || this.journalBytes > 0) return false;
+
+        String hash;
+        byte[][] blockHashes;
+        FileMetadata metadata = this.readCurrentMetadata();
+        if (metadata != null && metadata.getBlockHashes() != null) {
+            hash = metadata.getHash();
+            blockHashes = metadata.getBlockHashes();
+        } else if (this.cacheMode == CacheMode.COMPRESSED) {
+            MerkleTree fileTree = new MerkleTree(this.getHashStrategy());
+            hash = this.hashCompressedFile(fileTree);
+            blockHashes = fileTree.getLeaves();
+        } else {
+            MerkleTree.Builder builder = new MerkleTree.Builder(this.getHashStrategy());
+            try {
+                MappedFileLoader.load(this.getDBPathAsPath(), builder::add);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+            hash = builder.getRoot();
+            blockHashes = builder.getLeaves();
+        }
+
+        int blockCount = (this.cache.size() + MerkleTree.BLOCK_LINES - 1) / MerkleTree.BLOCK_LINES;
+        if (blockHashes == null || blockHashes.length != blockCount) return false;
+
+        this.merkleTree().restore(blockHashes);
+        this.DBFileHash = hash;
+        return true;
+    }
+
+    /**
+     * @brief   Updates the stored hash of the DB file and returns it.
+     * @details This method recalculates the hash of the DB file based on its current content and returns the updated
+     *          hash. It uses the internal cache of lines to compute the hash efficiently. If the cache is empty and
+     *          cannot be built, it sets the hash to `null`, indicating an issue with the file.
+     *
+     * @return  The updated hash of the DB file.
+     */
+    public synchronized String updateAndGetDBFileHash() {
+        updateDBFileHash();
+
+        return this.DBFileHash;
+    }
+
+    /**
+     * @brief   Forces recalculation of the DB file hash directly from the file.
+     * @details This method recalculates the hash of the DB file by reading its content directly from the file,
+     *          bypassing the internal cache. This can be useful in scenarios where the file may have been modified
+     *          externally, and we want to ensure that the stored hash reflects the actual content of the file.
+     *          <br><br>
+     *          If the newly calculated hash differs from the stored hash, it rebuilds the internal cache to keep it in
+     *          sync with the file.
+     *          <br><br>
+     *          If neither the cache nor the file (according to its size and last modified time) changed since the file
+     *          was loaded, the hash is calculated from the cache without reading the file again. Likewise, if the file
+     *          still has the metadata recorded in the sidecar (see `getMetadataPath`), the hash recorded along with it
+     *          is returned without reading the file at all.
+     *
+     * @return  The newly calculated hash of the DB file, or `null` if the file can't be read.
+     */
+    public synchronized String forceHashOnFile() {
+        if (!this.awaitBatchAccess()) return null;
+
+        // Pending journal records (and edits waiting for the flusher) are not in the DB file yet, fold them in before
+        // hashing it
+        if (this.journalBytes > 0 || this.pendingEdits > 0 || this.flushing) {
+            this.checkpoint();
+        }
+
+        String forcedHash;
+        FileMetadata metadata;
+        boolean fileRead = false;
+        if (this.isLoadSnapshotCurrent()) {
+            // If the file is still the one loaded in the cache, the tree of the cache is the tree of the file
+            forcedHash = this.merkleTree().getRoot(this.cache.getStoredLines(), true);
+        } else if ((metadata = this.readCurrentMetadata()) != null) {
+            // If the file still has the metadata recorded in the sidecar, it wasn't changed since it was hashed
+            forcedHash = metadata.getHash();
+        } else {
+            forcedHash = this.cacheMode == CacheMode.COMPRESSED
+                    ? this.hashCompressedFile(new MerkleTree(this.getHashStrategy()))
+                    : Hash.getMerkleFileHash(this.getDBPathAsPath(), this.getHashStrategy());
+            fileRead = true;
+        }
+
+        if (forcedHash == null) return null;
+
+        if (!forcedHash.equals(DBFileHash)) {
+            // If the hash has changed, we need to rebuild the cache to keep it in sync with the file
+            this.buildCache();
+        }
+
+        this.DBFileHash = forcedHash;
+
+        // The next time, the sidecar spares reading the file again (unless a journal keeps the cache ahead of it)
+        if (fileRead && this.journalBytes == 0) this.recordMetadata();
+
+        return forcedHash;
+    }
+
+    /**
+     * @brief   Reloads the DB file after it was edited by someone else, returning the lines that changed.
+     * @details If the DB file still has the metadata recorded in the sidecar (as it has after every write made by this
+     *          DB), nothing changed and the DB file is not read. Otherwise the cache is rebuilt from the DB file, and
+     *          the lines it held before are compared with the new ones (see
+     *          {@link poco.company.group01pocolib.db.LineDiff LineDiff}), so that whoever keeps data built from the
+     *          lines of the DB only has to update what actually changed.
+     *          <br><br>
+     *          Edits of this DB that are not in the DB file yet win over the external edit: while edits are waiting
+     *          for the flusher, nothing is reloaded, since the flusher is about to overwrite the DB file anyway. A
+     *          journal, on the other hand, is ignored from now on, since it refers to the old content of the DB file.
+     *          <br><br>
+     *          In a checksummed DB, the lines written by hand are taken as they are: the DB file is written again right
+     *          away with their checksum column.
+     *
+     * @return  The lines removed from and inserted in the DB, or `null` if the DB file can't be read.
+     */
+    public synchronized LineDiff reconcile() {
+        if (!this.awaitBatchAccess()) return null;
+
+        if (this.pendingEdits > 0 || this.flushing || this.isLoadSnapshotCurrent()
+                || this.readCurrentMetadata() != null) {
+            return LineDiff.EMPTY;
+        }
+
+        List<String> oldLines = new ArrayList<>(this.cache);
+        if (!this.buildCache()) return null;
+
+        // Lines written by hand in a checksummed file are taken as they are, and get their column right away
+        if (this.holdsAllLines() && this.cache.addMissingChecksums() > 0) {
+            this.merkleTree().invalidate();
+            this.checkpoint();
+        }
+
+        this.updateDBFileHash();
+        if (this.journalBytes == 0) this.recordMetadata();
+
+        return LineDiff.between(oldLines, new ArrayList<>(this.cache));
+    }
+
+    /**
+     * @brief   Calculates the hash of the content of a compressed DB file.
+     * @details The hash of a compressed DB file is the Merkle root of its lines, the same one `updateDBFileHash`
+     *          calculates from the cache. Blocks are decompressed one at a time, so the file is never loaded in memory
+     *          as a whole.
+     *
+     * @param   tree    An empty Merkle tree, which holds the digests of the blocks of lines of the DB file afterwards.
+     * @return  The hash of the content of the DB file, or `null` if it can't be read.
+     */
+    private String hashCompressedFile(MerkleTree tree) {
+        CompressedLineList fileLines = new CompressedLineList(this.getDBPathAsPath(), PAGE_SIZE, 1);
+
+        try {
+            fileLines.reload();
+            return tree.getRoot(fileLines, false);
+        } catch (IOException | UncheckedIOException | IllegalStateException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @brief   Checks whether the DB file is still the one that was loaded, and the cache was not changed since.
+     * @return  `true` if the information gathered while loading the DB file is still valid.
+     */
+    private boolean isLoadSnapshotCurrent() {
+        if (this.loadSnapshot == null) return false;
+
+        try {
+            Path DBFile = this.getDBPathAsPath();
+            return Files.size(DBFile) == this.loadSnapshot.size
+                    && Files.getLastModifiedTime(DBFile).equals(this.loadSnapshot.lastModified);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @brief   Records the metadata of the DB file in the sidecar, along with the hash of its content, right after the
+     *          DB file was written from (or loaded in) the cache.
+     * @details The sidecar is only a shortcut: if it can't be written, the DB file is hashed the next time it is
+     *          needed, as if there were no sidecar.
+     */
+    private void recordMetadata() {
+        String hash = this.merkleTree().getRoot(this.cache.getStoredLines(), this.holdsAllLines());
+
+        try {
+            FileMetadata.capture(this.getDBPathAsPath(), this.getHashStrategy(), hash, this.merkleTree().getLeaves())
+                        .write(this.getMetadataPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @brief   Reads the metadata sidecar, if it can be trusted for the DB file as it is now.
+     * @return  The metadata recorded in the sidecar, or `null` if there is no sidecar, the DB file changed since it
+     *          was written, or it was written with a different hash strategy.
+     */
+    private FileMetadata readCurrentMetadata() {
+        try {
+            FileMetadata metadata = FileMetadata.read(this.getMetadataPath());
+            if (metadata == null || !metadata.matches(this.getDBPathAsPath(), this.getHashStrategy())) return null;
+
+            return metadata;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @brief   Resumes a DB deserialized along with its content, if the DB file is still the one it was serialized
+     *          with.
+     * @details The cache of a DB is serialized along with it. If there is no journal to replay and the DB file still
+     *          has the metadata recorded in the sidecar, whose hash is both the hash of this DB and `expectedHash`,
+     *          the cache is already the content of the DB file, and the DB can be used right away without reading the
+     *          DB file at all. The Merkle tree of the cache is restored from the block hashes in the sidecar, so the
+     *          next hash only digests the blocks edited from now on.
+     *          <br><br>
+     *          Only a DB whose cache holds every line (in `CacheMode.EAGER` or `OFF_HEAP`) holds its content when
+     *          serialized.
+     *
+     * @param   expectedHash The hash the DB file is expected to have, e.g. the one saved along with the DB.
+     * @return  `true` if the DB can be used as it is, `false` if it has to be loaded from the DB file again.
+     */
+    public synchronized boolean resumeIfUnchanged(String expectedHash) {
+        if (!this.holdsAllLines() || expectedHash == null || !expectedHash.equals(this.DBFileHash)) {
+            return false;
+        }
+        if (Files.exists(this.getJournalPath())) return false;
+
+        FileMetadata metadata = this.readCurrentMetadata();
+        if (metadata == null || !metadata.getHash().equals(expectedHash)) return false;
+
+        this.journalBytes = 0;
+        this.loadSnapshot = null;
+        this.keyIndex = null;
+
+        byte[][] blockHashes = metadata.getBlockHashes();
+        int blockCount = (this.cache.size() + MerkleTree.BLOCK_LINES - 1) / MerkleTree.BLOCK_LINES;
+        if (blockHashes != null && blockHashes.length == blockCount) {
+            this.merkleTree().restore(blockHashes);
+        } else {
+            this.merkleTree().invalidate();
+        }
+
+        return true;
+    }
+
+    /**
+     * @brief   Detects the line separator used in a file.
+     * @details This method reads the file at the specified path and detects the line separator used. This can be useful
+     *          to ensure cross-platform compatibility when transferring DB files between different operating systems.
+     *          <br><br>
+     *          Normally this wouldn't be necessary, but to improve efficiency when calculating file hashes, in order to
+     *          use the `Hash.getFileHashFromLines` method, while getting the same result as `Hash.getFileHash`, we need
+     *          to know the exact line separator used in the file.
+     *
+     * @return  The detected line separator as a `String` ("\n", "\r\n", or "\r"). If no line breaks are found, returns
+     *          the system's default line separator.
+     */
+    public String detectLineSeparator() {
+        try (InputStream stream = Files.newInputStream(this.getDBPathAsPath())) {
+            int b;
+            while ((b = stream.read()) != -1) {
+                // Unix/Linux/MacOS line ending
+                if (b == '\n') return "\n";
+                if (b == '\r') {
+                    int next = stream.read();
+                    // Windows line ending
+                    if (next == '\n') return "\r\n";
+                    // Legacy Mac line ending
+                    return "\r";
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return System.lineSeparator(); // Default if no line breaks found
+    }
+
+
+    /**
+     * @brief   Clears the entire DB file and the internal cache.
+     * @details This method removes all entries from the database file and clears the internal cache of lines.
+     *          Use with caution as this operation is irreversible.
+     */
+    public synchronized void clear() {
+        if (!this.awaitWriteAccess()) return;
+
+        this.loadSnapshot = null;
+        this.cache.clear();
+        this.keyIndex = null;
+        this.merkleTree().invalidate();
+
+        if (this.batchUndo != null) {
+            this.batchRewrite = true;
+            return;
+        }
+
+        if (this.writeBehind) {
+            this.enqueue(List.of(), true);
+            return;
+        }
+
+        if (this.updateDBFromCache()) {  // Writes an empty string to the file, clearing it
+            this.resetJournal();
+        }
+    }
+
+    /**
+     * @brief   Rebuilds the whole database from a single input `String`.
+     * @details This method completely overwrites the database file with the provided input string. It also rebuilds
+     *          the internal cache to reflect the new content of the database file.
+     *          <br><br>
+     *          During a batch, the content is split in lines and the DB file is rewritten when the batch is committed
+     *          (or by the flusher, in write-behind mode).
+     */
+    public synchronized boolean rebuildDBFromString(String newDBContent) {
+        if (!this.awaitWriteAccess()) return false;
+
+        // During a batch (or in write-behind mode) the content is only split in lines, the DB file is rewritten later
+        // (a compressed or checksummed DB file can only be written from the cache)
+        if (this.batchUndo != null || this.writeBehind || this.cacheMode == CacheMode.COMPRESSED
+                || this.cache.isChecksummed()) {
+            this.loadSnapshot = null;
+            this.cache.clear();
+            this.keyIndex = null;
+            this.merkleTree().invalidate();
+            newDBContent.lines().forEach(this.cache::add);
+
+            if (this.batchUndo != null) {
+                this.batchRewrite = true;
+            } else if (this.writeBehind) {
+                this.enqueue(List.of(), true);
+                this.updateDBFileHash();
+            } else {
+                if (!this.updateDBFromCache()) return false;
+
+                this.resetJournal();
+                this.updateDBFileHash();
+            }
+            return true;
+        }
+
+        if (!this.commitToFile(output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            writer.write(newDBContent);
+            writer.flush();
+        })) return false;
+
+        this.resetJournal();
+        this.buildCache();
+        this.updateDBFileHash();
+        this.recordMetadata();
+        return true;
+    }
+
+    /**
+     * @brief   Builds the cache of lines from the DB file if it is empty.
+     * @details During a batch the cache is never rebuilt, since it is ahead of the DB file (and may be empty just
+     *          because the batch cleared it).
+     *
+     * @return  `true` if the cache can be used, `false` if it had to be built and the build failed.
+     */
+    private boolean ensureCache() {
+        if (!this.cache.isEmpty() || this.batchUndo != null) return true;
+
+        return this.buildCache();
+    }
+
+    /**
+     * @brief   Builds the cache of lines from the DB file.
+     * @details This method reads all lines from the database file and stores them in an internal cache for faster
+     *          access. It clears any existing cached lines before rebuilding the cache, and replays the journal on
+     *          top of the lines read from the DB file.
+     *
+     * @return  `true` if the cache was successfully built, `false` otherwise.
+     */
+    public synchronized boolean buildCache() {
+        if (!this.awaitBatchAccess()) return false;
+
+        if (!this.loadCacheFromFile()) return false;
+
+        this.cache.reloaded();
+        this.cache.detectChecksums();
+        this.merkleTree().invalidate();
+        this.journalBytes = 0;
+        this.replayJournal();
+
+        return true;
+    }
+
+    /**
+     * @brief   Loads the lines of the DB file in the cache (or indexes them, in `CacheMode.PAGED`, or reads the block
+     *          directory, in `CacheMode.COMPRESSED`).
+     * @return  `true` if the lines were successfully loaded, `false` otherwise.
+     */
+    private boolean loadCacheFromFile() {
+        this.keyIndex = null;
+
+        if (this.cache.getStoredLines() instanceof PagedLineList pagedCache) {
+            try {
+                pagedCache.reindex();
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        if (this.cache.getStoredLines() instanceof CompressedLineList compressedCache) {
+            try {
+                compressedCache.reload();
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                compressedCache.clear();
+                return false;
+            }
+        }
+
+        this.cache.clear();
+        this.loadSnapshot = null;
+
+        try {
+            MappedFileLoader.Result result = MappedFileLoader.load(this.getDBPathAsPath(),
+                    this.cache.getStoredLines()::add);
+
+            if (result.lineSeparator != null) {
+                this.lineSeparator = result.lineSeparator;
+            }
+            this.loadSnapshot = result;
+
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.cache.clear();
+            return false;
+        }
+    }
+
+    /**
+     * @brief   Updates the DB file from cache.
+     * @details This method completely overwrites the database file using the lines saved in cache. Use with caution.
+     *
+     * @return  `true` if the DB file was successfully updated, `false` otherwise.
+     */
+    private boolean updateDBFromCache() {
+        if (!this.awaitFlusherWrite()) return false;
+
+        boolean updated;
+
+        // Lines written by hand get their checksum column the first time the whole file is written again (only when
+        // every line is in memory, so that a paged or compressed file isn't read in full just to look for them)
+        if (this.holdsAllLines() && this.cache.addMissingChecksums() > 0) {
+            this.merkleTree().invalidate();
+            this.updateDBFileHash();
+        }
+
+        List<String> storedLines = this.cache.getStoredLines();
+
+        if (storedLines instanceof CompressedLineList compressedCache) {
+            updated = this.commitToFile(compressedCache::writeTo);
+        } else {
+            updated = this.commitToFile(output -> writeLines(output, storedLines, this.lineSeparator));
+        }
+
+        // The offsets of a paged (or compressed) cache refer to the file that was just replaced
+        if (updated && !this.holdsAllLines()) {
+            updated = this.loadCacheFromFile();
+        }
+
+        // Edits waiting for the flusher were just written along with the rest of the cache
+        if (updated) {
+            this.discardPendingEdits();
+            this.recordMetadata();
+        }
+
+        return updated;
+    }
+
+    /**
+     * @brief   Content producer used by `commitToFile`.
+     */
+    @FunctionalInterface
+    private interface ContentWriter {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    /**
+     * @brief   Writes lines to a stream, separated (but not terminated) by a line separator.
+     *
+     * @param   output          The stream to write to.
+     * @param   lines           The lines to write.
+     * @param   lineSeparator   The line separator to write between two lines.
+     * @throws  IOException     If the stream can't be written.
+     */
+    private static void writeLines(OutputStream output, List<String> lines, String lineSeparator) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        for (int i = 0; i < lines.size(); i++) {
+            writer.write(lines.get(i));
+
+            if (i < lines.size() - 1) {
+                writer.write(lineSeparator);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * @brief   Atomically replaces the DB file with new content.
+     * @details The new content is written to a temporary file in the same directory of the DB file, forced to disk if
+     *          the durability policy requires it, and then moved over the DB file with an atomic rename. Readers of
+     *          the DB file (and a crash at any point) will only ever see either the old or the new content.
+     *          <br><br>
+     *          A read-only DB file is never replaced, even if the directory containing it would allow it.
+     *
+     * @param   content The producer of the new content of the DB file.
+     * @return  `true` if the DB file was successfully replaced, `false` otherwise.
+     */
+    private boolean commitToFile(ContentWriter content) {
+        this.loadSnapshot = null;
+
+        boolean sync = this.isSyncDue();
+        if (!replaceFile(this.getDBPathAsPath(), content, sync)) return false;
+
+        this.afterCommit(sync);
+        return true;
+    }
+
+    /**
+     * @brief   Atomically replaces a DB file with new content, through a temporary file (see `commitToFile`).
+     * @details Touches no state of the DB, so that the flusher can call it without holding the lock of the DB.
+     *
+     * @param   DBFile  The DB file to replace.
+     * @param   content The producer of the new content of the DB file.
+     * @param   sync    Whether the new content has to be forced to disk.
+     * @return  `true` if the DB file was successfully replaced, `false` otherwise.
+     */
+    private static boolean replaceFile(Path DBFile, ContentWriter content, boolean sync) {
+        Path tempFile = FileSystems.getDefault().getPath(DBFile + TEMP_EXTENSION);
+
+        if (Files.exists(DBFile) && !Files.isWritable(DBFile)) return false;
+
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel));
+                content.writeTo(output);
+                output.flush();
+
+                if (sync) channel.force(true);
+            }
+
+            try {
+                Files.move(tempFile, DBFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, DBFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            // The rename itself only survives a crash once the directory entry is on disk too
+            if (sync) syncDirectory(DBFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+                // Nothing more can be done, the temporary file is overwritten by the next commit anyway
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @brief   Checks whether the commit being performed has to be forced to disk, according to the durability policy.
+     * @return  `true` if the commit must be forced to disk.
+     */
+    private boolean isSyncDue() {
+        return switch (this.durabilityPolicy) {
+            case SYNC_EVERY_COMMIT -> true;
+            case SYNC_INTERVAL -> System.currentTimeMillis() - this.lastSyncTime >= this.syncIntervalMillis;
+            case OS_BUFFERED -> false;
+        };
+    }
+
+    /**
+     * @brief   Keeps track of syncs after a commit, scheduling a deferred sync for commits left unsynced under the
+     *          `SYNC_INTERVAL` policy.
+     *
+     * @param   synced Whether the commit was forced to disk.
+     */
+    private void afterCommit(boolean synced) {
+        if (synced) {
+            this.lastSyncTime = System.currentTimeMillis();
+            return;
+        }
+
+        if (this.durabilityPolicy != DurabilityPolicy.SYNC_INTERVAL) return;
+
+        synchronized (DB.class) {
+            if (this.deferredSyncScheduled) return;
+            this.deferredSyncScheduled = true;
+
+            if (syncScheduler == null) {
+                syncScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "DB-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+
+        long delay = Math.max(0, this.lastSyncTime + this.syncIntervalMillis - System.currentTimeMillis());
+        syncScheduler.schedule(this::sync, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @brief   Forces the DB file and the journal to disk, whatever the durability policy is.
+     * @return  `true` if everything was forced to disk, `false` otherwise.
+     */
+    public boolean sync() {
+        synchronized (DB.class) {
+            this.deferredSyncScheduled = false;
+        }
+
+        boolean synced = true;
+        for (Path file : List.of(this.getDBPathAsPath(), this.getJournalPath())) {
+            if (!Files.exists(file)) continue;
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (IOException e) {
+                e.printStackTrace();
+                synced = false;
+            }
+        }
+
+        if (synced) this.lastSyncTime = System.currentTimeMillis();
+        return synced;
+    }
+
+    /**
+     * @brief   Forces the directory entry of a file to disk.
+     * @details Not every platform allows opening a directory (e.g. Windows), in which case this does nothing.
+     *
+     * @param   file The file whose parent directory has to be forced to disk.
+     */
+    private static void syncDirectory(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory == null) return;
+
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException ignored) {
+            // The directory can't be opened on this platform, the OS will eventually persist the rename
+        }
+    }
+
+    /**
+     * @brief   Persists an edit that was already applied to the cache.
+     * @details In journal mode the edit is appended to the journal as a single record, otherwise the whole DB file is
+     *          rewritten from cache.
+     *
+     * @param   operation   The journal operation (`JOURNAL_INSERT`, `JOURNAL_REPLACE` or `JOURNAL_DELETE`).
+     * @param   N           Index of the line affected by the edit (0-based).
+     * @param   line        The new content of the line (ignored for deletions).
+     * @return  `true` if the edit was persisted, `false` otherwise.
+     */
+    private boolean persist(String operation, int N, String line) {
+        String record = operation + " " + N + " " + line;
+
+        // Edits made during a batch are persisted on commit
+        if (this.batchUndo != null) {
+            this.batchRecords.add(record);
+            return true;
+        }
+
+        if (this.writeBehind) {
+            this.enqueue(List.of(record), !this.journaled);
+            return true;
+        }
+
+        if (!this.journaled) {
+            if (!this.updateDBFromCache()) return false;
+
+            this.resetJournal();
+            return true;
+        }
+
+        return this.appendToJournal(List.of(record), true);
+    }
+
+    /**
+     * @brief   Appends records to the journal with a single write, checkpointing if the journal grew bigger than the DB
+     *          file.
+     * @details The first record of a journal is always a `JOURNAL_BASE` record holding the hash of the DB file the
+     *          records apply to (see `getJournalBase`). This way a journal that was not removed after a checkpoint
+     *          (e.g. because of a crash right after the DB file was rewritten) is recognized as stale and never
+     *          replayed twice.
+     *
+     * @param   records     The records to append (without the trailing newline).
+     * @param   allowSync   If `false`, the journal is never forced to disk, leaving it to the caller.
+     * @return  `true` if the records were appended, `false` otherwise.
+     */
+    private boolean appendToJournal(List<String> records, boolean allowSync) {
+        if (!this.awaitFlusherWrite()) return false;
+
+        byte[] bytes = this.encodeJournalRecords(records);
+        boolean create = this.journalBytes == 0;
+        boolean sync = allowSync && this.isSyncDue();
+
+        // A journal that was just created is only found after a crash once its directory entry is on disk
+        if (!writeJournal(this.getDBPathAsPath(), this.getJournalPath(), bytes, create, sync,
+                          create && (sync || !allowSync))) {
+            return false;
+        }
+
+        if (allowSync) this.afterCommit(sync);
+        this.journalBytes += bytes.length;
+
+        if (this.journalBytes > Math.max(MIN_JOURNAL_CHECKPOINT_BYTES, fileSize(this.getDBPathAsPath()))) {
+            this.checkpoint();
+        }
+
+        return true;
+    }
+
+    /**
+     * @brief   Encodes records as they are appended to the journal, preceded by the `JOURNAL_BASE` record if the
+     *          journal is still empty.
+     *
+     * @param   records The records to encode (without the trailing newline).
+     * @return  The bytes to append to the journal.
+     */
+    private byte[] encodeJournalRecords(List<String> records) {
+        StringBuilder output = new StringBuilder();
+
+        if (this.journalBytes == 0) {
+            // The DB file is still untouched, so its hash is the base of the new journal
+            output.append(JOURNAL_BASE).append(" 0 ").append(this.getJournalBase()).append('\n');
+        }
+        for (String record : records) {
+            output.append(record).append('\n');
+        }
+
+        return output.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @brief   Gets the base of a new journal: the name of the hash strategy of the DB and the hash of the DB file.
+     * @details The hash is the Merkle root of the lines of the DB file, the same of `getDBFileHash`. It is taken from
+     *          the sidecar, which is written along with the DB file (see `getMetadataPath`), so the DB file is only
+     *          read if the sidecar is missing or out of date.
+     *
+     * @return  The base of a new journal, as written in its `JOURNAL_BASE` record.
+     */
+    private String getJournalBase() {
+        FileMetadata metadata = this.readCurrentMetadata();
+        String hash = metadata != null ? metadata.getHash()
+                                       : Hash.getMerkleFileHash(this.getDBPathAsPath(), this.getHashStrategy());
+
+        return this.getHashStrategy().getName() + " " + hash;
+    }
+
+    /**
+     * @brief   Checks whether a journal applies to the DB file that was just loaded in the cache.
+     * @details The hash in the base of the journal is compared with the one in the sidecar, if it is up to date and
+     *          was calculated with the same strategy, or else with the Merkle root of the cache, which holds the lines
+     *          of the DB file and nothing else yet.
+     *
+     * @param   base The base of the journal, as written in its `JOURNAL_BASE` record (see `getJournalBase`).
+     * @return  `true` if the journal was started on the content the DB file has now.
+     */
+    private boolean isJournalBaseCurrent(String base) {
+        String[] fields = base.split(" ", 2);
+        if (fields.length != 2) return false;
+
+        HashStrategy strategy = fields[0].equals(this.getHashStrategy().getName()) ? this.getHashStrategy()
+                                                                                   : HashStrategy.forName(fields[0]);
+        if (strategy == null) return false;
+
+        FileMetadata metadata = this.readCurrentMetadata();
+        if (metadata != null && strategy == this.getHashStrategy()) return fields[1].equals(metadata.getHash());
+
+        MerkleTree tree = strategy == this.getHashStrategy() ? this.merkleTree() : new MerkleTree(strategy);
+        return fields[1].equals(tree.getRoot(this.cache.getStoredLines(), this.holdsAllLines()));
+    }
+
+    /**
+     * @brief   Appends encoded records to the journal of a DB file with a single write.
+     * @details Touches no state of the DB, so that the flusher can call it without holding the lock of the DB.
+     *
+     * @param   DBFile          The DB file the journal belongs to.
+     * @param   journal         The journal.
+     * @param   bytes           The encoded records (see `encodeJournalRecords`).
+     * @param   create          `true` to replace whatever stale journal was left behind, `false` to append to it.
+     * @param   sync            Whether the journal has to be forced to disk.
+     * @param   syncDirectory   Whether the directory entry of the journal has to be forced to disk.
+     * @return  `true` if the records were appended, `false` otherwise.
+     */
+    private static boolean writeJournal(Path DBFile, Path journal, byte[] bytes, boolean create, boolean sync,
+                                        boolean syncDirectory) {
+        // A read-only DB must not be edited, even if the DB file itself is left untouched
+        if (Files.exists(DBFile) && !Files.isWritable(DBFile)) return false;
+
+        StandardOpenOption mode = create ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    mode)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            if (sync) channel.force(true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        if (syncDirectory) syncDirectory(journal);
+        return true;
+    }
+
+    /**
+     * @brief   Gets the size of a file.
+     * @param   file The file.
+     * @return  The size of the file in bytes, or 0 if it can't be read.
+     */
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @brief   Replays the journal on the cache.
+     * @details Records are applied in order. A torn last record (one without its trailing newline) is ignored, and so
+     *          is a journal whose base hash does not correspond to the current content of the DB file.
+     */
+    private void replayJournal() {
+        Path journalPath = this.getJournalPath();
+        if (!Files.exists(journalPath)) return;
+
+        String journal;
+        try {
+            journal = Files.readString(journalPath, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // Anything after the last newline is a record that was not completely written
+        int validLength = journal.lastIndexOf('\n') + 1;
+        boolean damaged = validLength < journal.length();
+        String[] records = journal.substring(0, validLength).split("\n");
+
+        if (records.length == 0 || records[0].isEmpty()) return;
+
+        String[] base = records[0].split(" ", 3);
+        if (base.length != 3 || !base[0].equals(JOURNAL_BASE) || !this.isJournalBaseCurrent(base[2])) {
+            System.err.println("Warning: Ignoring stale journal " + journalPath);
+            this.resetJournal();
+            return;
+        }
+
+        if (records.length > 1) {
+            this.loadSnapshot = null;
+        }
+
+        for (int i = 1; i < records.length; i++) {
+            String[] fields = records[i].split(" ", 3);
+
+            try {
+                int N = Integer.parseInt(fields[1]);
+                String line = fields.length == 3 ? fields[2] : "";
+
+                switch (fields[0]) {
+                    case JOURNAL_INSERT -> this.cache.add(N, line);
+                    case JOURNAL_REPLACE -> this.cache.set(N, line);
+                    case JOURNAL_DELETE -> this.cache.remove(N);
+                    default -> throw new IllegalArgumentException("Unknown journal operation " + fields[0]);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Warning: Stopping journal replay at record " + i + ": " + e.getMessage());
+                damaged = true;
+                break;
+            }
+        }
+
+        this.journalBytes = journal.getBytes(StandardCharsets.UTF_8).length;
+
+        // New records can't be appended after a damaged one, so what was recovered goes straight to the DB file
+        if (damaged) {
+            this.checkpoint();
+        }
+    }
+
+    /**
+     * @brief   Removes the journal, after the DB file was rewritten with the content of the cache.
+     */
+    private void resetJournal() {
+        if (this.journalBytes == 0 && !Files.exists(this.getJournalPath())) return;
+        if (!this.awaitFlusherWrite()) return;
+
+        try {
+            Files.deleteIfExists(this.getJournalPath());
+            this.journalBytes = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @brief   Folds the journal into the DB file.
+     * @details The DB file is rewritten from cache and the journal is removed. Until the journal is removed, a crash
+     *          leaves a stale journal behind, which is recognized as such when replaying it.
+     *
+     * @return  `true` if the checkpoint was successful, `false` otherwise.
+     */
+    public synchronized boolean checkpoint() {
+        if (!this.awaitBatchAccess()) return false;
+
+        if (!this.updateDBFromCache()) return false;
+
+        this.resetJournal();
+        return true;
+    }
+
+    /**
+     * @brief   Hands edits over to the flusher thread. Must be called holding the lock of the DB.
+     *
+     * @param   records The journal records of the edits.
+     * @param   rewrite `true` if the edits require rewriting the whole DB file.
+     */
+    private void enqueue(List<String> records, boolean rewrite) {
+        // Once the whole DB file has to be rewritten, journal records are useless
+        if (rewrite || this.pendingRewrite) {
+            this.pendingRewrite = true;
+            this.pendingRecords.clear();
+        } else {
+            this.pendingRecords.addAll(records);
+        }
+
+        this.pendingEdits += Math.max(1, records.size());
+        this.notifyAll();
+    }
+
+    /**
+     * @brief   Forgets every edit pending in write-behind mode, after the whole cache was written to the DB file.
+     */
+    private void discardPendingEdits() {
+        if (this.pendingEdits == 0) return;
+
+        this.pendingRecords.clear();
+        this.pendingRewrite = false;
+        this.pendingEdits = 0;
+        this.notifyAll();
+    }
+
+    /**
+     * @brief   Waits until the flusher is done writing the DB files outside the lock of the DB. Must be called holding
+     *          the lock of the DB, before writing the DB file or the journal.
+     * @return  `true` if the calling thread can write the DB files, `false` if it was interrupted while waiting.
+     */
+    private boolean awaitFlusherWrite() {
+        while (this.flushing) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @brief   Write of the DB files prepared by the flusher holding the lock of the DB, and performed outside of it.
+     */
+    private interface FlusherWrite {
+        /**
+         * @brief   Writes the DB files. Called without holding the lock of the DB.
+         * @return  `true` if the DB files were written, `false` otherwise.
+         */
+        boolean perform();
+
+        /**
+         * @brief   Updates the DB after the DB files were written. Called holding the lock of the DB.
+         */
+        void publish();
+    }
+
+    /**
+     * @brief   Prepares the rewrite of the whole DB file from a snapshot of the cache. Must be called holding the lock
+     *          of the DB, and only if the cache holds every line.
+     * @details In `CacheMode.EAGER` only the references to the chunks of lines of the cache are copied (see
+     *          `snapshot`). The sidecar is written along with the DB file, with the hash of the snapshot, since the
+     *          cache may be edited again before the write is published.
+     *
+     * @return  The prepared write.
+     */
+    private FlusherWrite prepareRewrite() {
+        // Lines written by hand get their checksum column now, while the lock of the DB is held
+        if (this.cache.addMissingChecksums() > 0) this.merkleTree().invalidate();
+        this.updateDBFileHash();
+        this.loadSnapshot = null;
+
+        List<String> storedLines = this.cache.getStoredLines();
+        List<String> lines;
+        Runnable release;
+        if (storedLines instanceof ChunkedLineList chunkedCache) {
+            lines = chunkedCache.snapshot();
+            release = chunkedCache.snapshotReleaser();
+        } else {
+            lines = new ArrayList<>(storedLines);
+            release = () -> {};
+        }
+
+        Path DBFile = this.getDBPathAsPath();
+        Path metadataPath = this.getMetadataPath();
+        HashStrategy hashStrategy = this.getHashStrategy();
+        String hash = this.DBFileHash;
+        byte[][] blockHashes = this.merkleTree().getLeaves();
+        String lineSeparator = this.lineSeparator;
+        boolean sync = this.isSyncDue();
+
+        return new FlusherWrite() {
+            @Override
+            public boolean perform() {
+                try {
+                    if (!replaceFile(DBFile, output -> writeLines(output, lines, lineSeparator), sync)) return false;
+                } finally {
+                    release.run();
+                }
+
+                try {
+                    FileMetadata.capture(DBFile, hashStrategy, hash, blockHashes).write(metadataPath);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                return true;
+            }
+
+            @Override
+            public void publish() {
+                DB.this.afterCommit(sync);
+                DB.this.resetJournal();
+            }
+        };
+    }
+
+    /**
+     * @brief   Prepares the append of records to the journal. Must be called holding the lock of the DB.
+     * @details Once the journal grows bigger than the DB file, a rewrite of the DB file is handed over to the next
+     *          round of the flusher, instead of checkpointing holding the lock of the DB.
+     *
+     * @param   records The records to append (without the trailing newline).
+     * @return  The prepared write.
+     */
+    private FlusherWrite prepareJournalAppend(List<String> records) {
+        byte[] bytes = this.encodeJournalRecords(records);
+        boolean create = this.journalBytes == 0;
+        boolean sync = this.isSyncDue();
+        Path DBFile = this.getDBPathAsPath();
+        Path journal = this.getJournalPath();
+
+        return new FlusherWrite() {
+            private long DBFileSize;
+
+            @Override
+            public boolean perform() {
+                if (!writeJournal(DBFile, journal, bytes, create, sync, sync && create)) return false;
+
+                this.DBFileSize = fileSize(DBFile);
+                return true;
+            }
+
+            @Override
+            public void publish() {
+                DB.this.afterCommit(sync);
+                DB.this.journalBytes += bytes.length;
+
+                if (DB.this.journalBytes > Math.max(MIN_JOURNAL_CHECKPOINT_BYTES, this.DBFileSize)) {
+                    DB.this.enqueue(List.of(), true);
+                }
+            }
+        };
+    }
+
+    /**
+     * @brief   Body of the flusher thread of write-behind mode.
+     * @details The flusher waits for pending edits, gives other edits `WRITE_BEHIND_DELAY_MILLIS` milliseconds to
+     *          join them, and persists them all at once: with a single journal append, in journal mode, or with a
+     *          single rewrite of the DB file otherwise. Edits that couldn't be persisted are retried after
+     *          `FLUSH_RETRY_MILLIS` milliseconds.
+     *          <br><br>
+     *          The pending edits (or a snapshot of the cache) are taken holding the lock of the DB, but they are
+     *          written and forced to disk without holding it, so that the DB can be read and edited in the meantime:
+     *          the lock is taken again only to publish the result, or to put the edits back in the queue if the write
+     *          failed. Other writes of the DB files wait for the one of the flusher to be published. Only the lines of
+     *          a paged (or compressed) cache, which are read from the DB file itself, are rewritten holding the lock.
+     */
+    private void runFlusher() {
+        try {
+            while (true) {
+                List<String> records;
+                boolean rewrite;
+                int edits;
+                FlusherWrite write = null;
+                boolean flushed = false;
+
+                synchronized (this) {
+                    while (this.pendingEdits == 0) {
+                        if (this.flusher != Thread.currentThread()) return;    // Write-behind mode was disabled
+                        this.wait();
+                    }
+
+                    long deadline = System.currentTimeMillis() + WRITE_BEHIND_DELAY_MILLIS;
+                    for (long left = WRITE_BEHIND_DELAY_MILLIS;
+                         left > 0 && !this.flushRequested && this.pendingEdits < this.writeBehindCapacity;
+                         left = deadline - System.currentTimeMillis()) {
+                        this.wait(left);
+                    }
+
+                    // The cache holds the uncommitted edits of open batches, which must not be persisted
+                    if (!this.awaitBatchAccess()) return;
+                    if (this.pendingEdits == 0) continue;
+
+                    records = this.pendingRecords;
+                    rewrite = this.pendingRewrite || !this.journaled || records.size() > MAX_BATCH_JOURNAL_RECORDS;
+                    edits = this.pendingEdits;
+                    this.pendingRecords = new ArrayList<>();
+                    this.pendingRewrite = false;
+                    this.pendingEdits = 0;
+                    this.flushRequested = false;
+
+                    if (rewrite && !this.holdsAllLines()) {
+                        flushed = this.checkpoint();
+                    } else {
+                        write = rewrite ? this.prepareRewrite() : this.prepareJournalAppend(records);
+                        this.flushing = true;
+                    }
+                }
+
+                if (write != null) {
+                    try {
+                        flushed = write.perform();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                synchronized (this) {
+                    if (write != null) {
+                        this.flushing = false;
+                        if (flushed) write.publish();
+                    }
+
+                    if (!flushed) {
+                        // Keeps the edits pending, before any edit made in the meantime
+                        records.addAll(this.pendingRecords);
+                        this.pendingRecords = records;
+                        this.pendingRewrite |= rewrite;
+                        this.pendingEdits += edits;
+                    }
+
+                    this.flushRound++;
+                    this.lastFlushSucceeded = flushed;
+                    this.notifyAll();
+
+                    if (!flushed) this.wait(FLUSH_RETRY_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @brief   Waits until the calling thread can edit the DB. Must be called holding the lock of the DB.
+     * @details Besides waiting for batches of other threads, in write-behind mode edits made outside of a batch wait
+     *          until there is room for them in the write-behind queue, so that the flusher never falls too far behind.
+     *
+     * @return  `true` if the calling thread can edit the DB, `false` if it was interrupted while waiting.
+     */
+    private boolean awaitWriteAccess() {
+        while (true) {
+            if (!this.awaitBatchAccess()) return false;
+            if (!this.writeBehind || this.isInBatch() || this.pendingEdits < this.writeBehindCapacity) return true;
+
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @brief   Waits until no batch of another thread is open on this DB. Must be called holding the lock of the DB.
+     * @return  `true` if the calling thread can edit the DB, `false` if it was interrupted while waiting.
+     */
+    private boolean awaitBatchAccess() {
+        while (this.batchOwner != null && this.batchOwner != Thread.currentThread()) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @brief   Begins a batch of edits.
+     * @details Until the batch is committed or rolled back, edits made by the calling thread only change the cache,
+     *          while edits made by other threads (and other batches) wait for the batch to end.
+     *
+     * @throws  IllegalStateException If the calling thread already has an open batch on this DB.
+     */
+    public synchronized void beginBatch() {
+        if (this.batchOwner == Thread.currentThread()) {
+            throw new IllegalStateException("A batch is already open on DB " + this.DBPath);
+        }
+
+        if (!this.awaitWriteAccess()) {
+            throw new IllegalStateException("Interrupted while waiting to begin a batch on DB " + this.DBPath);
+        }
+
+        this.ensureCache();
+
+        this.batchOwner = Thread.currentThread();
+        this.batchUndo = new ArrayDeque<>();
+        this.batchRecords = new ArrayList<>();
+        this.batchRewrite = false;
+    }
+
+    /**
+     * @brief   Checks whether the calling thread has an open batch on this DB.
+     * @return  `true` if a batch begun by the calling thread is open.
+     */
+    public synchronized boolean isInBatch() {
+        return this.batchOwner == Thread.currentThread();
+    }
+
+    /**
+     * @brief   Commits the open batch of the calling thread.
+     * @details Edits are persisted all together: appended to the journal with a single write, in journal mode, or with
+     *          a single rewrite of the DB file otherwise (and always when the batch cleared or rebuilt the DB, or is
+     *          too big for the journal). The hash of the DB file is then updated once.
+     *          <br><br>
+     *          In journal mode with the `SYNC_EVERY_COMMIT` policy, the journal is forced to disk through a group
+     *          commit: batches committed within `GROUP_COMMIT_WINDOW_MILLIS` of each other share a single fsync.
+     *          <br><br>
+     *          In write-behind mode, the edits of the batch are handed over to the flusher all together, and the commit
+     *          returns without waiting for them to be persisted.
+     *
+     * @return  `true` if the batch was committed, `false` if it couldn't be written (in which case it was rolled
+     *          back) or forced to disk (in which case it is committed but may be lost on a crash).
+     * @throws  IllegalStateException If the calling thread has no open batch on this DB.
+     */
+    public boolean commit() {
+        long sequence = -1;
+
+        synchronized (this) {
+            if (!this.isInBatch()) {
+                throw new IllegalStateException("No batch is open on DB " + this.DBPath);
+            }
+
+            // In write-behind mode the batch is handed over to the flusher as a whole
+            if (this.writeBehind) {
+                List<String> records = this.batchRecords;
+                boolean rewrite = this.batchRewrite;
+
+                this.endBatch();
+                if (!records.isEmpty() || rewrite) this.enqueue(records, rewrite || !this.journaled);
+                this.updateDBFileHash();
+                return true;
+            }
+
+            boolean committed = true;
+            if (!this.batchRecords.isEmpty() || this.batchRewrite) {
+                if (this.journaled && !this.batchRewrite && this.batchRecords.size() <= MAX_BATCH_JOURNAL_RECORDS) {
+                    boolean groupSync = this.durabilityPolicy == DurabilityPolicy.SYNC_EVERY_COMMIT;
+
+                    committed = this.appendToJournal(this.batchRecords, !groupSync);
+                    if (committed && groupSync) {
+                        if (this.groupCommit == null) {
+                            this.groupCommit = new GroupCommit(this.getJournalPath(), GROUP_COMMIT_WINDOW_MILLIS);
+                        }
+                        sequence = this.groupCommit.registerAppend();
+                    }
+                } else {
+                    committed = this.updateDBFromCache();
+                    if (committed) this.resetJournal();
+                }
+            }
+
+            if (!committed) {
+                this.undoBatch();
+                return false;
+            }
+
+            this.endBatch();
+            this.updateDBFileHash();
+        }
+
+        if (sequence == -1) return true;
 
-    private static final int INITIAL_CACHE_CAPACITY = 45000;
+        // Waiting for the fsync outside the lock lets other batches commit and join the same group
+        try {
+            this.groupCommit.awaitSync(sequence);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
     /**
-     * @brief   Constructs a new DB object with the specified file path.
-     * @details This constructor initializes the DB object with the provided file path. It also preloads the lines
-     *          from the DB file into an internal cache for faster access and calculates the initial hash of the DB file.
-     *
-     * @param   DBPath The path to the database file.
+     * @brief   Rolls back the open batch of the calling thread, restoring the cache as it was when the batch began.
+     * @throws  IllegalStateException If the calling thread has no open batch on this DB.
      */
-    public DB(Path DBPath) {
-        this.DBPath = DBPath.toString();
-        this.lineSeparator = detectLineSeparator();
-
-        // Preload lines into cache
-        this.cache = new ArrayList<>(INITIAL_CACHE_CAPACITY);
-        this.buildCache();
+    public synchronized void rollback() {
+        if (!this.isInBatch()) {
+            throw new IllegalStateException("No batch is open on DB " + this.DBPath);
+        }
 
-        // Calculate initial file hash
-        updateDBFileHash();
+        this.undoBatch();
     }
 
     /**
-     * @brief   Constructs a new DB object with the specified file path.
-     * @details This constructor initializes the DB object with the provided file path. It also preloads the lines
-     *          from the DB file into an internal cache for faster access and calculates the initial hash of the DB file.
-     *
-     * @param   DBPath The path to the database file.
+     * @brief   Undoes every edit of the open batch and ends it.
      */
-    public DB(String DBPath) {
-        this.DBPath = DBPath;
-        this.lineSeparator = detectLineSeparator();
-
-        // Preload lines into cache
-        this.cache = new ArrayList<>(INITIAL_CACHE_CAPACITY);
-        this.buildCache();
+    private void undoBatch() {
+        if (this.batchRewrite) {
+            // The DB file was not touched by the batch, so the cache is restored by loading it again
+            this.batchUndo = null;
+            this.buildCache();
+        } else {
+            while (!this.batchUndo.isEmpty()) {
+                this.batchUndo.pop().run();
+            }
+        }
 
-        // Calculate initial file hash
-        updateDBFileHash();
+        this.endBatch();
     }
 
     /**
-     * @brief   Gets the path to the DB file as a `String`.
-     * @return  The path to the DB file.
+     * @brief   Ends the open batch, waking up the threads waiting for it.
      */
-    public String getDBPath() {
-        return DBPath;
+    private void endBatch() {
+        this.batchOwner = null;
+        this.batchUndo = null;
+        this.batchRecords = null;
+        this.batchRewrite = false;
+        this.notifyAll();
     }
 
     /**
-     * @brief   Gets the path to the DB file as a `Path` object.
-     * @return  The path to the DB file.
+     * @brief   Extracts the key of a line.
+     *
+     * @param   line        The line.
+     * @param   keyField    The position of the key field.
+     * @return  The key of the line, or `null` if the line has no field at that position (or is damaged).
      */
-    public Path getDBPathAsPath() {
-        return FileSystems.getDefault().getPath(this.DBPath);
+    static String extractKey(String line, int keyField) {
+        if (line == null) return null;
+
+        int start = 0;
+        for (int i = 0; i < keyField; i++) {
+            start = line.indexOf(FIELD_SEPARATOR, start) + 1;
+            if (start == 0) return null;
+        }
+
+        int end = line.indexOf(FIELD_SEPARATOR, start);
+        return line.substring(start, end == -1 ? line.length() : end);
     }
 
     /**
-     * @brief   Sets the path to the DB file from a `String`.
-     * @param   DBPath The new path to the DB file.
+     * @brief   Gets the Merkle tree of the cache, creating it if this DB was just deserialized.
+     * @return  The Merkle tree of the cache.
      */
-    public void setDBPath(String DBPath) {
-        this.DBPath = DBPath;
+    private MerkleTree merkleTree() {
+        if (this.merkleTree == null) this.merkleTree = new MerkleTree(this.getHashStrategy());
+
+        return this.merkleTree;
     }
 
     /**
-     * @brief   Sets the path to the DB file from a `Path` object.
-     * @param   DBPath The new path to the DB file.
+     * @brief   Builds the key index from the cache, if it is stale. Must be called holding the lock of the DB.
+     * @throws  IllegalStateException If no key field is set.
      */
-    public void setDBPath(Path DBPath) {
-        this.DBPath = DBPath.toString();
+    private void ensureKeyIndex() {
+        if (this.keyField == NO_KEY_FIELD) {
+            throw new IllegalStateException("No key field is set on DB " + this.DBPath);
+        }
+        if (this.keyIndex != null) return;
+
+        this.ensureCache();
+
+        Map<String, Integer> index = new HashMap<>(Math.max(16, this.cache.size() * 4 / 3 + 1));
+        boolean duplicates = false;
+        for (int i = 0; i < this.cache.size(); i++) {
+            String key = extractKey(this.cache.get(i), this.keyField);
+            if (key != null) duplicates |= index.putIfAbsent(key, i) != null;
+        }
+
+        this.keyIndex = index;
+        this.duplicateKeys = duplicates;
     }
 
     /**
-     * @brief   Gets the stored hash of the DB file.
-     * @return  The stored hash of the DB file.
+     * @brief   Adds the line at position N to the key index, if it is the first occurrence of its key.
+     *
+     * @param   N       The position of the line.
+     * @param   line    The line.
      */
-    public String getDBFileHash() {
-        return DBFileHash;
+    private void indexKey(int N, String line) {
+        String key = extractKey(line, this.keyField);
+        if (key == null) return;
+
+        Integer indexed = this.keyIndex.get(key);
+        if (indexed == null || indexed > N) this.keyIndex.put(key, N);
+        if (indexed != null) this.duplicateKeys = true;
     }
 
     /**
-     * @brief   Gets the line separator used in the DB file.
-     * @return  The line separator used in the DB file.
+     * @brief   Removes the line at position N from the key index, falling back to the next occurrence of its key.
+     *
+     * @param   N       The position of the line.
+     * @param   line    The line.
      */
-    public String getLineSeparator() {
-        return this.lineSeparator;
+    private void unindexKey(int N, String line) {
+        String key = extractKey(line, this.keyField);
+        if (key == null || !this.keyIndex.remove(key, N) || !this.duplicateKeys) return;
+
+        // Only when the same key was found on more lines, the next one has to be looked for
+        for (int i = N; i < this.cache.size(); i++) {
+            if (i != N && key.equals(extractKey(this.cache.get(i), this.keyField))) {
+                this.keyIndex.put(key, i);
+                return;
+            }
+        }
     }
 
     /**
-     * @brief   Updates the stored hash of the DB file.
-     * @details This method recalculates the hash of the DB file based on its current content. It uses the internal
-     *          cache of lines to compute the hash efficiently. If the cache is empty and cannot be built, it sets the
-     *          hash to `null`, indicating an issue with the file.
+     * @brief   Shifts the line numbers in the key index starting from a position.
+     *
+     * @param   from    The first line number to shift.
+     * @param   delta   How much to shift the line numbers by.
      */
-    public void updateDBFileHash() {
-        if (this.cache.isEmpty() && !this.buildCache()) {
-            // If cache build fails, there's something wrong with the file, so we set the hash to null
-            DBFileHash = null;
-            return;
-        }
+    private void shiftKeyIndex(int from, int delta) {
+        // Appending and removing the last line, by far the most common edits, never need to shift anything
+        if (from >= this.cache.size() - Math.max(delta, 0)) return;
 
-        this.DBFileHash = Hash.getFileHashFromLines(this.cache, this.lineSeparator);
+        this.keyIndex.replaceAll((key, line) -> line >= from ? line + delta : line);
     }
 
     /**
-     * @brief   Updates the stored hash of the DB file and returns it.
-     * @details This method recalculates the hash of the DB file based on its current content and returns the updated
-     *          hash. It uses the internal cache of lines to compute the hash efficiently. If the cache is empty and
-     *          cannot be built, it sets the hash to `null`, indicating an issue with the file.
+     * @brief   Inserts a line in the cache, keeping the key index and the Merkle tree up to date.
      *
-     * @return  The updated hash of the DB file.
+     * @param   N       Index of the new line (0-based).
+     * @param   line    The new line.
      */
-    public String updateAndGetDBFileHash() {
-        updateDBFileHash();
+    private void insertCachedLine(int N, String line) {
+        this.cache.add(N, line);
+        this.merkleTree().linesShifted(N);
 
-        return this.DBFileHash;
+        if (this.keyIndex != null) {
+            this.shiftKeyIndex(N, 1);
+            this.indexKey(N, line);
+        }
     }
 
     /**
-     * @brief   Forces recalculation of the DB file hash directly from the file.
-     * @details This method recalculates the hash of the DB file by reading its content directly from the file,
-     *          bypassing the internal cache. This can be useful in scenarios where the file may have been modified
-     *          externally, and we want to ensure that the stored hash reflects the actual content of the file.
-     *          <br><br>
-     *          If the newly calculated hash differs from the stored hash, it rebuilds the internal cache to keep it in
-     *          sync with the file.
+     * @brief   Replaces a line in the cache, keeping the key index and the Merkle tree up to date.
      *
-     * @return  The newly calculated hash of the DB file.
+     * @param   N       Index of the line to replace (0-based).
+     * @param   line    The new line.
+     * @return  The replaced line.
      */
-    public String forceHashOnFile() {
-        String forcedHash = Hash.getFileHash(this.getDBPathAsPath());
+    private String replaceCachedLine(int N, String line) {
+        String previous = this.cache.set(N, line);
+        this.merkleTree().lineReplaced(N);
 
-        if (!forcedHash.equals(DBFileHash)) {
-            // If the hash has changed, we need to rebuild the cache to keep it in sync with the file
-            this.buildCache();
+        if (this.keyIndex != null) {
+            this.unindexKey(N, previous);
+            this.indexKey(N, line);
         }
 
-        this.DBFileHash = forcedHash;
-
-        return forcedHash;
+        return previous;
     }
 
     /**
-     * @brief   Detects the line separator used in a file.
-     * @details This method reads the file at the specified path and detects the line separator used. This can be useful
-     *          to ensure cross-platform compatibility when transferring DB files between different operating systems.
-     *          <br><br>
-     *          Normally this wouldn't be necessary, but to improve efficiency when calculating file hashes, in order to
-     *          use the `Hash.getFileHashFromLines` method, while getting the same result as `Hash.getFileHash`, we need
-     *          to know the exact line separator used in the file.
+     * @brief   Removes a line from the cache, keeping the key index and the Merkle tree up to date.
      *
-     * @return  The detected line separator as a `String` ("\n", "\r\n", or "\r"). If no line breaks are found, returns
-     *          the system's default line separator.
+     * @param   N   Index of the line to remove (0-based).
+     * @return  The removed line.
      */
-    public String detectLineSeparator() {
-        try (InputStream stream = Files.newInputStream(this.getDBPathAsPath())) {
-            int b;
-            while ((b = stream.read()) != -1) {
-                // Unix/Linux/MacOS line ending
-                if (b == '\n') return "\n";
-                if (b == '\r') {
-                    int next = stream.read();
-                    // Windows line ending
-                    if (next == '\n') return "\r\n";
-                    // Legacy Mac line ending
-                    return "\r";
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    private String removeCachedLine(int N) {
+        String removed = this.cache.get(N);
+
+        if (this.keyIndex != null) {
+            // The removed line is skipped when looking for the next occurrence of its key, and then the shift is done
+            this.unindexKey(N, removed);
+            this.shiftKeyIndex(N + 1, -1);
         }
 
-        return System.lineSeparator(); // Default if no line breaks found
+        this.merkleTree().linesShifted(N);
+        return this.cache.remove(N);
     }
 
+    /**
+     * @brief   Finds the line with a key.
+     *
+     * @param   key The key to look for.
+     * @return  Index of the first line with the key, `-1` if not found.
+     * @throws  IllegalStateException If no key field is set.
+     */
+    public synchronized int findLineByKey(String key) {
+        if (!this.awaitBatchAccess()) return -1;
+
+        this.ensureKeyIndex();
+        return this.keyIndex.getOrDefault(key, -1);
+    }
 
     /**
-     * @brief   Clears the entire DB file and the internal cache.
-     * @details This method removes all entries from the database file and clears the internal cache of lines.
-     *          Use with caution as this operation is irreversible.
+     * @brief   Reads the line with a key.
+     *
+     * @param   key The key to look for.
+     * @return  The first line with the key, or `null` if not found.
+     * @throws  IllegalStateException If no key field is set.
      */
-    public void clear() {
-        this.cache.clear();
-        this.updateDBFromCache(); // Writes an empty string to the file, clearing it
+    public synchronized String readLineByKey(String key) {
+        int lineIndex = this.findLineByKey(key);
+
+        if (lineIndex == -1) return null;
+
+        return this.cache.get(lineIndex);
     }
 
     /**
-     * @brief   Rebuilds the whole database from a single input `String`.
-     * @details This method completely overwrites the database file with the provided input string. It also rebuilds
-     *          the internal cache to reflect the new content of the database file.
+     * @brief   Replaces the line with a key.
+     *
+     * @param   key     The key to look for.
+     * @param   newLine The new line to replace the found line.
+     * @return  `true` if a substitution was made, `false` otherwise.
+     * @throws  IllegalStateException If no key field is set.
      */
-    public boolean rebuildDBFromString(String newDBContent) {
-        try {
-            Files.writeString(this.getDBPathAsPath(), newDBContent, StandardCharsets.UTF_8);
-            this.buildCache();
-            this.updateDBFileHash();
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+    public synchronized boolean replaceLineByKey(String key, String newLine) {
+        int lineIndex = this.findLineByKey(key);
+
+        if (lineIndex == -1) return false;
+
+        return this.writeNthLineReplace(lineIndex, newLine);
     }
 
     /**
-     * @brief   Builds the cache of lines from the DB file.
-     * @details This method reads all lines from the database file and stores them in an internal cache for faster
-     *          access. It clears any existing cached lines before rebuilding the cache.
+     * @brief   Deletes the line with a key.
      *
-     * @return  `true` if the cache was successfully built, `false` otherwise.
+     * @param   key The key to look for.
+     * @return  The removed line, or `null` if no deletion was made.
+     * @throws  IllegalStateException If no key field is set.
      */
-    public boolean buildCache() {
-        this.cache.clear();
+    public synchronized String deleteLineByKey(String key) {
+        int lineIndex = this.findLineByKey(key);
+
+        if (lineIndex == -1) return null;
+
+        return this.removeNthLine(lineIndex);
+    }
+
+    /**
+     * @brief   Writes a line in its place in key order: the line with the same key is replaced, otherwise the line is
+     *          inserted before the first line with a greater key.
+     * @details The lines of the DB must already be in key order, since the place of a new line is found with a
+     *          binary search over their keys. Damaged lines (see `setChecksummed`), which have no key, stay between
+     *          the same lines they were between. A line equal to the one it would replace is not written at all.
+     *
+     * @param   newLine     The line to write.
+     * @param   keyOrder    The order of the keys of the lines.
+     * @return  `true` if the line was written (or was already there), `false` otherwise.
+     * @throws  IllegalStateException If no key field is set.
+     */
+    public synchronized boolean writeLineInKeyOrder(String newLine, Comparator<String> keyOrder) {
+        String key = extractKey(newLine, this.keyField);
+        if (key == null) return false;
+
+        int lineIndex = this.findLineByKey(key);
+        if (lineIndex != -1) {
+            if (newLine.equals(this.cache.get(lineIndex))) return true;
 
-        try (BufferedReader reader = Files.newBufferedReader(this.getDBPathAsPath(), StandardCharsets.UTF_8)) {
-            String line;
+            return this.writeNthLineReplace(lineIndex, newLine);
+        }
+
+        int low = 0;
+        int high = this.cache.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
 
-            while ((line = reader.readLine()) != null) {
-                cache.add(line);
+            // A damaged line has no key, so the first line after it with a key is compared instead
+            int probe = middle;
+            String probeKey = extractKey(this.cache.get(probe), this.keyField);
+            while (probeKey == null && ++probe < high) {
+                probeKey = extractKey(this.cache.get(probe), this.keyField);
             }
 
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+            if (probeKey != null && keyOrder.compare(probeKey, key) < 0) {
+                low = probe + 1;
+            } else {
+                high = middle;
+            }
         }
+
+        return this.writeNthLineWShift(low, newLine);
     }
 
     /**
-     * @brief   Updates the DB file from cache.
-     * @details This method completely overwrites the database file using the lines saved in cache. Use with caution.
+     * @brief   Counts the lines of the DB, checking in the same pass that they are in key order.
+     * @details The lines are in key order if each of them has a key, and each key comes strictly after the key of the
+     *          line before it, so that no key is found twice either. Only then the lines can be written in their place
+     *          with `writeLineInKeyOrder`.
      *
-     * @return  `true` if the DB file was successfully updated, `false` otherwise.
+     * @param   keyOrder    The order of the keys of the lines.
+     * @return  The number of lines, or `-1` if some line is damaged, has no key, or isn't in key order.
+     * @throws  IllegalStateException If no key field is set.
      */
-    private boolean updateDBFromCache() {
-        StringBuilder updatedDB = new StringBuilder();
+    public synchronized int countLinesInKeyOrder(Comparator<String> keyOrder) {
+        if (this.keyField == NO_KEY_FIELD) {
+            throw new IllegalStateException("No key field is set on DB " + this.DBPath);
+        }
+        if (!this.awaitBatchAccess() || !this.ensureCache()) return -1;
 
-        for(int i = 0; i < this.cache.size(); i++) {
-            updatedDB.append(this.cache.get(i));
+        String previousKey = null;
+        for (int i = 0; i < this.cache.size(); i++) {
+            String key = extractKey(this.cache.get(i), this.keyField);
 
-            if (i < this.cache.size() - 1) {
-                updatedDB.append(this.lineSeparator);
+            try {
+                if (key == null || (previousKey != null && keyOrder.compare(previousKey, key) >= 0)) return -1;
+            } catch (IllegalArgumentException e) {
+                return -1;      // A key the order can't compare, such as an ID that isn't a number
             }
+            previousKey = key;
         }
 
-        try {
-            Files.writeString(this.getDBPathAsPath(), updatedDB.toString(), StandardCharsets.UTF_8);
-            return true;
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return this.cache.size();
     }
 
     /**
@@ -299,10 +2420,12 @@ public class DB implements Serializable {
      *          re-builds the cache and then gets the line.
      *
      * @param   N Index of line to read (0-based).
-     * @return  Content of N-th line, or `null` if line does not exist.
+     * @return  Content of N-th line, or `null` if line does not exist (or is damaged, see `setChecksummed`).
      */
-    public String readNthLine(int N) {
-        if (this.cache.isEmpty() && !this.buildCache()) return null;
+    public synchronized String readNthLine(int N) {
+        if (!this.awaitBatchAccess()) return null;
+
+        if (!this.ensureCache()) return null;
 
         if (N < 0 || N >= this.cache.size()) return null;
 
@@ -321,29 +2444,40 @@ public class DB implements Serializable {
      * @param   shift   If `true`, shifts existing lines down; if `false`, replaces the existing line.
      * @return  `true` if the line was successfully written, `false` otherwise.
      */
-    private boolean writeNthLine(int N, String newLine, boolean shift) {
+    private synchronized boolean writeNthLine(int N, String newLine, boolean shift) {
+        if (!this.awaitWriteAccess()) return false;
+
         boolean wroteLine = true;
 
-        if (this.cache.isEmpty() && !this.buildCache()) return false;
+        if (!this.ensureCache()) return false;
 
         if (N < 0 || N > this.cache.size()) return false;       // Appending a line is supported
 
+        this.loadSnapshot = null;
+
         String overWrittenLine = null;
+        String journalOperation;
         if (shift || N == this.cache.size()) {
-            this.cache.add(N, newLine);
+            this.insertCachedLine(N, newLine);
+            journalOperation = JOURNAL_INSERT;
         } else {
-            overWrittenLine = this.cache.set(N, newLine);
+            overWrittenLine = this.replaceCachedLine(N, newLine);
+            journalOperation = JOURNAL_REPLACE;
         }
 
-        if (!this.updateDBFromCache()) {
+        if (!this.persist(journalOperation, N, newLine)) {
             wroteLine = false;
 
             // Rollback cache change to avoid conflicts
-            if (shift) {
-                this.cache.remove(N);
+            if (journalOperation.equals(JOURNAL_INSERT)) {
+                this.removeCachedLine(N);
             } else {
-                this.cache.set(N, overWrittenLine);
+                this.replaceCachedLine(N, overWrittenLine);
             }
+        } else if (this.batchUndo != null) {
+            String previousLine = overWrittenLine;
+            this.batchUndo.push(journalOperation.equals(JOURNAL_INSERT) ? () -> this.removeCachedLine(N)
+                                                                        : () -> this.replaceCachedLine(N, previousLine));
         }
 
         return wroteLine;
@@ -380,16 +2514,22 @@ public class DB implements Serializable {
      * @param   N Index of line to remove (0-based).
      * @return  String removed, or `null` if the line did not exist.
      */
-    public String removeNthLine(int N) {
-        if (this.cache.isEmpty() && !this.buildCache()) return null;
+    public synchronized String removeNthLine(int N) {
+        if (!this.awaitWriteAccess()) return null;
+
+        if (!this.ensureCache()) return null;
         if (N < 0 || N >= this.cache.size()) return null;
 
-        String removedLine = this.cache.remove(N);
+        this.loadSnapshot = null;
+        String removedLine = this.removeCachedLine(N);
 
-        if (!this.updateDBFromCache()) {
+        if (!this.persist(JOURNAL_DELETE, N, "")) {
             // Rollback cache change to avoid conflicts
-            this.cache.add(N, removedLine);
+            this.insertCachedLine(N, removedLine);
             removedLine = null;
+        } else if (this.batchUndo != null) {
+            String previousLine = removedLine;
+            this.batchUndo.push(() -> this.insertCachedLine(N, previousLine));
         }
 
         return removedLine;
@@ -404,11 +2544,13 @@ public class DB implements Serializable {
      * @param   pattern Regex pattern to search for.
      * @return  Index of line where pattern is first found, `-1` if not found.
      */
-    public int findFirstInstanceOfPattern(Pattern pattern) {
-        if (this.cache.isEmpty() && !this.buildCache()) return -1;
+    public synchronized int findFirstInstanceOfPattern(Pattern pattern) {
+        if (!this.awaitBatchAccess()) return -1;
+
+        if (!this.ensureCache()) return -1;
 
         for (int i = 0; i < this.cache.size(); i++) {
-            if (pattern.matcher(this.cache.get(i)).find()) {
+            if (containsPattern(this.cache.get(i), pattern)) {
                 return i;
             }
         }
@@ -425,8 +2567,10 @@ public class DB implements Serializable {
      * @param   pattern Regex pattern to search for.
      * @return  The first line containing the pattern, or `null` if not found.
      */
-    public String readFirstLineContainingPattern(Pattern pattern) {
-        if (this.cache.isEmpty() && !this.buildCache()) return null;
+    public synchronized String readFirstLineContainingPattern(Pattern pattern) {
+        if (!this.awaitBatchAccess()) return null;
+
+        if (!this.ensureCache()) return null;
 
         int lineIndex = this.findFirstInstanceOfPattern(pattern);
 
@@ -438,6 +2582,119 @@ public class DB implements Serializable {
         return null;
     }
 
+    /**
+     * @brief   Streams the lines of DB, in file order.
+     * @details In `CacheMode.EAGER` the stream is a sized source over a snapshot of the cache (see `snapshot`), which
+     *          splits evenly and can be consumed in parallel while the DB keeps being edited, and is closed along
+     *          with the stream. In `CacheMode.PAGED` (and `COMPRESSED`) the stream reads the lines from the DB file a
+     *          page at a time, never holding more than the page budget in memory: it is best consumed sequentially,
+     *          and the DB must not be edited until it is (or the stream fails with a
+     *          `ConcurrentModificationException`). In `CacheMode.OFF_HEAP` the stream decodes each line as it is
+     *          consumed, and the DB must not be edited until it is either.
+     *
+     * @return  A sized `Stream` of the lines of DB.
+     */
+    public synchronized Stream<String> lines() {
+        if (!this.awaitBatchAccess()) return Stream.empty();
+        if (!this.ensureCache()) return Stream.empty();
+
+        if (this.cacheMode != CacheMode.EAGER) return this.cache.stream();
+
+        return this.snapshot().lines();
+    }
+
+    /**
+     * @brief   Takes a snapshot of the lines of DB, which can be read by any thread without locking the DB.
+     * @details In `CacheMode.EAGER` only the references to the chunks of lines of the cache are copied, so taking a
+     *          snapshot costs a fraction of copying the lines. While the snapshot is open, the DB copies a chunk of
+     *          lines before editing it for the first time (see
+     *          {@link poco.company.group01pocolib.db.ChunkedLineList ChunkedLineList}), so the snapshot should be
+     *          closed as soon as it is no longer needed. In the other modes the lines are copied in the snapshot
+     *          (reading them from the DB file in `CacheMode.PAGED` and `COMPRESSED`).
+     *          <br><br>
+     *          Checksums of the lines are verified when the lines are read from the snapshot.
+     *
+     * @return  A snapshot of the lines of DB, or `null` if the cache can't be built.
+     */
+    public synchronized DBSnapshot snapshot() {
+        if (!this.awaitBatchAccess()) return null;
+        if (!this.ensureCache()) return null;
+
+        List<String> storedLines = this.cache.getStoredLines();
+        if (storedLines instanceof ChunkedLineList chunkedCache) {
+            return new DBSnapshot(this.cache.viewOf(chunkedCache.snapshot()), this.cache.getVersion(),
+                                  chunkedCache.snapshotReleaser());
+        }
+
+        return new DBSnapshot(this.cache.viewOf(new ArrayList<>(storedLines)), this.cache.getVersion(), null);
+    }
+
+    /**
+     * @brief   Finds every line containing a regex pattern in DB.
+     * @details The cache is split in chunks, and the pattern is evaluated on each chunk in parallel on the common
+     *          `ForkJoinPool`, so the scan scales with the available cores. Small DBs, and DBs in `CacheMode.PAGED` or
+     *          `COMPRESSED` (whose lines are loaded from the file one page at a time), are scanned sequentially.
+     *
+     * @param   pattern Regex pattern to search for.
+     * @return  Indices of the lines where the pattern is found, in file order.
+     */
+    public synchronized int[] findAllMatching(Pattern pattern) {
+        if (!this.awaitBatchAccess()) return new int[0];
+        if (!this.ensureCache()) return new int[0];
+
+        IntStream lines = IntStream.range(0, this.cache.size());
+        if (this.holdsAllLines() && this.cache.size() >= MIN_PARALLEL_SCAN_LINES) {
+            // The lock of the DB, held by the calling thread, keeps the cache from changing during the scan
+            lines = lines.parallel();
+        }
+
+        return lines.filter(i -> containsPattern(this.cache.get(i), pattern)).toArray();
+    }
+
+    /**
+     * @brief   Checks whether a line contains a regex pattern.
+     *
+     * @param   line    The line, `null` if it is damaged.
+     * @param   pattern Regex pattern to search for.
+     * @return  `true` if the line was read and contains the pattern.
+     */
+    private static boolean containsPattern(String line, Pattern pattern) {
+        return line != null && pattern.matcher(line).find();
+    }
+
+    /**
+     * @brief   Reads every line containing a regex pattern from DB.
+     * @details See {@link poco.company.group01pocolib.db.DB#findAllMatching findAllMatching()}.
+     *
+     * @param   pattern Regex pattern to search for.
+     * @return  The lines containing the pattern, in file order.
+     */
+    public synchronized List<String> readAllMatching(Pattern pattern) {
+        int[] lineIndices = this.findAllMatching(pattern);
+        List<String> lines = new ArrayList<>(lineIndices.length);
+
+        for (int lineIndex : lineIndices) {
+            lines.add(this.cache.get(lineIndex));
+        }
+
+        return lines;
+    }
+
+    /**
+     * @brief   Performs an action on every line containing a regex pattern in DB.
+     * @details Lines are matched in parallel (see {@link poco.company.group01pocolib.db.DB#findAllMatching
+     *          findAllMatching()}), but the action is performed on the calling thread, in file order, so it doesn't
+     *          need to be thread-safe. The action must not edit the DB.
+     *
+     * @param   pattern Regex pattern to search for.
+     * @param   action  The action, receiving each line containing the pattern and its index.
+     */
+    public synchronized void forEachMatching(Pattern pattern, ObjIntConsumer<String> action) {
+        for (int lineIndex : this.findAllMatching(pattern)) {
+            action.accept(this.cache.get(lineIndex), lineIndex);
+        }
+    }
+
     /**
      * @brief   Substitutes the first instance of a regex pattern in the database file with a new line.
      * @details This method searches for the first line in DB that matches the specified regex pattern and replaces it
@@ -447,7 +2704,9 @@ public class DB implements Serializable {
      * @param   newLine The new line to replace the found line.
      * @return  `true` if a substitution was made, `false` otherwise.
      */
-    public boolean substituteFirstLineContainingPattern(Pattern pattern, String newLine) {
+    public synchronized boolean substituteFirstLineContainingPattern(Pattern pattern, String newLine) {
+        if (!this.awaitBatchAccess()) return false;
+
         int lineIndex = findFirstInstanceOfPattern(pattern);
 
         if (lineIndex == -1) return false;
@@ -464,7 +2723,9 @@ public class DB implements Serializable {
      * @param   pattern The regex pattern to search for.
      * @return  The removed line, or `null` if no deletion was made.
      */
-    public String deleteFirstLineContainingPattern(Pattern pattern) {
+    public synchronized String deleteFirstLineContainingPattern(Pattern pattern) {
+        if (!this.awaitBatchAccess()) return null;
+
         int lineIndex = findFirstInstanceOfPattern(pattern);
 
         if (lineIndex == -1) return null;
@@ -478,12 +2739,14 @@ public class DB implements Serializable {
      * @param   newLine The new line to be appended.
      * @return  `true` if the line was successfully appended, `false` otherwise.
      */
-    public boolean appendLine(String newLine) {
+    public synchronized boolean appendLine(String newLine) {
+        if (!this.awaitBatchAccess()) return false;
+
         return writeNthLineWShift(this.cache.size(), newLine);
     }
     @Override
-    public String toString() {
-        if (this.cache.isEmpty()) this.buildCache();
+    public synchronized String toString() {
+        this.ensureCache();
 
         StringBuilder output = new StringBuilder();
 
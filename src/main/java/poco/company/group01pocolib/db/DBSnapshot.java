@@ -0,0 +1,112 @@
+package poco.company.group01pocolib.db;
+
+import java.lang.ref.Cleaner;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * @class   DBSnapshot
+ * @brief   Immutable view of the lines of a DB at a given version, readable without locking the DB.
+ * @details A snapshot is taken by {@link poco.company.group01pocolib.db.DB#snapshot DB.snapshot()}, and keeps
+ *          seeing the lines the DB had at that time, however the DB is edited afterwards. Reading a snapshot never
+ *          waits for the DB, so any number of threads can read it while the DB keeps being edited.
+ *          <br><br>
+ *          In `CacheMode.EAGER` the snapshot shares the chunks of lines of the cache, which the DB copies before
+ *          editing them as long as the snapshot is open (see
+ *          {@link poco.company.group01pocolib.db.ChunkedLineList ChunkedLineList}): a snapshot should be closed as
+ *          soon as it is no longer needed, so that the DB can go back to editing its chunks in place. A snapshot that
+ *          is never closed is released once neither it nor its lines are reachable anymore.
+ */
+public class DBSnapshot implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final List<String> lines;           ///< View of the lines of the snapshot, checksums stripped
+    private final long version;
+    private final Cleaner.Cleanable release;    ///< `null` if the snapshot holds a copy of the lines
+    private volatile boolean closed;
+
+    /**
+     * @brief   Creates a snapshot.
+     *
+     * @param   lines   The lines of the snapshot, which must not change anymore.
+     * @param   version The version of the lines of the DB.
+     * @param   release The action releasing the lines, or `null` if there's nothing to release.
+     */
+    DBSnapshot(List<String> lines, long version, Runnable release) {
+        this.lines = Collections.unmodifiableList(lines);
+        this.version = version;
+        // Lines obtained from the snapshot may outlive it, so the lines themselves are watched by the cleaner
+        this.release = release == null ? null : CLEANER.register(lines, release);
+    }
+
+    /**
+     * @brief   Gets the version of the DB the snapshot was taken at.
+     * @details The version of a DB is incremented by every edit, so two snapshots of the same DB with the same
+     *          version have the same lines.
+     *
+     * @return  The version of the snapshot.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @brief   Gets the number of lines of the snapshot.
+     * @return  The number of lines.
+     */
+    public int size() {
+        return this.ensureOpen().size();
+    }
+
+    /**
+     * @brief   Reads the Nth line of the snapshot.
+     *
+     * @param   N The position of the line.
+     * @return  The line, or `null` if there is no such line or it is damaged.
+     */
+    public String readNthLine(int N) {
+        List<String> lines = this.ensureOpen();
+        if (N < 0 || N >= lines.size()) return null;
+
+        return lines.get(N);
+    }
+
+    /**
+     * @brief   Gets the lines of the snapshot.
+     * @return  An unmodifiable `List` of the lines, damaged lines being `null`.
+     */
+    public List<String> getLines() {
+        return this.ensureOpen();
+    }
+
+    /**
+     * @brief   Streams the lines of the snapshot, in file order.
+     * @details The stream is a sized source, which splits evenly and can be consumed in parallel. Closing the stream
+     *          closes the snapshot.
+     *
+     * @return  A sized `Stream` of the lines of the snapshot.
+     */
+    public Stream<String> lines() {
+        return this.ensureOpen().stream().onClose(this::close);
+    }
+
+    /**
+     * @brief   Releases the snapshot. The snapshot can't be read anymore.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        if (this.release != null) this.release.clean();
+    }
+
+    /**
+     * @brief   Checks that the snapshot is still open.
+     * @return  The lines of the snapshot.
+     * @throws  IllegalStateException If the snapshot was closed.
+     */
+    private List<String> ensureOpen() {
+        if (this.closed) throw new IllegalStateException("The snapshot was closed");
+        return this.lines;
+    }
+}
@@ -0,0 +1,156 @@
+package poco.company.group01pocolib.db;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @class   DBWatcher
+ * @brief   Watches the files of some DBs, reconciling each DB as soon as its file is edited by someone else.
+ * @details A single daemon thread waits for events of a `WatchService` on the directories of the watched DB files.
+ *          When a DB file is created or modified, the watcher waits for `SETTLE_DELAY_MILLIS` milliseconds without
+ *          events (editors often save a file in several steps), then calls
+ *          {@link poco.company.group01pocolib.db.DB#reconcile DB.reconcile} and passes the lines that changed to the
+ *          listener of the DB, if any did. The listener runs on the thread of the watcher.
+ *          <br><br>
+ *          Writes made by the DB itself are reported by the `WatchService` as well, but they are recognized by the
+ *          metadata sidecar of the DB file, so reconciling them costs a couple of file system calls and no listener
+ *          is called.
+ */
+public class DBWatcher implements AutoCloseable {
+    public static final long SETTLE_DELAY_MILLIS = 100;
+
+    private final WatchService watchService;
+    private final Map<Path, Watched> watchedFiles = new ConcurrentHashMap<>();  ///< Watched DBs, by DB file
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+
+    /**
+     * @class   Watched
+     * @brief   A watched DB and its listener.
+     */
+    private static class Watched {
+        DB db;
+        Consumer<LineDiff> listener;    ///< Consumer of the lines changed by external edits
+    }
+
+    /**
+     * @brief   Creates a watcher, starting its thread.
+     * @throws  IOException If the `WatchService` can't be created.
+     */
+    public DBWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = Thread.ofPlatform()
+                            .daemon()
+                            .name("DB-watcher")
+                            .start(this::run);
+    }
+
+    /**
+     * @brief   Starts watching the file of a DB.
+     *
+     * @param   db          The DB to watch.
+     * @param   listener    The consumer of the lines changed each time the DB file is edited by someone else.
+     * @throws  IOException If the directory of the DB file can't be watched.
+     */
+    public void watch(DB db, Consumer<LineDiff> listener) throws IOException {
+        Path file = db.getDBPathAsPath().toAbsolutePath().normalize();
+        Path directory = file.getParent();
+
+        if (this.watchedDirectories.add(directory)) {
+            try {
+                directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException e) {
+                this.watchedDirectories.remove(directory);
+                throw e;
+            }
+        }
+
+        Watched watched = new Watched();
+        watched.db = db;
+        watched.listener = listener;
+        this.watchedFiles.put(file, watched);
+    }
+
+    /**
+     * @brief   Stops watching the file of a DB. The directory of the DB file is watched until the watcher is closed.
+     * @param   db The DB to stop watching.
+     */
+    public void unwatch(DB db) {
+        this.watchedFiles.remove(db.getDBPathAsPath().toAbsolutePath().normalize());
+    }
+
+    /**
+     * @brief   Stops the watcher.
+     * @throws  IOException If the `WatchService` can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+        this.thread.interrupt();
+    }
+
+    /**
+     * @brief   Body of the thread of the watcher.
+     */
+    private void run() {
+        try {
+            while (true) {
+                Set<Path> editedFiles = new HashSet<>();
+                this.collectEvents(this.watchService.take(), editedFiles);
+
+                // Let the editor finish saving before reading the file
+                WatchKey key;
+                while ((key = this.watchService.poll(SETTLE_DELAY_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    this.collectEvents(key, editedFiles);
+                }
+
+                for (Path file : editedFiles) {
+                    Watched watched = this.watchedFiles.get(file);
+                    if (watched == null) continue;
+
+                    LineDiff diff = watched.db.reconcile();
+                    if (diff != null && !diff.isEmpty()) {
+                        try {
+                            watched.listener.accept(diff);
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed
+        }
+    }
+
+    /**
+     * @brief   Collects the watched files touched by the events of a key, and resets the key.
+     * @details If some events were lost, every watched file in the directory of the key is considered edited.
+     *
+     * @param   key         The key signalled by the `WatchService`.
+     * @param   editedFiles The set the files are added to.
+     */
+    private void collectEvents(WatchKey key, Set<Path> editedFiles) {
+        Path directory = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (Path file : this.watchedFiles.keySet()) {
+                    if (file.getParent().equals(directory)) editedFiles.add(file);
+                }
+            } else {
+                Path file = directory.resolve((Path) event.context());
+                if (this.watchedFiles.containsKey(file)) editedFiles.add(file);
+            }
+        }
+
+        key.reset();
+    }
+}
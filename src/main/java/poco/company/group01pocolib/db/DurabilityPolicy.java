@@ -0,0 +1,13 @@
+package poco.company.group01pocolib.db;
+
+/**
+ * @enum    DurabilityPolicy
+ * @brief   Defines when the edits committed on a {@link poco.company.group01pocolib.db.DB DB} are forced to disk.
+ * @details Whatever the policy, the DB file is always replaced atomically, so a crash can never leave a truncated DB
+ *          file behind. The policy only decides how many of the latest commits may be lost on a power failure.
+ */
+public enum DurabilityPolicy {
+    SYNC_EVERY_COMMIT,  ///< Every commit is forced to disk before returning (safest, slowest)
+    SYNC_INTERVAL,      ///< Commits are forced to disk at most once every `syncIntervalMillis` milliseconds
+    OS_BUFFERED         ///< Commits are left to the OS buffers, and reach the disk whenever the OS decides to
+}
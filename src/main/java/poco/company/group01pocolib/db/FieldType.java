@@ -0,0 +1,13 @@
+package poco.company.group01pocolib.db;
+
+/**
+ * @enum    FieldType
+ * @brief   Defines how a field of a record is encoded in a binary record file.
+ */
+public enum FieldType {
+    STRING,         ///< A `String`, stored as its length followed by its UTF-8 bytes
+    STRING_LIST,    ///< A `List<String>`, stored as its size followed by its elements, each stored as a `STRING`
+    INT,            ///< An `Integer`, stored as a fixed-width 32-bit integer
+    BOOLEAN,        ///< A `Boolean`, stored as a single byte
+    DATE            ///< A `LocalDate`, stored as its epoch day, a fixed-width 64-bit integer
+}
@@ -0,0 +1,187 @@
+package poco.company.group01pocolib.db;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class   FileMetadata
+ * @brief   Sidecar record of what a DB file looked like when its hash was last calculated.
+ * @details The sidecar holds the size, the last modified time and the file key (the inode, on most file systems) of
+ *          the DB file, along with the hash of its content, the name of the hash strategy that calculated it and the
+ *          hashes of the blocks of the Merkle tree (see {@link poco.company.group01pocolib.db.MerkleTree MerkleTree}).
+ *          As long as the metadata of the DB file still matches, the hash in the sidecar is trusted without reading
+ *          the DB file at all.
+ *          <br><br>
+ *          Every commit replaces the DB file with a rename, so it always gets a new file key. An edit made to the DB
+ *          file in place by someone else keeps the file key, and goes unnoticed only if it keeps the same size and
+ *          happens within the same tick of the last modified time of the file system.
+ */
+class FileMetadata {
+    static final int MAGIC = 0x504D4554;       ///< "PMET"
+    static final int VERSION = 1;
+
+    private final long size;
+    private final long lastModifiedNanos;
+    private final String fileKey;               ///< `null` if the file system doesn't provide file keys
+    private final String strategyName;
+    private final String hash;
+    private final byte[][] blockHashes;         ///< `null` if the block hashes are not known
+
+    /**
+     * @brief   Creates a record of the metadata of a DB file.
+     *
+     * @param   size                The size of the DB file.
+     * @param   lastModifiedNanos   The last modified time of the DB file, in nanoseconds since the epoch.
+     * @param   fileKey             The file key of the DB file, or `null`.
+     * @param   strategyName        The name of the hash strategy that calculated the hashes.
+     * @param   hash                The hash of the content of the DB file.
+     * @param   blockHashes         The hashes of the blocks of the Merkle tree of the DB file, or `null`.
+     */
+    private FileMetadata(long size, long lastModifiedNanos, String fileKey, String strategyName, String hash,
+                         byte[][] blockHashes) {
+        this.size = size;
+        this.lastModifiedNanos = lastModifiedNanos;
+        this.fileKey = fileKey;
+        this.strategyName = strategyName;
+        this.hash = hash;
+        this.blockHashes = blockHashes;
+    }
+
+    /**
+     * @brief   Records the current metadata of a DB file, along with the hashes of its content.
+     *
+     * @param   file        The DB file.
+     * @param   strategy    The hash strategy that calculated the hashes.
+     * @param   hash        The hash of the content of the DB file.
+     * @param   blockHashes The hashes of the blocks of the Merkle tree of the DB file, or `null`.
+     * @return  The record of the metadata.
+     * @throws  IOException If the metadata of the DB file can't be read.
+     */
+    static FileMetadata capture(Path file, HashStrategy strategy, String hash, byte[][] blockHashes)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+        return new FileMetadata(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                                fileKeyOf(attributes), strategy.getName(), hash, blockHashes);
+    }
+
+    /**
+     * @brief   Checks whether a DB file still has the recorded metadata, and the hashes come from the given strategy.
+     *
+     * @param   file        The DB file.
+     * @param   strategy    The hash strategy the hashes are expected to come from.
+     * @return  `true` if the recorded hashes can be trusted for the DB file, `false` otherwise.
+     */
+    boolean matches(Path file, HashStrategy strategy) {
+        if (!this.strategyName.equals(strategy.getName())) return false;
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+            return attributes.size() == this.size
+                    && attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) == this.lastModifiedNanos
+                    && (this.fileKey == null || this.fileKey.equals(fileKeyOf(attributes)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @brief   Gets the recorded hash of the content of the DB file.
+     * @return  The hash of the DB file.
+     */
+    String getHash() {
+        return this.hash;
+    }
+
+    /**
+     * @brief   Gets the recorded hashes of the blocks of the Merkle tree of the DB file.
+     * @return  The hashes of the blocks, or `null` if they are not known.
+     */
+    byte[][] getBlockHashes() {
+        return this.blockHashes;
+    }
+
+    /**
+     * @brief   Writes the record to a sidecar file, atomically replacing it.
+     *
+     * @param   sidecar The sidecar file.
+     * @throws  IOException If the sidecar file can't be written.
+     */
+    void write(Path sidecar) throws IOException {
+        Path tempFile = sidecar.resolveSibling(sidecar.getFileName() + DB.TEMP_EXTENSION);
+
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(this.size);
+                output.writeLong(this.lastModifiedNanos);
+                output.writeBoolean(this.fileKey != null);
+                if (this.fileKey != null) output.writeUTF(this.fileKey);
+                output.writeUTF(this.strategyName);
+                output.writeUTF(this.hash);
+
+                output.writeInt(this.blockHashes == null ? -1 : this.blockHashes.length);
+                if (this.blockHashes != null) {
+                    for (byte[] blockHash : this.blockHashes) {
+                        output.writeShort(blockHash.length);
+                        output.write(blockHash);
+                    }
+                }
+            }
+
+            try {
+                Files.move(tempFile, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, sidecar, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @brief   Reads a record from a sidecar file.
+     *
+     * @param   sidecar The sidecar file.
+     * @return  The record, or `null` if there is no sidecar file or it was written by a different version.
+     * @throws  IOException If the sidecar file can't be read or is corrupted.
+     */
+    static FileMetadata read(Path sidecar) throws IOException {
+        if (!Files.exists(sidecar)) return null;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) return null;
+
+            long size = input.readLong();
+            long lastModifiedNanos = input.readLong();
+            String fileKey = input.readBoolean() ? input.readUTF() : null;
+            String strategyName = input.readUTF();
+            String hash = input.readUTF();
+
+            int blockCount = input.readInt();
+            byte[][] blockHashes = blockCount < 0 ? null : new byte[blockCount][];
+            for (int i = 0; i < blockCount; i++) {
+                blockHashes[i] = new byte[input.readUnsignedShort()];
+                input.readFully(blockHashes[i]);
+            }
+
+            return new FileMetadata(size, lastModifiedNanos, fileKey, strategyName, hash, blockHashes);
+        }
+    }
+
+    /**
+     * @brief   Gets the file key of a file as a string.
+     *
+     * @param   attributes The attributes of the file.
+     * @return  The file key, or `null` if the file system doesn't provide file keys.
+     */
+    private static String fileKeyOf(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? null : fileKey.toString();
+    }
+}
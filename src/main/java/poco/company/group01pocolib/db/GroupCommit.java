@@ -0,0 +1,86 @@
+package poco.company.group01pocolib.db;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @class   GroupCommit
+ * @brief   Lets concurrent commits appended to the same file share a single fsync.
+ * @details Every commit registers its append, getting a sequence number, and then waits for the file to be forced to
+ *          disk up to that number. The first commit that finds no sync in progress becomes the leader: it waits for a
+ *          short window, so that other commits can append in the meantime, then forces the file once on behalf of all
+ *          of them. Commits that appended after the leader started forcing the file wait for the next round.
+ */
+class GroupCommit {
+    private final Path file;
+    private final long windowMillis;
+
+    private long appendedSequence;
+    private long syncedSequence;
+    private boolean syncInProgress;
+
+    /**
+     * @brief   Creates a group commit coordinator for a file.
+     *
+     * @param   file            The file that commits are appended to.
+     * @param   windowMillis    How long the leader waits for other commits before forcing the file.
+     */
+    GroupCommit(Path file, long windowMillis) {
+        this.file = file;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @brief   Registers an append to the file. Must be called right after the append, before any other append.
+     * @return  The sequence number to wait for with `awaitSync`.
+     */
+    synchronized long registerAppend() {
+        return ++this.appendedSequence;
+    }
+
+    /**
+     * @brief   Waits until the file is forced to disk at least up to an append, forcing it if no one else is.
+     *
+     * @param   sequence The sequence number returned by `registerAppend`.
+     * @throws  IOException If the file couldn't be forced to disk.
+     * @throws  InterruptedException If the thread was interrupted while waiting.
+     */
+    void awaitSync(long sequence) throws IOException, InterruptedException {
+        synchronized (this) {
+            while (this.syncedSequence < sequence && this.syncInProgress) {
+                this.wait();
+            }
+
+            if (this.syncedSequence >= sequence) return;
+            this.syncInProgress = true;
+        }
+
+        long target = sequence;
+        boolean forced = false;
+        try {
+            // Give the other commits of the group the time to append
+            Thread.sleep(this.windowMillis);
+
+            synchronized (this) {
+                target = this.appendedSequence;
+            }
+
+            try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (NoSuchFileException ignored) {
+                // The file was removed by a checkpoint, which forced the content of the DB to disk by itself
+            }
+            forced = true;
+        } finally {
+            synchronized (this) {
+                // On failure the waiting commits find no sync in progress, and the next one of them retries
+                if (forced) this.syncedSequence = Math.max(this.syncedSequence, target);
+                this.syncInProgress = false;
+                this.notifyAll();
+            }
+        }
+    }
+}
@@ -14,6 +14,8 @@ import java.util.Base64;
  * @brief   Simple class containing static methods, for calculating hashes
  */
 public class Hash {
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
     /**
      * @brief   This method takes a `path` as input, and calculates a hash for the corresponding file using SHA-256.
      *
@@ -21,22 +23,65 @@ public class Hash {
      * @return  String containing the hash of the input file, calculated using SHA-256.
      */
     public static String getFileHash(Path path) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            FileInputStream fis = new FileInputStream(path.toFile());
-            byte[] byteArray = new byte[1024];
+        return getFileHash(path, HashAlgorithm.SHA_256);
+    }
+
+    /**
+     * @brief   Calculates the hash of a file with a given strategy.
+     *
+     * @param   path        Path to the file we intend to hash.
+     * @param   strategy    The hash strategy.
+     * @return  String containing the Base64-encoded hash of the input file, or `null` if the file can't be read.
+     */
+    public static String getFileHash(Path path, HashStrategy strategy) {
+        try (InputStream input = new FileInputStream(path.toFile())) {
+            HashStrategy.Hasher hasher = strategy.newHasher();
+            byte[] byteArray = new byte[FILE_BUFFER_SIZE];
             int bytesCount;
 
-            while ((bytesCount = fis.read(byteArray)) != -1) {
-                digest.update(byteArray, 0, bytesCount);
+            while ((bytesCount = input.read(byteArray)) != -1) {
+                hasher.update(byteArray, 0, bytesCount);
             }
 
-            fis.close();
+            return Base64.getEncoder().encodeToString(hasher.digest());
 
-            byte[] bytes = digest.digest();
-            return Base64.getEncoder().encodeToString(bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-        } catch (NoSuchAlgorithmException | IOException e) {
+    /**
+     * @brief   Calculates the Merkle fingerprint of a list of lines.
+     * @details The lines are split in fixed-size blocks, which are digested in parallel, and the digests are combined
+     *          pairwise up to a single root (see {@link poco.company.group01pocolib.db.MerkleTree MerkleTree}). Unlike
+     *          `getFileHashFromLines`, the fingerprint doesn't depend on the line separator.
+     *
+     * @param   linesList   The `List` of lines to fingerprint.
+     * @param   strategy    The hash strategy digesting the blocks and the nodes of the tree.
+     * @return  String containing the Base64-encoded root of the Merkle tree of the lines.
+     */
+    public static String getMerkleHashFromLines(List<String> linesList, HashStrategy strategy) {
+        return new MerkleTree(strategy).getRoot(linesList, true);
+    }
+
+    /**
+     * @brief   Calculates the Merkle fingerprint of the lines of a file, the same `getMerkleHashFromLines` calculates
+     *          from the list of its lines.
+     * @details The file is read in a single pass, without keeping its lines in memory.
+     *
+     * @param   path        Path to the file we intend to fingerprint.
+     * @param   strategy    The hash strategy digesting the blocks and the nodes of the tree.
+     * @return  String containing the Base64-encoded root of the Merkle tree of the lines of the file, or `null` if the
+     *          file can't be read.
+     */
+    public static String getMerkleFileHash(Path path, HashStrategy strategy) {
+        MerkleTree.Builder builder = new MerkleTree.Builder(strategy);
+
+        try {
+            MappedFileLoader.load(path, builder::add);
+            return builder.getRoot();
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
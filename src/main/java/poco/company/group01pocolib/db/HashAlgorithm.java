@@ -0,0 +1,91 @@
+package poco.company.group01pocolib.db;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+/**
+ * @enum    HashAlgorithm
+ * @brief   The built-in {@link poco.company.group01pocolib.db.HashStrategy HashStrategy} implementations.
+ * @details CRC32C and XXH64 are not cryptographic, but run at memory-bandwidth speed (CRC32C is intrinsified by the
+ *          JDK on most CPUs), which is all change detection needs. SHA-256 is kept for hashes that have to match the
+ *          ones calculated by previous versions.
+ */
+public enum HashAlgorithm implements HashStrategy {
+    SHA_256("SHA-256") {
+        @Override
+        public Hasher newHasher() {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+
+            return new Hasher() {
+                @Override
+                public void update(byte b) {
+                    digest.update(b);
+                }
+
+                @Override
+                public void update(byte[] bytes, int offset, int length) {
+                    digest.update(bytes, offset, length);
+                }
+
+                @Override
+                public byte[] digest() {
+                    return digest.digest();
+                }
+            };
+        }
+    },
+
+    CRC32C("CRC32C") {
+        @Override
+        public Hasher newHasher() {
+            Checksum crc = new java.util.zip.CRC32C();
+
+            return new Hasher() {
+                @Override
+                public void update(byte b) {
+                    crc.update(b);
+                }
+
+                @Override
+                public void update(byte[] bytes, int offset, int length) {
+                    crc.update(bytes, offset, length);
+                }
+
+                @Override
+                public byte[] digest() {
+                    int value = (int) crc.getValue();
+                    return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8),
+                                       (byte) value};
+                }
+            };
+        }
+    },
+
+    XXH64("XXH64") {
+        @Override
+        public Hasher newHasher() {
+            return new XxHash64(0);
+        }
+    };
+
+    private final String name;
+
+    /**
+     * @brief   Creates a built-in strategy.
+     * @param   name The name identifying the strategy.
+     */
+    HashAlgorithm(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+}
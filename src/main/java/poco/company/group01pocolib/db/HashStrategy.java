@@ -0,0 +1,76 @@
+package poco.company.group01pocolib.db;
+
+import java.io.Serializable;
+
+/**
+ * @interface   HashStrategy
+ * @brief       An algorithm used to detect changes in the content of a {@link poco.company.group01pocolib.db.DB DB}.
+ * @details     Hashes of a DB are only compared with each other to tell whether the DB changed, never used for
+ *              security, so any algorithm with a negligible chance of accidental collisions will do. The built-in
+ *              strategies are the constants of {@link poco.company.group01pocolib.db.HashAlgorithm HashAlgorithm}.
+ *              <br><br>
+ *              A strategy is identified by its name, which is stored along with the hashes it calculated, so that a
+ *              stored hash is only ever compared with one calculated the same way.
+ */
+public interface HashStrategy extends Serializable {
+    /**
+     * @brief   Gets the name identifying the strategy.
+     * @return  The name of the strategy.
+     */
+    String getName();
+
+    /**
+     * @brief   Creates a new hasher, to hash a sequence of bytes.
+     * @return  The new hasher.
+     */
+    Hasher newHasher();
+
+    /**
+     * @brief   Finds a built-in strategy by its name.
+     *
+     * @param   name The name of the strategy.
+     * @return  The strategy, or `null` if there is no built-in strategy with that name.
+     */
+    static HashStrategy forName(String name) {
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            if (algorithm.getName().equals(name)) return algorithm;
+        }
+
+        return null;
+    }
+
+    /**
+     * @interface   Hasher
+     * @brief       Calculates the hash of a sequence of bytes fed to it in any number of chunks.
+     */
+    interface Hasher {
+        /**
+         * @brief   Feeds a single byte to the hasher.
+         * @param   b The byte.
+         */
+        void update(byte b);
+
+        /**
+         * @brief   Feeds a chunk of bytes to the hasher.
+         *
+         * @param   bytes   The array holding the chunk.
+         * @param   offset  The start of the chunk in the array.
+         * @param   length  The length of the chunk.
+         */
+        void update(byte[] bytes, int offset, int length);
+
+        /**
+         * @brief   Feeds an array of bytes to the hasher.
+         * @param   bytes The bytes.
+         */
+        default void update(byte[] bytes) {
+            this.update(bytes, 0, bytes.length);
+        }
+
+        /**
+         * @brief   Completes the hash of the bytes fed so far. The hasher must not be used afterwards.
+         * @return  The hash.
+         */
+        byte[] digest();
+    }
+}
@@ -0,0 +1,142 @@
+package poco.company.group01pocolib.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @class   LineDiff
+ * @brief   The lines removed from and inserted in a DB between two versions of its content.
+ * @details The lines of a DB are records, whose position doesn't matter to the sets built from them, so the diff
+ *          doesn't track positions: a line is removed if it occurs fewer times in the new version than in the old one,
+ *          and inserted if it occurs more times. A line edited in place shows up as removed (with its old content) and
+ *          inserted (with the new one).
+ */
+public class LineDiff {
+    public static final LineDiff EMPTY = new LineDiff(List.of(), List.of(), 0);
+
+    private final List<String> removed;
+    private final List<String> inserted;
+    private final int damagedCount;     ///< Damaged lines found in the new version where the old one had none
+
+    /**
+     * @brief   Creates a diff.
+     *
+     * @param   removed         The lines removed, in their old order.
+     * @param   inserted        The lines inserted, in their new order.
+     * @param   damagedCount    The number of damaged lines of the new version that weren't damaged in the old one.
+     */
+    private LineDiff(List<String> removed, List<String> inserted, int damagedCount) {
+        this.removed = removed;
+        this.inserted = inserted;
+        this.damagedCount = damagedCount;
+    }
+
+    /**
+     * @brief   Gets the lines removed from the DB.
+     * @return  The removed lines, in the order they had in the old version.
+     */
+    public List<String> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * @brief   Gets the lines inserted in the DB.
+     * @return  The inserted lines, in the order they have in the new version.
+     */
+    public List<String> getInserted() {
+        return this.inserted;
+    }
+
+    /**
+     * @brief   Gets the number of lines of the new version that are damaged, and so can't be told apart.
+     * @details A damaged line may be the new version of any of the removed lines, so whoever applies the diff can't
+     *          take the removed lines as really removed when this is not 0.
+     *
+     * @return  The number of damaged lines in the new version, not counting the ones already damaged in the old one.
+     */
+    public int getDamagedCount() {
+        return this.damagedCount;
+    }
+
+    /**
+     * @brief   Checks whether the two versions have the same lines.
+     * @return  `true` if no line was removed, inserted or damaged.
+     */
+    public boolean isEmpty() {
+        return this.removed.isEmpty() && this.inserted.isEmpty() && this.damagedCount == 0;
+    }
+
+    /**
+     * @brief   Calculates the diff between two versions of the lines of a DB.
+     * @details The common prefix and suffix of the two versions are skipped first, since an edit usually touches a
+     *          few neighbouring lines. The lines left in between are matched through a hash map, so each line is hashed
+     *          and compared only once, whatever the number of changes. `null` lines (damaged lines, see
+     *          {@link poco.company.group01pocolib.db.DB#isChecksummed DB.isChecksummed}) are not matched, only
+     *          counted.
+     *
+     * @param   oldLines    The old version of the lines.
+     * @param   newLines    The new version of the lines.
+     * @return  The diff from the old version to the new one.
+     */
+    static LineDiff between(List<String> oldLines, List<String> newLines) {
+        int start = 0;
+        int oldEnd = oldLines.size();
+        int newEnd = newLines.size();
+
+        while (start < oldEnd && start < newEnd && Objects.equals(oldLines.get(start), newLines.get(start))) {
+            start++;
+        }
+        while (oldEnd > start && newEnd > start
+                && Objects.equals(oldLines.get(oldEnd - 1), newLines.get(newEnd - 1))) {
+            oldEnd--;
+            newEnd--;
+        }
+        if (start == oldEnd && start == newEnd) return EMPTY;
+
+        // Occurrences of each old line not matched by a new line yet
+        Map<String, Integer> unmatched = new HashMap<>();
+        for (String line : oldLines.subList(start, oldEnd)) {
+            if (line != null) unmatched.merge(line, 1, Integer::sum);
+        }
+
+        List<String> inserted = new ArrayList<>();
+        int damagedCount = 0;
+        for (String line : newLines.subList(start, newEnd)) {
+            if (line == null) damagedCount++;
+            else if (!take(unmatched, line)) inserted.add(line);
+        }
+        for (String line : oldLines.subList(start, oldEnd)) {
+            if (line == null) damagedCount--;
+        }
+
+        // Whatever is left unmatched was removed
+        List<String> removed = new ArrayList<>();
+        for (String line : oldLines.subList(start, oldEnd)) {
+            if (line != null && take(unmatched, line)) removed.add(line);
+        }
+
+        return new LineDiff(removed, inserted, Math.max(0, damagedCount));
+    }
+
+    /**
+     * @brief   Takes an occurrence of a line from the unmatched ones.
+     *
+     * @param   unmatched   The number of unmatched occurrences of each line.
+     * @param   line        The line.
+     * @return  `true` if there was an unmatched occurrence of the line, `false` otherwise.
+     */
+    private static boolean take(Map<String, Integer> unmatched, String line) {
+        Integer count = unmatched.get(line);
+        if (count == null) return false;
+
+        if (count == 1) {
+            unmatched.remove(line);
+        } else {
+            unmatched.put(line, count - 1);
+        }
+        return true;
+    }
+}
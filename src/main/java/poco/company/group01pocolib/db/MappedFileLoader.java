@@ -0,0 +1,154 @@
+package poco.company.group01pocolib.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.function.Consumer;
+
+/**
+ * @class   MappedFileLoader
+ * @brief   Loads the lines of a DB file by reading each byte of the file exactly once.
+ * @details The file is memory-mapped and swept in chunks: every chunk is scanned for line breaks, so that the line
+ *          separator is detected and the lines are split and decoded from UTF-8 in a single pass. This replaces
+ *          reading the file once to detect the line separator and once more to load the lines.
+ *          <br><br>
+ *          The mapping is bound to a confined `Arena`, so it is released as soon as the file is loaded instead of
+ *          whenever the garbage collector decides to (which would prevent replacing the file on some platforms).
+ */
+class MappedFileLoader {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * @class   Result
+     * @brief   What was learned about the file while loading it.
+     */
+    static class Result {
+        String lineSeparator;   ///< The first line separator found, `null` if the file has no line breaks
+        boolean canonical;      ///< `true` if every line break is `lineSeparator` and the file doesn't end with one
+        long size;              ///< The size of the file when it was loaded
+        FileTime lastModified;  ///< The last modified time of the file when it was loaded
+    }
+
+    /**
+     * @brief   Loads the lines of a file, passing each of them to `lineSink` in order.
+     * @details Line breaks are the same recognized by `BufferedReader.readLine()` ("\n", "\r\n" and "\r"), and a line
+     *          break at the end of the file doesn't start a new line.
+     *
+     * @param   file        The file to load.
+     * @param   lineSink    The consumer of the lines of the file.
+     * @return  The result of the load.
+     * @throws  IOException If the file can't be read.
+     */
+    static Result load(Path file, Consumer<String> lineSink) throws IOException {
+        Result result = new Result();
+        result.lastModified = Files.getLastModifiedTime(file);
+
+        ByteArrayOutputStream carry = new ByteArrayOutputStream();   // Part of a line read in previous chunks
+        byte[] chunk = new byte[CHUNK_SIZE];
+        boolean afterCR = false;
+        boolean mixed = false;
+        byte last = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             Arena arena = Arena.ofConfined()) {
+
+            result.size = channel.size();
+            MemorySegment mapped = result.size == 0 ? MemorySegment.NULL
+                                                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, result.size, arena);
+
+            for (long offset = 0; offset < result.size; offset += CHUNK_SIZE) {
+                int length = (int) Math.min(CHUNK_SIZE, result.size - offset);
+                MemorySegment.copy(mapped, ValueLayout.JAVA_BYTE, offset, chunk, 0, length);
+
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    byte b = chunk[i];
+
+                    if (afterCR) {
+                        afterCR = false;
+
+                        // "\r\n" is a single line break, and the line was already emitted on the "\r"
+                        if (b == '\n') {
+                            mixed |= noteSeparator(result, "\r\n");
+                            lineStart = i + 1;
+                            continue;
+                        }
+                        mixed |= noteSeparator(result, "\r");
+                    }
+
+                    if (b == '\n' || b == '\r') {
+                        emitLine(chunk, lineStart, i, carry, lineSink);
+                        lineStart = i + 1;
+
+                        if (b == '\n') {
+                            mixed |= noteSeparator(result, "\n");
+                        } else {
+                            afterCR = true;
+                        }
+                    }
+                }
+
+                carry.write(chunk, lineStart, length - lineStart);
+                last = chunk[length - 1];
+            }
+        }
+
+        if (afterCR) {
+            mixed |= noteSeparator(result, "\r");
+        }
+
+        // Last line, not followed by a line break
+        if (carry.size() > 0) {
+            emitLine(chunk, 0, 0, carry, lineSink);
+        }
+
+        result.canonical = !mixed && last != '\n' && last != '\r';
+
+        return result;
+    }
+
+    /**
+     * @brief   Decodes a line and passes it to the sink, prepending the part of the line found in previous chunks.
+     *
+     * @param   chunk       The chunk containing the end of the line.
+     * @param   start       The start of the line in the chunk.
+     * @param   end         The end of the line in the chunk (exclusive).
+     * @param   carry       The part of the line found in previous chunks, emptied after use.
+     * @param   lineSink    The consumer of the line.
+     */
+    private static void emitLine(byte[] chunk, int start, int end, ByteArrayOutputStream carry,
+                                 Consumer<String> lineSink) {
+        if (carry.size() == 0) {
+            lineSink.accept(new String(chunk, start, end - start, StandardCharsets.UTF_8));
+            return;
+        }
+
+        carry.write(chunk, start, end - start);
+        lineSink.accept(carry.toString(StandardCharsets.UTF_8));
+        carry.reset();
+    }
+
+    /**
+     * @brief   Records a line separator found in the file.
+     *
+     * @param   result      The result of the load.
+     * @param   separator   The separator found.
+     * @return  `true` if the separator differs from the first one found in the file.
+     */
+    private static boolean noteSeparator(Result result, String separator) {
+        if (result.lineSeparator == null) {
+            result.lineSeparator = separator;
+            return false;
+        }
+
+        return !result.lineSeparator.equals(separator);
+    }
+}
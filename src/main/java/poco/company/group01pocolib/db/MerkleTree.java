@@ -0,0 +1,259 @@
+package poco.company.group01pocolib.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * @class   MerkleTree
+ * @brief   Incrementally maintained Merkle fingerprint of a list of lines.
+ * @details The lines are split in blocks of `BLOCK_LINES` lines. Each block is digested on its own (the leaves of the
+ *          tree), and each node above them is the digest of its two children, up to the root, which fingerprints the
+ *          whole list. Leaves are independent, so a whole list is digested in parallel, and after a line is replaced
+ *          or appended only its block and the path from it to the root are digested again. A line inserted or removed
+ *          in the middle of the list shifts the lines of every following block, which are all digested again.
+ *          <br><br>
+ *          The fingerprint only depends on the lines (and on the `HashStrategy` digesting blocks and nodes), not on how
+ *          they are separated in the file, and is the same whether it is calculated at once, incrementally or while
+ *          streaming the lines (see `Builder`).
+ */
+class MerkleTree {
+    static final int BLOCK_LINES = 256;
+    private static final int MIN_PARALLEL_BLOCKS = 16;
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private final HashStrategy strategy;
+
+    /// Digests of each level of the tree, from the leaves up to the root, empty if the whole tree is stale
+    private final List<byte[][]> levels = new ArrayList<>();
+    private final BitSet dirtyBlocks = new BitSet();
+    private int firstShiftedBlock = Integer.MAX_VALUE;     ///< Every block from this one on has to be digested again
+
+    /**
+     * @brief   Creates an empty tree, stale until its root is first calculated.
+     * @param   strategy The hash strategy digesting blocks and nodes.
+     */
+    MerkleTree(HashStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * @brief   Gets the hash strategy digesting blocks and nodes.
+     * @return  The hash strategy of the tree.
+     */
+    HashStrategy getStrategy() {
+        return this.strategy;
+    }
+
+    /**
+     * @brief   Marks the whole tree as stale, to be digested again from scratch.
+     */
+    void invalidate() {
+        this.levels.clear();
+        this.dirtyBlocks.clear();
+        this.firstShiftedBlock = Integer.MAX_VALUE;
+    }
+
+    /**
+     * @brief   Gets the digests of the blocks, as of the last time the root was calculated.
+     * @return  The digests of the blocks, or `null` if the tree is stale.
+     */
+    byte[][] getLeaves() {
+        return this.levels.isEmpty() ? null : this.levels.getFirst().clone();
+    }
+
+    /**
+     * @brief   Rebuilds the tree from the digests of its blocks, calculated earlier for the same lines.
+     * @param   leaves The digests of the blocks.
+     */
+    void restore(byte[][] leaves) {
+        this.invalidate();
+        this.buildLevels(leaves.clone());
+    }
+
+    /**
+     * @brief   Marks the block of a replaced line as dirty.
+     * @param   N The position of the line.
+     */
+    void lineReplaced(int N) {
+        this.dirtyBlocks.set(N / BLOCK_LINES);
+    }
+
+    /**
+     * @brief   Marks the blocks from that of an inserted or removed line on as dirty, since their lines shifted.
+     * @param   N The position of the line.
+     */
+    void linesShifted(int N) {
+        this.firstShiftedBlock = Math.min(this.firstShiftedBlock, N / BLOCK_LINES);
+    }
+
+    /**
+     * @brief   Calculates the root of the tree, digesting again the blocks that changed since the last time.
+     *
+     * @param   lines       The lines fingerprinted by the tree.
+     * @param   parallel    `true` to digest the blocks in parallel, if there are enough of them.
+     * @return  The Base64-encoded root of the tree.
+     */
+    String getRoot(List<String> lines, boolean parallel) {
+        int blockCount = (lines.size() + BLOCK_LINES - 1) / BLOCK_LINES;
+
+        boolean reshaped = this.levels.isEmpty() || this.levels.getFirst().length != blockCount;
+        byte[][] leaves = this.levels.isEmpty() ? new byte[blockCount][]
+                                                : Arrays.copyOf(this.levels.getFirst(), blockCount);
+
+        // Missing leaves are new (or every leaf is, if the tree was stale)
+        BitSet dirty = (BitSet) this.dirtyBlocks.clone();
+        for (int block = 0; block < blockCount; block++) {
+            if (leaves[block] == null || block >= this.firstShiftedBlock) dirty.set(block);
+        }
+        dirty.clear(blockCount, Math.max(blockCount, dirty.length()));
+
+        IntStream dirtyLeaves = dirty.stream();
+        if (parallel && dirty.cardinality() >= MIN_PARALLEL_BLOCKS) {
+            dirtyLeaves = dirtyLeaves.parallel();
+        }
+        dirtyLeaves.forEach(block -> leaves[block] = this.digestBlock(lines, block));
+
+        if (reshaped) {
+            this.buildLevels(leaves);
+        } else {
+            this.levels.set(0, leaves);
+            dirty.stream().forEach(this::updatePath);
+        }
+
+        this.dirtyBlocks.clear();
+        this.firstShiftedBlock = Integer.MAX_VALUE;
+
+        return Base64.getEncoder().encodeToString(this.levels.getLast()[0]);
+    }
+
+    /**
+     * @brief   Builds every level of the tree above the leaves.
+     * @param   leaves The digests of the blocks.
+     */
+    private void buildLevels(byte[][] leaves) {
+        this.levels.clear();
+        this.levels.add(leaves);
+
+        byte[][] level = leaves.length == 0 ? new byte[][] {this.digestBlock(List.of(), 0)} : leaves;
+        if (level != leaves) this.levels.add(level);
+
+        while (level.length > 1) {
+            byte[][] parents = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = this.digestNode(level, i);
+            }
+
+            this.levels.add(parents);
+            level = parents;
+        }
+    }
+
+    /**
+     * @brief   Digests again the nodes on the path from a leaf to the root.
+     * @param   block The position of the leaf.
+     */
+    private void updatePath(int block) {
+        int node = block;
+        for (int depth = 1; depth < this.levels.size(); depth++) {
+            node /= 2;
+            this.levels.get(depth)[node] = this.digestNode(this.levels.get(depth - 1), node);
+        }
+    }
+
+    /**
+     * @brief   Digests a node from its children. A node without a right child is its left child.
+     *
+     * @param   children    The level below the node.
+     * @param   node        The position of the node in its level.
+     * @return  The digest of the node.
+     */
+    private byte[] digestNode(byte[][] children, int node) {
+        int left = node * 2;
+        if (left + 1 == children.length) return children[left];
+
+        HashStrategy.Hasher digest = this.strategy.newHasher();
+        digest.update(NODE_PREFIX);
+        digest.update(children[left]);
+        digest.update(children[left + 1]);
+        return digest.digest();
+    }
+
+    /**
+     * @brief   Digests a block of lines.
+     *
+     * @param   lines The lines.
+     * @param   block The position of the block.
+     * @return  The digest of the block.
+     */
+    private byte[] digestBlock(List<String> lines, int block) {
+        HashStrategy.Hasher digest = this.strategy.newHasher();
+        digest.update(LEAF_PREFIX);
+
+        int end = Math.min(lines.size(), (block + 1) * BLOCK_LINES);
+        for (int i = block * BLOCK_LINES; i < end; i++) {
+            digest.update(lines.get(i).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * @class   Builder
+     * @brief   Calculates the root of the tree of lines streamed one at a time, without keeping them in memory.
+     */
+    static class Builder {
+        private final MerkleTree tree;
+        private final List<byte[]> leaves = new ArrayList<>();
+        private final List<String> block = new ArrayList<>(BLOCK_LINES);
+
+        /**
+         * @brief   Creates a builder with no lines.
+         * @param   strategy The hash strategy digesting blocks and nodes.
+         */
+        Builder(HashStrategy strategy) {
+            this.tree = new MerkleTree(strategy);
+        }
+
+        /**
+         * @brief   Adds the next line.
+         * @param   line The line.
+         */
+        void add(String line) {
+            this.block.add(line);
+
+            if (this.block.size() == BLOCK_LINES) {
+                this.leaves.add(this.tree.digestBlock(this.block, 0));
+                this.block.clear();
+            }
+        }
+
+        /**
+         * @brief   Calculates the root of the tree of the lines added so far.
+         * @return  The Base64-encoded root of the tree.
+         */
+        String getRoot() {
+            List<byte[]> leaves = new ArrayList<>(this.leaves);
+            if (!this.block.isEmpty()) leaves.add(this.tree.digestBlock(this.block, 0));
+
+            this.tree.buildLevels(leaves.toArray(new byte[0][]));
+            return Base64.getEncoder().encodeToString(this.tree.levels.getLast()[0]);
+        }
+
+        /**
+         * @brief   Gets the digests of the blocks of the lines added so far, as of the last time the root was
+         *          calculated.
+         * @return  The digests of the blocks, or `null` if the root was never calculated.
+         */
+        byte[][] getLeaves() {
+            return this.tree.getLeaves();
+        }
+    }
+}
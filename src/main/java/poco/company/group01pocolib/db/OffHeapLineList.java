@@ -0,0 +1,212 @@
+package poco.company.group01pocolib.db;
+
+import java.io.*;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * @class   OffHeapLineList
+ * @brief   A `List` of lines kept as UTF-8 bytes in off-heap memory, decoded only when they are read.
+ * @details The bytes of the lines are appended to a single `MemorySegment` outside of the Java heap, and the list only
+ *          keeps the offset and the length of each line in two primitive arrays. A line is decoded into a `String`
+ *          each time it is read, so the heap only holds the lines being used, and the garbage collector never has to
+ *          trace the content of the list.
+ *          <br><br>
+ *          A replaced or removed line leaves its bytes behind in the segment. When the segment is full, the lines of
+ *          the list are copied, compacted, to a new segment twice their size, and the old segment is released along
+ *          with its automatic `Arena` once it is no longer reachable.
+ *          <br><br>
+ *          The segment can't be serialized, so the lines are written as length-prefixed UTF-8 bytes instead, and copied
+ *          to a new segment when the list is read back.
+ *          <br><br>
+ *          This is the backing `List` of a {@link poco.company.group01pocolib.db.DB DB} in `CacheMode.OFF_HEAP`.
+ */
+class OffHeapLineList extends AbstractList<String> implements RandomAccess, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final long MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MIN_LINE_CAPACITY = 16;
+
+    private transient MemorySegment data;
+    private transient long usedBytes;       ///< Bytes appended to the segment, including those of dropped lines
+    private transient long lineBytes;       ///< Bytes of the lines of the list
+
+    private transient long[] offsets;       ///< Offset of each line in the segment
+    private transient int[] lengths;        ///< Length in bytes of each line
+    private transient int size;
+
+    /**
+     * @brief   Creates an empty list.
+     */
+    OffHeapLineList() {
+        this.init();
+    }
+
+    /**
+     * @brief   Gets the size of the off-heap segment holding the lines.
+     * @return  The size of the segment, in bytes.
+     */
+    long getSegmentSize() {
+        return this.data.byteSize();
+    }
+
+    @Override
+    public String get(int index) {
+        Objects.checkIndex(index, this.size);
+
+        byte[] bytes = new byte[this.lengths[index]];
+        MemorySegment.copy(this.data, ValueLayout.JAVA_BYTE, this.offsets[index], bytes, 0, bytes.length);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public String set(int index, String line) {
+        String replaced = this.get(index);
+
+        this.lineBytes -= this.lengths[index];
+        this.lengths[index] = 0;
+        this.store(index, line.getBytes(StandardCharsets.UTF_8));
+
+        return replaced;
+    }
+
+    @Override
+    public void add(int index, String line) {
+        Objects.checkIndex(index, this.size + 1);
+
+        this.insert(index, line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @brief   Inserts a line in the list.
+     *
+     * @param   index   The position of the line.
+     * @param   bytes   The UTF-8 bytes of the line.
+     */
+    private void insert(int index, byte[] bytes) {
+        if (this.size == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+            this.lengths = Arrays.copyOf(this.lengths, this.size * 2);
+        }
+        System.arraycopy(this.offsets, index, this.offsets, index + 1, this.size - index);
+        System.arraycopy(this.lengths, index, this.lengths, index + 1, this.size - index);
+        this.lengths[index] = 0;
+        this.size++;
+
+        this.store(index, bytes);
+        this.modCount++;
+    }
+
+    @Override
+    public String remove(int index) {
+        String removed = this.get(index);
+        this.lineBytes -= this.lengths[index];
+
+        System.arraycopy(this.offsets, index + 1, this.offsets, index, this.size - index - 1);
+        System.arraycopy(this.lengths, index + 1, this.lengths, index, this.size - index - 1);
+        this.size--;
+        this.modCount++;
+
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        // The segment is kept, since the list is usually filled again right away
+        this.usedBytes = 0;
+        this.lineBytes = 0;
+        this.offsets = new long[MIN_LINE_CAPACITY];
+        this.lengths = new int[MIN_LINE_CAPACITY];
+        this.size = 0;
+        this.modCount++;
+    }
+
+    /**
+     * @brief   Appends the bytes of a line to the segment, and points a position of the list to them.
+     *
+     * @param   index   The position of the line.
+     * @param   bytes   The UTF-8 bytes of the line.
+     */
+    private void store(int index, byte[] bytes) {
+        if (this.usedBytes + bytes.length > this.data.byteSize()) {
+            this.compact(bytes.length);
+        }
+
+        MemorySegment.copy(bytes, 0, this.data, ValueLayout.JAVA_BYTE, this.usedBytes, bytes.length);
+        this.offsets[index] = this.usedBytes;
+        this.lengths[index] = bytes.length;
+        this.usedBytes += bytes.length;
+        this.lineBytes += bytes.length;
+    }
+
+    /**
+     * @brief   Copies the lines of the list, without the bytes of dropped lines, to a new segment.
+     * @details The new segment is twice the size of the lines, plus the room needed, so that it's compacted again
+     *          only after as many bytes as the lines hold are appended.
+     *
+     * @param   room The number of bytes that must fit in the new segment after the lines.
+     */
+    private void compact(int room) {
+        long segmentSize = Math.max(MIN_SEGMENT_SIZE, 2 * (this.lineBytes + room));
+        MemorySegment compacted = Arena.ofAuto().allocate(segmentSize, 1);
+
+        long position = 0;
+        for (int i = 0; i < this.size; i++) {
+            MemorySegment.copy(this.data, this.offsets[i], compacted, position, this.lengths[i]);
+            this.offsets[i] = position;
+            position += this.lengths[i];
+        }
+
+        this.data = compacted;
+        this.usedBytes = position;
+    }
+
+    /**
+     * @brief   Initializes an empty list, with the smallest segment.
+     */
+    private void init() {
+        this.data = Arena.ofAuto().allocate(MIN_SEGMENT_SIZE, 1);
+        this.clear();
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        output.defaultWriteObject();
+        output.writeInt(this.size);
+
+        for (int i = 0; i < this.size; i++) {
+            byte[] bytes = new byte[this.lengths[i]];
+            MemorySegment.copy(this.data, ValueLayout.JAVA_BYTE, this.offsets[i], bytes, 0, bytes.length);
+
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        this.init();
+
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+
+            this.insert(this.size, bytes);
+        }
+    }
+}
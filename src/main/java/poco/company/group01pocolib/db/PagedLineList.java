@@ -0,0 +1,292 @@
+package poco.company.group01pocolib.db;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * @class   PagedLineList
+ * @brief   A `List` of the lines of a file that only keeps a bounded number of them in memory.
+ * @details When the list is (re)indexed, the file is scanned once to build a compact array with the byte offset of the
+ *          start of each line. Lines are then read from the file in pages of `pageSize` lines, the first time one of
+ *          them is requested, and at most `maxPages` pages are kept in memory, evicting the least recently used one.
+ *          <br><br>
+ *          The list can be edited like any other `List`: lines written through the list are kept in memory until the
+ *          file is rewritten and the list reindexed, while untouched lines keep pointing to their offset in the file.
+ *          Heap usage is then bounded by the page budget plus the edited lines, not by the size of the file.
+ *          <br><br>
+ *          This is the backing `List` of a {@link poco.company.group01pocolib.db.DB DB} in `CacheMode.PAGED`.
+ */
+class PagedLineList extends AbstractList<String> implements RandomAccess, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final int pageSize;
+    private int maxPages;
+
+    private long[] lineOffsets = new long[1];   ///< Start of each line of the file, plus the file length as sentinel
+    private int lineCount;
+
+    /// Lines of the list: non-negative values are line numbers of the file, negative values `-(k + 1)` refer to the
+    /// k-th element of `editedLines`
+    private int[] entries = new int[0];
+    private int size;
+    private final List<String> editedLines = new ArrayList<>();
+
+    private final LinkedHashMap<Integer, String[]> pages;
+
+    /**
+     * @brief   Creates an empty paged list for a file. The list has to be indexed before use.
+     *
+     * @param   file        The file whose lines are listed.
+     * @param   pageSize    The number of lines in a page.
+     * @param   maxPages    The maximum number of pages kept in memory.
+     */
+    PagedLineList(Path file, int pageSize, int maxPages) {
+        this.file = file;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                return size() > PagedLineList.this.maxPages;
+            }
+        };
+    }
+
+    /**
+     * @brief   Sets the maximum number of pages kept in memory.
+     * @param   maxPages The new page budget.
+     */
+    synchronized void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+
+        Iterator<Integer> iterator = this.pages.keySet().iterator();
+        while (this.pages.size() > maxPages && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @brief   Gets the number of pages currently kept in memory.
+     * @return  The number of loaded pages.
+     */
+    synchronized int getLoadedPageCount() {
+        return this.pages.size();
+    }
+
+    /**
+     * @brief   Rebuilds the index of line offsets from the file, discarding every edit and every loaded page.
+     * @details The line breaks recognized are the same of `BufferedReader.readLine()` ("\n", "\r\n" and "\r"), and a
+     *          line break at the end of the file doesn't start a new line.
+     *
+     * @throws  IOException If the file can't be read.
+     */
+    synchronized void reindex() throws IOException {
+        long[] offsets = new long[1024];
+        int count = 0;
+        long position = 0;
+        boolean lineStart = true;
+        boolean afterCR = false;
+
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+
+                    // "\r\n" is a single line break
+                    if (!(afterCR && b == '\n')) {
+                        if (lineStart) {
+                            if (count + 1 >= offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                            offsets[count++] = position;
+                        }
+                        lineStart = b == '\n' || b == '\r';
+                    }
+
+                    afterCR = b == '\r';
+                    position++;
+                }
+
+                buffer.clear();
+            }
+        }
+
+        offsets[count] = position;
+
+        this.lineOffsets = offsets;
+        this.lineCount = count;
+        this.entries = new int[Math.max(count, 16)];
+        for (int i = 0; i < count; i++) {
+            this.entries[i] = i;
+        }
+        this.size = count;
+        this.editedLines.clear();
+        this.pages.clear();
+        this.modCount++;
+    }
+
+    /**
+     * @brief   Loads a page of lines from the file.
+     *
+     * @param   page The index of the page to load.
+     * @return  The lines of the page.
+     */
+    private String[] loadPage(int page) {
+        int first = page * this.pageSize;
+        int last = Math.min(first + this.pageSize, this.lineCount);
+        long start = this.lineOffsets[first];
+        byte[] bytes = new byte[(int) (this.lineOffsets[last] - start)];
+
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) != -1);
+
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+            String[] lines = new String[last - first];
+
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = reader.readLine();
+                if (lines[i] == null) {
+                    throw new IllegalStateException("DB file " + this.file + " changed since it was indexed");
+                }
+            }
+
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized String get(int index) {
+        Objects.checkIndex(index, this.size);
+
+        int entry = this.entries[index];
+        if (entry < 0) return this.editedLines.get(-entry - 1);
+
+        String[] page = this.pages.get(entry / this.pageSize);
+        if (page == null) {
+            page = this.loadPage(entry / this.pageSize);
+            this.pages.put(entry / this.pageSize, page);
+        }
+
+        return page[entry % this.pageSize];
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @brief   Keeps a line written through the list in memory.
+     *
+     * @param   line The edited line.
+     * @return  The entry referring to the edited line.
+     */
+    private int addEditedLine(String line) {
+        this.editedLines.add(line);
+        return -this.editedLines.size();
+    }
+
+    @Override
+    public synchronized String set(int index, String line) {
+        String previous = this.get(index);
+        this.entries[index] = this.addEditedLine(line);
+
+        return previous;
+    }
+
+    @Override
+    public synchronized void add(int index, String line) {
+        Objects.checkIndex(index, this.size + 1);
+
+        if (this.size == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, Math.max(16, this.entries.length * 2));
+        }
+
+        System.arraycopy(this.entries, index, this.entries, index + 1, this.size - index);
+        this.entries[index] = this.addEditedLine(line);
+        this.size++;
+        this.modCount++;
+    }
+
+    @Override
+    public synchronized String remove(int index) {
+        String removed = this.get(index);
+
+        System.arraycopy(this.entries, index + 1, this.entries, index, this.size - index - 1);
+        this.size--;
+        this.modCount++;
+
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.size = 0;
+        this.editedLines.clear();
+        this.modCount++;
+    }
+
+    /**
+     * @brief   Serializes the list as the path of its file and its page settings, so that serializing it never reads
+     *          the whole file.
+     * @details The list is deserialized empty, and is indexed from its file again the first time the
+     *          {@link poco.company.group01pocolib.db.DB DB} owning it needs its lines (replaying the journal, if any, on
+     *          top of them).
+     *
+     * @return  The serialized form of the list.
+     */
+    @Serial
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    /**
+     * @class   SerializedForm
+     * @brief   What is serialized of a paged list: the path of its file and its page settings.
+     */
+    private static class SerializedForm implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String file;
+        private final int pageSize;
+        private final int maxPages;
+
+        /**
+         * @brief   Creates the serialized form of a list.
+         * @param   list The list to serialize.
+         */
+        SerializedForm(PagedLineList list) {
+            this.file = list.file.toString();
+            this.pageSize = list.pageSize;
+            synchronized (list) {
+                this.maxPages = list.maxPages;
+            }
+        }
+
+        /**
+         * @brief   Creates the deserialized list, still to be indexed from its file.
+         * @return  The deserialized list.
+         */
+        @Serial
+        private Object readResolve() {
+            return new PagedLineList(Path.of(this.file), this.pageSize, this.maxPages);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package poco.company.group01pocolib.db;
+
+/**
+ * @interface   RecordCodec
+ * @brief       Converts objects to and from the records of a binary record file.
+ * @details     A record is an `Object[]` holding a value for each field of the schema of the codec, of the Java type
+ *              matching its {@link poco.company.group01pocolib.db.FieldType FieldType}.
+ *
+ * @param       <T> The type of the objects stored in the records.
+ */
+public interface RecordCodec<T> {
+    /**
+     * @brief   Gets the schema of the records produced by the codec.
+     * @return  The schema of the records.
+     */
+    RecordSchema getSchema();
+
+    /**
+     * @brief   Converts an object to a record.
+     *
+     * @param   item The object to convert.
+     * @return  The record holding the fields of the object.
+     */
+    Object[] toRecord(T item);
+
+    /**
+     * @brief   Converts a record to an object.
+     *
+     * @param   record The record to convert.
+     * @return  The object, or `null` if the record can't be converted.
+     */
+    T fromRecord(Object[] record);
+}
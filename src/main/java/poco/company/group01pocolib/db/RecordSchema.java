@@ -0,0 +1,110 @@
+package poco.company.group01pocolib.db;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @class   RecordSchema
+ * @brief   The ordered list of named, typed fields of the records of a binary record file.
+ * @details The schema is written in the header of every binary record file, so that a file written with a different
+ *          schema (e.g. by an older version of the application) is recognized and never decoded.
+ */
+public class RecordSchema {
+    private final List<String> names = new ArrayList<>();
+    private final List<FieldType> types = new ArrayList<>();
+
+    /**
+     * @brief   Adds a field at the end of the schema.
+     *
+     * @param   name    The name of the field.
+     * @param   type    The type of the field.
+     * @return  This schema, so that fields can be added in a chain.
+     */
+    public RecordSchema add(String name, FieldType type) {
+        this.names.add(name);
+        this.types.add(type);
+        return this;
+    }
+
+    /**
+     * @brief   Gets the number of fields of the schema.
+     * @return  The number of fields.
+     */
+    public int getFieldCount() {
+        return this.types.size();
+    }
+
+    /**
+     * @brief   Gets the type of a field.
+     *
+     * @param   field The position of the field.
+     * @return  The type of the field.
+     */
+    public FieldType getType(int field) {
+        return this.types.get(field);
+    }
+
+    /**
+     * @brief   Gets the name of a field.
+     *
+     * @param   field The position of the field.
+     * @return  The name of the field.
+     */
+    public String getName(int field) {
+        return this.names.get(field);
+    }
+
+    /**
+     * @brief   Writes the schema in the header of a binary record file.
+     *
+     * @param   output The output to write to.
+     * @throws  IOException If the output can't be written.
+     */
+    void writeTo(DataOutput output) throws IOException {
+        output.writeInt(this.types.size());
+
+        for (int i = 0; i < this.types.size(); i++) {
+            output.writeUTF(this.names.get(i));
+            output.writeByte(this.types.get(i).ordinal());
+        }
+    }
+
+    /**
+     * @brief   Reads a schema from the header of a binary record file.
+     *
+     * @param   input The input to read from.
+     * @return  The schema read.
+     * @throws  IOException If the input can't be read, or holds an unknown field type.
+     */
+    static RecordSchema readFrom(DataInput input) throws IOException {
+        RecordSchema schema = new RecordSchema();
+        FieldType[] fieldTypes = FieldType.values();
+
+        int fieldCount = input.readInt();
+        for (int i = 0; i < fieldCount; i++) {
+            String name = input.readUTF();
+            int type = input.readUnsignedByte();
+            if (type >= fieldTypes.length) throw new IOException("Unknown field type " + type);
+
+            schema.add(name, fieldTypes[type]);
+        }
+
+        return schema;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        RecordSchema other = (RecordSchema) obj;
+        return this.names.equals(other.names) && this.types.equals(other.types);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.names.hashCode() + this.types.hashCode();
+    }
+}
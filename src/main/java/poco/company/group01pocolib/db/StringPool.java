@@ -0,0 +1,186 @@
+package poco.company.group01pocolib.db;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @class   StringPool
+ * @brief   Pool of canonical `String` instances, so that equal values parsed from different lines share one instance.
+ * @details Splitting a line in fields creates a new `String` for each field, even when the same value (an author, a
+ *          first name) was already parsed from another line. Passing each field through `intern` returns the instance
+ *          already in the pool, if there is one, so that the duplicate becomes garbage right away instead of being
+ *          kept alive by the parsed object.
+ *          <br><br>
+ *          The pool only holds weak references to its instances: a value is dropped from the pool as soon as nothing
+ *          else uses it, so the pool never keeps alive values that were removed from the DBs. Unlike
+ *          `String.intern()`, the pool lives on the heap, and can be inspected through its statistics.
+ *          <br><br>
+ *          The pool is safe to use from the worker threads of the parallel loaders without a lock: the entries are
+ *          kept in a `ConcurrentHashMap`, and the entries whose value was collected are removed through a
+ *          `ReferenceQueue` on the next call.
+ *          <br><br>
+ *          `SHARED` is the pool used by the `fromDBString` factories of the entities. Only
+ *          fields that are expected to repeat should be pooled: the pool spends a map entry on each distinct value, so
+ *          pooling values that are unique anyway (IDs, titles, whole DB lines) only adds to the heap.
+ */
+public class StringPool {
+    public static final StringPool SHARED = new StringPool();
+
+    /// Rough size of a `String` object without its characters, and of the header of the array holding them
+    private static final int STRING_OVERHEAD = 24;
+    private static final int ARRAY_OVERHEAD = 16;
+
+    private final ConcurrentHashMap<Entry, Entry> pool = new ConcurrentHashMap<>();
+    private final ReferenceQueue<String> collected = new ReferenceQueue<>();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * @class   Entry
+     * @brief   Weak reference to a value of the pool, usable as a key of the map.
+     * @details Two entries are equal if their values are equal. An entry whose value was collected is only equal to
+     *          itself, so that it can still be removed from the map.
+     */
+    private static final class Entry extends WeakReference<String> {
+        private final int hash;     ///< Hash of the value, kept since the value may be collected
+
+        Entry(String value, ReferenceQueue<String> queue) {
+            super(value, queue);
+            this.hash = value.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof Entry entry)) return false;
+
+            String value = this.get();
+            return value != null && value.equals(entry.get());
+        }
+    }
+
+    /**
+     * @brief   Gets the canonical instance of a value, adding the value to the pool if it isn't there yet.
+     *
+     * @param   value The value, may be `null`.
+     * @return  The instance of the pool equal to the value, or the value itself if it was just added.
+     */
+    public String intern(String value) {
+        if (value == null) return null;
+        this.expungeCollected();
+        this.lookups.increment();
+
+        Entry existing = this.pool.get(new Entry(value, null));
+        String canonical = existing == null ? null : existing.get();
+
+        if (canonical == null) {
+            // Another thread may have added the same value in the meantime, in which case its instance wins
+            Entry entry = new Entry(value, this.collected);
+            existing = this.pool.putIfAbsent(entry, entry);
+            canonical = existing == null ? null : existing.get();
+
+            if (canonical == null) {
+                if (existing != null) this.pool.put(entry, entry);
+                return value;
+            }
+        }
+
+        if (canonical != value) {
+            this.hits.increment();
+            this.bytesSaved.add(estimateSize(value));
+        }
+        return canonical;
+    }
+
+    /**
+     * @brief   Removes from the pool the entries whose value was collected.
+     */
+    private void expungeCollected() {
+        Reference<? extends String> reference;
+
+        while ((reference = this.collected.poll()) != null) {
+            this.pool.remove(reference, reference);
+        }
+    }
+
+    /**
+     * @brief   Replaces each value of an array with its canonical instance.
+     *
+     * @param   values The values.
+     * @return  The same array, holding the canonical instances.
+     */
+    public String[] internAll(String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.intern(values[i]);
+        }
+        return values;
+    }
+
+    /**
+     * @brief   Gets the number of distinct values currently in the pool.
+     * @return  The number of values still in use.
+     */
+    public int size() {
+        this.expungeCollected();
+        return this.pool.size();
+    }
+
+    /**
+     * @brief   Gets the number of values passed to `intern`.
+     * @return  The number of lookups.
+     */
+    public long getLookups() {
+        return this.lookups.sum();
+    }
+
+    /**
+     * @brief   Gets the number of values that were replaced by an instance already in the pool.
+     * @return  The number of duplicates found.
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @brief   Gets an estimate of the heap saved by the pool, adding up the size of every duplicate it replaced.
+     * @details The size of a duplicate is estimated from the layout of a `String` on a 64-bit JVM with compressed
+     *          pointers: the object itself, plus the array of its characters (one byte each if they are all Latin-1,
+     *          two otherwise), aligned to 8 bytes.
+     *
+     * @return  The estimated number of bytes saved.
+     */
+    public long getBytesSaved() {
+        return this.bytesSaved.sum();
+    }
+
+    /**
+     * @brief   Resets the statistics of the pool. The values in the pool are kept.
+     */
+    public void resetStats() {
+        this.lookups.reset();
+        this.hits.reset();
+        this.bytesSaved.reset();
+    }
+
+    /**
+     * @brief   Estimates the heap used by a `String`.
+     *
+     * @param   value The value.
+     * @return  The estimated size of the value, in bytes.
+     */
+    private static long estimateSize(String value) {
+        boolean latin1 = value.chars().allMatch(c -> c <= 0xFF);
+        long arraySize = ARRAY_OVERHEAD + (long) value.length() * (latin1 ? 1 : 2);
+
+        return STRING_OVERHEAD + (arraySize + 7) / 8 * 8;
+    }
+}
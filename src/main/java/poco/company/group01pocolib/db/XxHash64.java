@@ -0,0 +1,166 @@
+package poco.company.group01pocolib.db;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * @class   XxHash64
+ * @brief   Streaming implementation of the XXH64 hash.
+ * @details Input is consumed in stripes of 32 bytes, each read as four little-endian longs and mixed into four
+ *          independent accumulators, so the hash keeps up with memory bandwidth. Bytes that don't fill a stripe are
+ *          buffered until the next update, or mixed into the final hash by `digest`. The result matches the reference
+ *          implementation, and is returned as the 8 bytes of its canonical (big-endian) representation.
+ */
+class XxHash64 implements HashStrategy.Hasher {
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_SIZE = 32;
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    private final byte[] buffer = new byte[STRIPE_SIZE];   ///< Bytes fed since the last complete stripe
+    private int bufferSize;
+    private long totalLength;
+
+    /**
+     * @brief   Creates a hasher.
+     * @param   seed The seed of the hash.
+     */
+    XxHash64(long seed) {
+        this.seed = seed;
+        this.v1 = seed + PRIME_1 + PRIME_2;
+        this.v2 = seed + PRIME_2;
+        this.v3 = seed;
+        this.v4 = seed - PRIME_1;
+    }
+
+    @Override
+    public void update(byte b) {
+        this.buffer[this.bufferSize++] = b;
+        this.totalLength++;
+
+        if (this.bufferSize == STRIPE_SIZE) {
+            this.consumeStripe(this.buffer, 0);
+            this.bufferSize = 0;
+        }
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        this.totalLength += length;
+
+        // Complete the stripe started by previous updates
+        if (this.bufferSize > 0) {
+            int filled = Math.min(STRIPE_SIZE - this.bufferSize, length);
+            System.arraycopy(bytes, offset, this.buffer, this.bufferSize, filled);
+            this.bufferSize += filled;
+            offset += filled;
+            length -= filled;
+
+            if (this.bufferSize < STRIPE_SIZE) return;
+
+            this.consumeStripe(this.buffer, 0);
+            this.bufferSize = 0;
+        }
+
+        for (; length >= STRIPE_SIZE; offset += STRIPE_SIZE, length -= STRIPE_SIZE) {
+            this.consumeStripe(bytes, offset);
+        }
+
+        System.arraycopy(bytes, offset, this.buffer, 0, length);
+        this.bufferSize = length;
+    }
+
+    @Override
+    public byte[] digest() {
+        long hash;
+        if (this.totalLength >= STRIPE_SIZE) {
+            hash = Long.rotateLeft(this.v1, 1) + Long.rotateLeft(this.v2, 7)
+                    + Long.rotateLeft(this.v3, 12) + Long.rotateLeft(this.v4, 18);
+            hash = mergeRound(hash, this.v1);
+            hash = mergeRound(hash, this.v2);
+            hash = mergeRound(hash, this.v3);
+            hash = mergeRound(hash, this.v4);
+        } else {
+            hash = this.seed + PRIME_5;
+        }
+        hash += this.totalLength;
+
+        int i = 0;
+        for (; i + Long.BYTES <= this.bufferSize; i += Long.BYTES) {
+            hash ^= round(0, (long) LONG_LE.get(this.buffer, i));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (i + Integer.BYTES <= this.bufferSize) {
+            hash ^= ((int) INT_LE.get(this.buffer, i) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            i += Integer.BYTES;
+        }
+        for (; i < this.bufferSize; i++) {
+            hash ^= (this.buffer[i] & 0xFFL) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+
+        byte[] digest = new byte[Long.BYTES];
+        for (int b = 0; b < Long.BYTES; b++) {
+            digest[b] = (byte) (hash >>> (56 - 8 * b));
+        }
+        return digest;
+    }
+
+    /**
+     * @brief   Mixes a stripe of 32 bytes into the accumulators.
+     *
+     * @param   bytes   The array holding the stripe.
+     * @param   offset  The start of the stripe in the array.
+     */
+    private void consumeStripe(byte[] bytes, int offset) {
+        this.v1 = round(this.v1, (long) LONG_LE.get(bytes, offset));
+        this.v2 = round(this.v2, (long) LONG_LE.get(bytes, offset + 8));
+        this.v3 = round(this.v3, (long) LONG_LE.get(bytes, offset + 16));
+        this.v4 = round(this.v4, (long) LONG_LE.get(bytes, offset + 24));
+    }
+
+    /**
+     * @brief   Mixes a long of input into an accumulator.
+     *
+     * @param   accumulator The accumulator.
+     * @param   input       The input.
+     * @return  The new value of the accumulator.
+     */
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME_1;
+    }
+
+    /**
+     * @brief   Mixes an accumulator into the final hash.
+     *
+     * @param   hash        The hash.
+     * @param   accumulator The accumulator.
+     * @return  The new value of the hash.
+     */
+    private static long mergeRound(long hash, long accumulator) {
+        hash ^= round(0, accumulator);
+        return hash * PRIME_1 + PRIME_4;
+    }
+}
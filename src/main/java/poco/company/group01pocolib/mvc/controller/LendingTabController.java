@@ -46,6 +46,7 @@ public class LendingTabController {
     private ColumnConstraints column0Constraints;
     @FXML private TextField lendingSearchField;
     @FXML private CheckBox onlyActiveCheckBox;
+    @FXML private CheckBox showArchivedCheckBox;
 
     // Lending Table //
     // ------------------------------------------------ //
@@ -97,6 +98,7 @@ public class LendingTabController {
      * - When the Omnisearch textfield is empty, the full table data is shown, whereas a type in the search box
      *   enables the view of the search results
      * - When the Omnisearch textfield is empty, the prompt text shows the number of entries in the Set
+     * - When "Show only active" is unchecked, the archived lendings can be shown as well (they are all returned)
      * - When the window is resized to a tighter height, the pocologo is hidden
      * - When the window is resized to a tighter width, the table resize policy becomes unconstrained to correctly visualize min. column sizes
      *
@@ -148,11 +150,16 @@ public class LendingTabController {
             lendingTableHandler();
         });
 
-        // Initialize checkbox listener
+        // Initialize checkbox listeners
         onlyActiveCheckBox.selectedProperty().addListener(observable -> {
             lendingTableHandler();
         });
 
+        showArchivedCheckBox.disableProperty().bind(onlyActiveCheckBox.selectedProperty());
+        showArchivedCheckBox.selectedProperty().addListener(observable -> {
+            lendingTableHandler();
+        });
+
         // Set row factory for color coding
         lendingTable.setRowFactory(tv -> {
             TableRow<Lending> row = new TableRow<>() {
@@ -217,10 +224,12 @@ public class LendingTabController {
                     column0Constraints.setPrefWidth(0); // (it hides the first column to take all the space)
                     column0Constraints.setMinWidth(0);
                     column0Constraints.setHgrow(javafx.scene.layout.Priority.NEVER);
+                    showArchivedCheckBox.setVisible(false);
                 } else {
                     column0Constraints.setPrefWidth(300); // restores it
                     column0Constraints.setMinWidth(10);
                     column0Constraints.setHgrow(javafx.scene.layout.Priority.ALWAYS);
+                    showArchivedCheckBox.setVisible(true);
                 }
             });
         });
@@ -279,11 +288,25 @@ public class LendingTabController {
         this.lendingSearchField.requestFocus();    
     }
 
+    /**
+     * @brief   Checks whether the archived lendings have to be shown along with the live ones.
+     * @return  `true` if "Show archived" is checked and enabled.
+     */
+    private boolean isShowingArchive() {
+        return showArchivedCheckBox != null && showArchivedCheckBox.isSelected() && !showArchivedCheckBox.isDisabled();
+    }
+
     /**
      * @brief   Loads data from the model into the controller.
+     * @details The archived lendings are loaded as well if "Show archived" is checked, since the old returned
+     *          lendings are moved to the archive at every startup.
      */
     public void loadData() {
         lendingData.setAll(lendingSet.getAllLendingsAsList());
+
+        if (isShowingArchive()) {
+            lendingData.addAll(lendingSet.getArchivedLendings());
+        }
         
         // Apply active filter if checkbox is selected
         if (onlyActiveCheckBox != null && onlyActiveCheckBox.isSelected()) {
@@ -468,8 +491,8 @@ public class LendingTabController {
 
             String query = lendingSearchField.textProperty().getValue().trim().toLowerCase();
 
-            // Perform search and store results
-            currentSearchResults = lendingSet.search(query);
+            // Perform search and store results (through the whole archive, if it is shown)
+            currentSearchResults = isShowingArchive() ? lendingSet.search(query, true) : lendingSet.search(query);
 
             // Initial sort of search results by hits
             applyDefaultSearchSortMethod();
@@ -12,6 +12,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+import poco.company.group01pocolib.db.FieldType;
+import poco.company.group01pocolib.db.RecordCodec;
+import poco.company.group01pocolib.db.RecordSchema;
+import poco.company.group01pocolib.db.StringPool;
 import poco.company.group01pocolib.exceptions.BookDataNotValidException;
 
 import static poco.company.group01pocolib.db.omnisearch.Index.NGRAM_SIZE;
@@ -348,7 +352,7 @@ public class Book implements Serializable {
 
         return new Book(
             fields[0],                              // title
-            List.of(fields[1].split("; ")),   // authors
+            List.of(StringPool.SHARED.internAll(fields[1].split("; "))),   // authors (repeated across many books)
             fields[2],                              // isbn
             Integer.parseInt(fields[3]),            // year
             Integer.parseInt(fields[4]),            // copiesAvailable
@@ -357,6 +361,38 @@ public class Book implements Serializable {
         );
     }
 
+    /**
+     * @brief   Codec storing Books as binary records, with the same fields of the DB string representation.
+     */
+    public static final RecordCodec<Book> RECORD_CODEC = new RecordCodec<>() {
+        private final RecordSchema schema = new RecordSchema()
+                .add("title", FieldType.STRING)
+                .add("authors", FieldType.STRING_LIST)
+                .add("isbn", FieldType.STRING)
+                .add("year", FieldType.INT)
+                .add("copiesAvailable", FieldType.INT)
+                .add("copiesLent", FieldType.INT)
+                .add("timesLent", FieldType.INT);
+
+        @Override
+        public RecordSchema getSchema() {
+            return schema;
+        }
+
+        @Override
+        public Object[] toRecord(Book book) {
+            return new Object[] {book.getTitle(), book.getAuthors(), book.getIsbn(), book.getYear(),
+                                 book.getCopiesAvailable(), book.getCopiesLent(), book.getTimesLent()};
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Book fromRecord(Object[] record) {
+            return new Book((String) record[0], (List<String>) record[1], (String) record[2], (Integer) record[3],
+                            (Integer) record[4], (Integer) record[5], (Integer) record[6]);
+        }
+    };
+
     /**
      * @brief   Generates a string containing only the searchable info of the book.
      * @details The searchable info includes the title, authors, and ISBN, each padded to a fixed minimum length defined
@@ -7,7 +7,10 @@
 
 package poco.company.group01pocolib.mvc.model;
 
+import poco.company.group01pocolib.db.BloomFilter;
 import poco.company.group01pocolib.db.DB;
+import poco.company.group01pocolib.db.HashStrategy;
+import poco.company.group01pocolib.db.LineDiff;
 import poco.company.group01pocolib.db.Hash;
 import poco.company.group01pocolib.db.omnisearch.Index;
 import poco.company.group01pocolib.db.omnisearch.Search;
@@ -16,6 +19,7 @@ import poco.company.group01pocolib.db.omnisearch.Search.SearchResult;
 import java.io.*;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.stream.Stream;
 import static java.lang.Math.abs;
 
 import static poco.company.group01pocolib.db.omnisearch.Search.distance;
@@ -44,8 +48,17 @@ public class BookSet implements Serializable {
                             /// isStored()}) as a dummy object for the `contains()` method of the Collection
 
     private String lastKnownDBHash;
+    private String lastKnownDBHashStrategy;     ///< Name of the hash strategy that calculated `lastKnownDBHash`
     private String DBPath;
     private String serializationPath;
+    private BloomFilter isbnFilter;   ///< Filter of the ISBNs of the Set, `null` until it's first needed
+
+    // Books written since the last sync by ISBN, `null` for removed ones. The map itself is `null` while the DB file
+    // isn't known to hold the Set in ISBN order, since lines can only be patched in their place once it does
+    private transient Map<String, Book> dirtyBooks;
+
+    private static final int DB_KEY_FIELD = 2;     ///< Position of the ISBN in the DB string of a book
+    private static final Comparator<String> DB_KEY_ORDER = Comparator.naturalOrder();
     
     /**
      * @brief   Default constructor only initializes an empty collection of `Book` elements
@@ -73,6 +86,8 @@ public class BookSet implements Serializable {
      */
     public void setBookSet(HashSet<Book> bookSet) {
         this.bookSet = bookSet;
+        this.isbnFilter = null;
+        this.dirtyBooks = null;
     }
 
     /**
@@ -105,6 +120,7 @@ public class BookSet implements Serializable {
      */
     public void setBookDB(DB bookDB) {
         this.bookDB = bookDB;
+        this.dirtyBooks = null;
     }
 
     /**
@@ -115,11 +131,20 @@ public class BookSet implements Serializable {
         return lastKnownDBHash;
     }
 
+    /**
+     * @brief   Get the name of the hash strategy that calculated the last known DB hash
+     * @return  The name of the hash strategy, or `null` if it is unknown
+     */
+    public String getLastKnownDBHashStrategy() {
+        return lastKnownDBHashStrategy;
+    }
+
     /**
      * @brief   Updates the `lastKnownDBHash` field by rehashing the current DB
      */
     public void updateLastKnownDBHash() {
         this.lastKnownDBHash = this.bookDB.updateAndGetDBFileHash();
+        this.lastKnownDBHashStrategy = this.bookDB.getHashStrategy().getName();
     }
 
     /**
@@ -167,6 +192,9 @@ public class BookSet implements Serializable {
      * @details If the DB file has changed since the last serialization, the `BookSet` will be rebuilt from the DB
      *          file. Otherwise, it will be loaded as is. This includes re-hydrating the Index and the DB object itself.
      *          (This is done to avoid rebuilding the DB's internal Cache from scratch)
+     *          <br><br>
+     *          When the metadata sidecar of the DB file shows that the file didn't change, the deserialized DB object is
+     *          used as is, and the DB file is not read at all.
      *
      * @param   serializationPath The path to the serialized `BookSet`
      * @param   DBPath The path to the DB file
@@ -191,8 +219,26 @@ public class BookSet implements Serializable {
             return bookSet;
         }
 
+        // The DB deserialized along with the set still holds the content of the DB file: if the metadata sidecar
+        // shows that the file didn't change since, neither of them has to be read again
+        DB serializedDB = bookSet.getBookDB();
+        if (serializedDB != null) {
+            serializedDB.setDBPath(DBPath);
+            if (serializedDB.resumeIfUnchanged(bookSet.getLastKnownDBHash())) {
+                bookSet.setDBPath(DBPath);
+                bookSet.setSerializationPath(serializationPath);
+                bookSet.resumeKeyOrder();
+                return bookSet;
+            }
+        }
+
         // Create a new DB object using the provided DB path
-        DB currentDB = new DB(DBPath);
+        DB currentDB = new DB(DBPath, true);
+        // Hash the file the same way the last known hash was calculated, so that the two can be compared
+        HashStrategy lastStrategy = HashStrategy.forName(bookSet.getLastKnownDBHashStrategy());
+        if (lastStrategy != null) {
+            currentDB.setHashStrategy(lastStrategy);
+        }
         // Force hash calculation on the actual file
         String currentDBHash = currentDB.forceHashOnFile();
 
@@ -202,6 +248,7 @@ public class BookSet implements Serializable {
             bookSet.setDBPath(DBPath);
             bookSet.setSerializationPath(serializationPath);
             bookSet.setBookDB(currentDB);
+            bookSet.resumeKeyOrder();
             return bookSet;
         } else {
             bookSet.setDBPath(DBPath);
@@ -217,6 +264,10 @@ public class BookSet implements Serializable {
      * @param   DBPath The path to the DB file
      */
     public void rebuildFromDB(String DBPath) {
+        // The filter is built again from the new Set when it's first needed
+        this.isbnFilter = null;
+        this.dirtyBooks = null;
+
         // Check if file exists at specified path
         File dbFile = new File(DBPath);
         if (!dbFile.exists()) {
@@ -231,38 +282,114 @@ public class BookSet implements Serializable {
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            this.bookDB = new DB(DBPath);
+            this.bookDB = new DB(DBPath, true);
             this.bookSet = new HashSet<>();
             this.bookIndex = new Index<>();
+            resumeKeyOrder();
             return;
         }
 
         //Initialize the DB object for rebuilding
-        this.bookDB = new DB(DBPath);
+        this.bookDB = new DB(DBPath, true);
     
         // Clear in-memory data structures before reloading
         this.bookSet.clear();
         this.bookIndex = new Index<>(); 
 
-        int i = 0;
-        String line;
-        
-        // Iterate through each line in the DB file and parse it into a Book object
-        while ((line = this.bookDB.readNthLine(i)) != null) {
+        // Load the binary record snapshot if it is up to date, otherwise parse the lines of the DB file in
+        // parallel, then add the books in file order
+        List<Book> books = this.bookDB.readRecordSnapshot(Book.RECORD_CODEC);
+        if (books == null) {
+            // The stream holds a snapshot of the DB until it is closed
+            try (Stream<String> lines = this.bookDB.lines()) {
+                books = lines.parallel()
+                        .filter(Objects::nonNull)   // Damaged lines, already quarantined by the DB
+                        .map(line -> {
+                            try {
+                                return Book.fromDBString(line);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                                return null;
+                            }
+                        })
+                        .filter(Objects::nonNull)
+                        .toList();
+            }
+        }
+
+        for (Book book : books) {
+            this.bookSet.add(book);
+            this.bookIndex.add(book.toSearchableString(), book);
+        }
+
+        resumeKeyOrder();
+        updateLastKnownDBHash();
+    }
+
+    /**
+     * @brief   Applies the changes made to the DB file by someone else, as found by {@link
+     *          poco.company.group01pocolib.db.DB#reconcile DB.reconcile()}
+     * @details Only the records on the removed and inserted lines are parsed, and only they are removed from (or added
+     *          to) the Set and the Index, so that editing a single record by hand doesn't cost a full rebuild. A record
+     *          edited in place shows up as both removed and inserted, so it ends up replaced. If some inserted line is
+     *          damaged or can't be parsed, the removed records not replaced by the other inserted lines are kept, since
+     *          that line may be their new version, and they are written back on the next sync.
+     *
+     * @param   diff The lines removed from and inserted in the DB file
+     */
+    public void applyExternalChanges(LineDiff diff) {
+        // The lines were edited in place, possibly out of ISBN order: the next sync rewrites the DB file in order
+        this.dirtyBooks = null;
+
+        // The inserted lines are parsed first: if some of them can't be parsed, a removed book is kept unless one of
+        // the others replaces it, since the line that can't be parsed may be its new version
+        List<Book> insertedBooks = new ArrayList<>();
+        boolean unparsedLines = diff.getDamagedCount() > 0;
+        for (String line : diff.getInserted()) {
+            try {
+                insertedBooks.add(Book.fromDBString(line));
+            } catch (Exception e) {
+                e.printStackTrace();
+                unparsedLines = true;
+            }
+        }
+
+        for (String line : diff.getRemoved()) {
             try {
-            
                 Book book = Book.fromDBString(line);
-                
-                this.bookSet.add(book);
-                this.bookIndex.add(book.toSearchableString(), book);
+                if (unparsedLines && !insertedBooks.contains(book)) {
+                    System.err.println("Warning: Keeping book " + book.getIsbn() + ", its new line can't be parsed");
+                    continue;
+                }
+
+                if (bookSet.remove(book) && isbnFilter != null) {
+                    isbnFilter.recordRemoval();
+                }
+                bookIndex.fastRemove(book.toSearchableString(), book);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
 
+        for (Book book : insertedBooks) {
+            try {
+                // An edited book was already removed with its old line, unless that line was damaged
+                if (bookSet.remove(book)) {
+                    bookIndex.remove(book);
+                }
+                bookSet.add(book);
+                bookIndex.add(book.toSearchableString(), book);
+                if (isbnFilter != null) {
+                    isbnFilter.add(book.getIsbn());
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
-            i++;
         }
 
-        updateLastKnownDBHash();
+        // The DB already holds the changes, its hash was updated while reconciling
+        this.lastKnownDBHash = bookDB.getDBFileHash();
+        this.lastKnownDBHashStrategy = bookDB.getHashStrategy().getName();
     }
 
     /**
@@ -282,6 +409,10 @@ public class BookSet implements Serializable {
         // Adds the book (new or updated)
         bookSet.add(book);
         bookIndex.add(book.toSearchableString(), book);
+        if (isbnFilter != null) {
+            isbnFilter.add(book.getIsbn());
+        }
+        markDirty(book.getIsbn(), book);
         
         // Syncs the changes to DB and serialized file
         syncOnWrite();
@@ -295,8 +426,11 @@ public class BookSet implements Serializable {
         dummy.setIsbn(isbn);
         
         // Removes the book from the set and index
-        bookSet.remove(dummy);
+        if (bookSet.remove(dummy) && isbnFilter != null) {
+            isbnFilter.recordRemoval();
+        }
         bookIndex.remove(dummy);
+        markDirty(isbn, null);
         
         // Syncs the changes to DB and serialized file
         syncOnWrite();
@@ -323,13 +457,17 @@ public class BookSet implements Serializable {
      * @brief   Checks whether a book is already registred in the Set
      * @details The search is performed on the Collection used to store the BookSet. Two Books are {@link
      *          poco.company.group01pocolib.mvc.model.Book#equals equal} when they have the same unique
-     *          identifier (`isbn`)
+     *          identifier (`isbn`). The Bloom filter of the ISBNs is checked first, so that most ISBNs that
+     *          aren't stored are told apart without looking at the Collection
      * 
      * @param   book The book to search 
      * @return  Returns `true` if a result is found for the book's unique identifier
      * @author  Giovanni Orsini
      */
     public boolean isStored(Book book) {
+        if (book != null && book.getIsbn() != null && !isbnFilter().mightContain(book.getIsbn())) {
+            return false;
+        }
         return bookSet.contains(book);
     }
 
@@ -337,17 +475,40 @@ public class BookSet implements Serializable {
      * @brief   Checks whether a book is already registred in the Set
      * @details The search is performed on the Collection used to store the BookSet. Two Books are {@link
      *          poco.company.group01pocolib.mvc.model.Book#equals equal} when they have the same unique
-     *          identifier (`isbn`)
+     *          identifier (`isbn`). The Bloom filter of the ISBNs is checked first, so that most ISBNs that
+     *          aren't stored are told apart without looking at the Collection
      * 
      * @param   isbn The unique identifier of the book to search
      * @return  Returns `true` if a result is found for the book's unique identifier
      * @author  Giovanni Orsini
      */
     public boolean isStored(String isbn) {
+        if (isbn != null && !isbnFilter().mightContain(isbn)) {
+            return false;
+        }
         dummy.setIsbn(isbn);
         return bookSet.contains(dummy);
     }
 
+    /**
+     * @brief   Get the Bloom filter of the ISBNs in the Set, building it again if it's missing or worn out
+     * @details The filter is rebuilt from the Set when more books were added than it was sized for, or when too many
+     *          of them were removed (see {@link poco.company.group01pocolib.db.BloomFilter#needsRebuild
+     *          needsRebuild()}).
+     *
+     * @return  The filter
+     */
+    private BloomFilter isbnFilter() {
+        if (isbnFilter == null || isbnFilter.needsRebuild()) {
+            List<String> keys = new ArrayList<>(bookSet.size());
+            for (Book book : bookSet) {
+                if (book.getIsbn() != null) keys.add(book.getIsbn());
+            }
+            isbnFilter = BloomFilter.of(keys, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+        }
+        return isbnFilter;
+    }
+
     /**
      * @brief   Perform search on the indexed books with ranking
      *
@@ -416,34 +577,111 @@ public class BookSet implements Serializable {
 
     /**
      * @brief   Synchronizes the current state of the BookSet to the DB and serialized file on write operations
+     * @details The DB file is kept in ISBN order, so that the same books are always written in the same way. Once
+     *          it is, only the lines of the books written since the last sync are patched, in a single batch (which
+     *          in journal mode only appends those lines to the journal). The whole DB file is rewritten if it wasn't
+     *          in order when loaded (see `resumeKeyOrder`), after the DB or the Set are replaced or the DB file is edited by someone else, and when so many books
+     *          changed that the batch would rewrite it anyway.
      */
     private void syncOnWrite() {
-        // Clear the DB file
+        boolean synced = dirtyBooks != null && dirtyBooks.size() <= DB.MAX_BATCH_JOURNAL_RECORDS
+                && bookDB.getKeyField() == DB_KEY_FIELD && patchDB();
+        if (!synced) {
+            synced = rewriteDB();
+        }
+        this.dirtyBooks = synced ? new HashMap<>() : null;
+
+        // The hash was already updated by the commit
+        this.lastKnownDBHash = bookDB.getDBFileHash();
+        this.lastKnownDBHashStrategy = bookDB.getHashStrategy().getName();
+    }
+
+    /**
+     * @brief   Patches the lines of the books written since the last sync in the DB file, in a single batch
+     * @return  `true` if the DB file was patched, `false` if it couldn't be (in which case it wasn't changed)
+     */
+    private boolean patchDB() {
+        bookDB.beginBatch();
+
+        for (Map.Entry<String, Book> entry : dirtyBooks.entrySet()) {
+            if (entry.getValue() == null) {
+                bookDB.deleteLineByKey(entry.getKey());
+            } else if (!bookDB.writeLineInKeyOrder(entry.getValue().toDBString(), DB_KEY_ORDER)) {
+                bookDB.rollback();
+                return false;
+            }
+        }
+
+        return bookDB.commit();
+    }
+
+    /**
+     * @brief   Rewrites the whole DB file from the Set, in ISBN order
+     * @return  `true` if the DB file was rewritten, `false` otherwise
+     */
+    private boolean rewriteDB() {
+        // Clear and rewrite the DB file in a single batch, so that it is written (and hashed) only once
+        bookDB.beginBatch();
         bookDB.clear();
+        bookDB.setKeyField(DB_KEY_FIELD);
+
+        List<Book> books = new ArrayList<>(bookSet);
+        books.sort(Comparator.comparing(Book::getIsbn, DB_KEY_ORDER));
 
         StringBuilder newDBContent = new StringBuilder();
 
         // Add all books to the newDBContent, separated by line separators (all but the last line)
-        for (Book book : bookSet) {
+        for (Book book : books) {
             newDBContent.append(book.toDBString()).append(bookDB.getLineSeparator());
         }
 
         // Remove the last line separator if there are any books
-        if (!bookSet.isEmpty()) {
+        if (!books.isEmpty()) {
             newDBContent.setLength(newDBContent.length() - bookDB.getLineSeparator().length());
         }
 
         // Write the new content to the DB file
         bookDB.rebuildDBFromString(newDBContent.toString());
-        
-        // Update the hash after writing to DB
-        updateLastKnownDBHash();
+        return bookDB.commit();
+    }
+
+    /**
+     * @brief   Sets the key field of the DB, and lets the next sync patch the DB file if it already holds the Set in
+     *          ISBN order
+     * @details Called once the Set and the DB are loaded, so that the first edit of a session only patches the line
+     *          of the book edited, like the ones after it. The lines of the DB file are checked in a single pass: if
+     *          some of them are damaged, out of order, or weren't loaded in the Set, the next sync rewrites the whole
+     *          DB file instead.
+     */
+    private void resumeKeyOrder() {
+        bookDB.setKeyField(DB_KEY_FIELD);
+        this.dirtyBooks = bookDB.countLinesInKeyOrder(DB_KEY_ORDER) == bookSet.size() ? new HashMap<>() : null;
+    }
+
+    /**
+     * @brief   Records a book written since the last sync, so that only its line is patched in the DB file
+     *
+     * @param   isbn The ISBN of the book
+     * @param   book The book, or `null` if it was removed
+     */
+    private void markDirty(String isbn, Book book) {
+        if (dirtyBooks != null) {
+            dirtyBooks.put(isbn, book);
+        }
     }
 
     /**
      * @brief   Saves the current state of the BookSet to a serialized file on disk
      */
     public void saveToSerialized() {
+        if (this.bookDB != null) {
+            this.bookDB.writeRecordSnapshot(Book.RECORD_CODEC, this.bookSet);
+
+            // Writing the snapshot forced the hash of the DB file, which the serialized set is in sync with
+            this.lastKnownDBHash = this.bookDB.getDBFileHash();
+            this.lastKnownDBHashStrategy = this.bookDB.getHashStrategy().getName();
+        }
+
         if (serializationPath == null || serializationPath.isEmpty()) {
             return;
         }
@@ -6,6 +6,10 @@
  */
 package poco.company.group01pocolib.mvc.model;
 
+import poco.company.group01pocolib.db.FieldType;
+import poco.company.group01pocolib.db.RecordCodec;
+import poco.company.group01pocolib.db.RecordSchema;
+
 import java.io.Serial;
 import java.io.Serializable;
 import java.time.LocalDate;
@@ -237,6 +241,47 @@ public class Lending implements Serializable {
         );
     }
 
+    /**
+     * @brief   Creates a codec storing Lendings as binary records, with the same fields of the DB string
+     *          representation.
+     * @details Like `fromDBString`, the codec resolves the book and the user of each record against the given sets,
+     *          so records are read sequentially. The sets are not needed to write records, and can be `null` then.
+     *
+     * @param   bookSet The set to resolve the books of the records.
+     * @param   userSet The set to resolve the users of the records.
+     * @return  The codec.
+     */
+    public static RecordCodec<Lending> recordCodec(BookSet bookSet, UserSet userSet) {
+        RecordSchema schema = new RecordSchema()
+                .add("lendingId", FieldType.INT)
+                .add("isbn", FieldType.STRING)
+                .add("userId", FieldType.STRING)
+                .add("returnDate", FieldType.DATE)
+                .add("returned", FieldType.BOOLEAN);
+
+        return new RecordCodec<>() {
+            @Override
+            public RecordSchema getSchema() {
+                return schema;
+            }
+
+            @Override
+            public Object[] toRecord(Lending lending) {
+                return new Object[] {lending.getLendingId(), lending.getBook().getIsbn(), lending.getUser().getId(),
+                                     lending.getReturnDate(), lending.isReturned()};
+            }
+
+            @Override
+            public Lending fromRecord(Object[] record) {
+                return new Lending((Integer) record[0],
+                                   bookSet.getBook((String) record[1]),
+                                   userSet.getUser((String) record[2]),
+                                   (LocalDate) record[3],
+                                   (Boolean) record[4]);
+            }
+        };
+    }
+
     /**
      * @brief   Get a string containing only the searchable info of the lending
      * @details The searchable version of the string will include the searchable info of the book and user, plus the
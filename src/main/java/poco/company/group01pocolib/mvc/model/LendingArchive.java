@@ -0,0 +1,435 @@
+/**
+ * @file    LendingArchive.java
+ * @brief   This file contains the definition of the LendingArchive class, the cold tier of a LendingSet.
+ */
+package poco.company.group01pocolib.mvc.model;
+
+import poco.company.group01pocolib.db.Hash;
+import poco.company.group01pocolib.db.omnisearch.Index;
+import poco.company.group01pocolib.db.omnisearch.Search;
+import poco.company.group01pocolib.db.omnisearch.Search.SearchResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * @class   LendingArchive
+ * @brief   Append-only files of the lendings moved out of the live set of a LendingSet, partitioned by the year of
+ *          their return date, each loaded and indexed the first time it's needed.
+ * @details Archived lendings are appended, one per line and in the same format of the DB file of the LendingSet, to
+ *          the partition of the year of their return date: the file named after the archive file, followed by a dot
+ *          and the year. Partition files are never rewritten, and archiving lendings only appends to the partitions of
+ *          their years. Each partition has its own hash (see `getPartitionHash`), so a change to the archive is
+ *          told apart by partition.
+ *          <br><br>
+ *          Each partition is only read, and its lendings parsed and indexed, the first time it's needed (see
+ *          `loadYear` and `load`), so the cost of the history is paid only by who looks at it, and only for the
+ *          years looked at. Within a partition, the last line of each lending wins.
+ *          <br><br>
+ *          What can't be told by a single partition is written to the ledger, a small file loaded along with the
+ *          first partition, or when the highest archived ID is needed: `TOMBSTONE_PREFIX` followed by the ID of a
+ *          lending removed after it was archived, or the ID of a lending archived again followed by `YEAR_SEPARATOR`
+ *          and its year, since the older copy may sit in the partition of another year. The last line of each lending
+ *          wins. Each append also records `MAX_ID_PREFIX` followed by the highest ID archived so far, so that the IDs
+ *          of archived lendings are kept from being reused by reading the ledger alone, without reading any partition.
+ */
+class LendingArchive {
+    static final String TOMBSTONE_PREFIX = "-";
+    static final String YEAR_SEPARATOR = "@";
+    static final String MAX_ID_PREFIX = "#";
+    static final String LEDGER_EXTENSION = ".ledger";
+
+    private static final int REMOVED = 0;       ///< Year of a removed lending in the ledger
+
+    private final Path file;
+
+    private TreeMap<Integer, Partition> partitions;     ///< Partitions by year, `null` until the files are listed
+    private Map<Integer, Integer> ledger;               ///< Year of each lending of the ledger, `null` until loaded
+    private int maxLendingId;                           ///< Highest archived ID in the ledger, valid once it's loaded
+
+    /**
+     * @class   Partition
+     * @brief   The archived lendings returned in a year.
+     */
+    private static class Partition {
+        final Path file;
+        Map<Integer, Lending> lendings;     ///< Archived lendings by ID, `null` until the partition is loaded
+        Index<Lending> index;
+        String hash;                        ///< Hash of the file, `null` until it's needed
+
+        Partition(Path file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * @brief   Creates an archive over a file, which is not read yet.
+     * @param   file The archive file, which names the partitions and the ledger.
+     */
+    LendingArchive(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @brief   Gets the archive file, which names the partitions and the ledger.
+     * @return  The path to the archive file.
+     */
+    Path getFile() {
+        return this.file;
+    }
+
+    /**
+     * @brief   Gets the file of the partition of a year.
+     *
+     * @param   year The year.
+     * @return  The path to the partition file, which may not exist.
+     */
+    Path getPartitionFile(int year) {
+        return Path.of(this.file + "." + year);
+    }
+
+    /**
+     * @brief   Gets the years that have a partition.
+     * @return  The years, newest first.
+     */
+    List<Integer> getYears() {
+        return new ArrayList<>(this.partitions().descendingKeySet());
+    }
+
+    /**
+     * @brief   Checks whether every partition was already read.
+     * @return  `true` if the whole archive is loaded.
+     */
+    boolean isLoaded() {
+        for (Partition partition : this.partitions().values()) {
+            if (partition.lendings == null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @brief   Gets the lendings of the partitions loaded so far.
+     * @return  The loaded archived lendings.
+     */
+    Collection<Lending> getLendings() {
+        List<Lending> lendings = new ArrayList<>();
+        for (Partition partition : this.partitions().values()) {
+            if (partition.lendings != null) lendings.addAll(partition.lendings.values());
+        }
+        return lendings;
+    }
+
+    /**
+     * @brief   Gets a lending from the partitions loaded so far.
+     *
+     * @param   lendingId The ID of the lending.
+     * @return  The archived lending, or `null` if no loaded partition holds a lending with that ID.
+     */
+    Lending get(int lendingId) {
+        for (Partition partition : this.partitions().values()) {
+            Lending lending = partition.lendings == null ? null : partition.lendings.get(lendingId);
+            if (lending != null) return lending;
+        }
+        return null;
+    }
+
+    /**
+     * @brief   Searches the index of a partition, which must have been loaded.
+     *
+     * @param   rawQuery    The raw search query.
+     * @param   year        The year of the partition.
+     * @return  The matching lendings of the partition, not ranked yet.
+     */
+    List<SearchResult<Lending>> search(String rawQuery, int year) {
+        Partition partition = this.partitions().get(year);
+        if (partition == null || partition.lendings == null) return new ArrayList<>();
+
+        List<SearchResult<Lending>> results = Search.search(rawQuery, partition.index);
+        return results == null ? new ArrayList<>() : results;
+    }
+
+    /**
+     * @brief   Gets the hash of the file of a partition.
+     *
+     * @param   year The year of the partition.
+     * @return  The hash of the partition file, or `null` if there is no partition for that year.
+     */
+    String getPartitionHash(int year) {
+        Partition partition = this.partitions().get(year);
+        if (partition == null) return null;
+
+        if (partition.hash == null) partition.hash = Hash.getFileHash(partition.file);
+        return partition.hash;
+    }
+
+    /**
+     * @brief   Reads every partition not loaded yet.
+     *
+     * @param   bookSet     The BookSet to link.
+     * @param   userSet     The UserSet to link.
+     * @param   liveSet     The lendings in the live set.
+     */
+    void load(BookSet bookSet, UserSet userSet, Set<Lending> liveSet) {
+        for (int year : this.partitions().keySet()) {
+            this.loadYear(year, bookSet, userSet, liveSet);
+        }
+    }
+
+    /**
+     * @brief   Reads a partition, parsing and indexing its lendings, unless it's already loaded.
+     * @details Lendings whose book or user can't be found are skipped, as well as lendings in the live set (a lending
+     *          brought back to the live set, e.g. by editing it, is newer than its archived copy), and lendings the
+     *          ledger says were removed or moved to another partition.
+     *
+     * @param   year        The year of the partition.
+     * @param   bookSet     The BookSet to link.
+     * @param   userSet     The UserSet to link.
+     * @param   liveSet     The lendings in the live set.
+     */
+    void loadYear(int year, BookSet bookSet, UserSet userSet, Set<Lending> liveSet) {
+        Partition partition = this.partitions().get(year);
+        if (partition == null || partition.lendings != null) return;
+
+        partition.lendings = new HashMap<>();
+        partition.index = new Index<>();
+        Map<Integer, Integer> ledger = this.ledger();
+
+        try (BufferedReader reader = Files.newBufferedReader(partition.file, StandardCharsets.UTF_8)) {
+            String line;
+            for (int i = 0; (line = reader.readLine()) != null; i++) {
+                if (line.isEmpty()) continue;
+
+                try {
+                    Lending lending = Lending.fromDBString(line, bookSet, userSet);
+                    if (lending.getBook() == null || lending.getUser() == null) {
+                        System.err.println("Warning: Skipping archived lending at line " + i + " of "
+                                + partition.file + " - book or user not found in database");
+                        continue;
+                    }
+                    partition.lendings.put(lending.getLendingId(), lending);
+                } catch (RuntimeException e) {
+                    // A crash while appending may leave a truncated last line
+                    System.err.println("Error parsing archived lending at line " + i + " of " + partition.file
+                            + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        partition.lendings.values().removeIf(lending -> liveSet.contains(lending)
+                || ledger.getOrDefault(lending.getLendingId(), year) != year);
+        for (Lending lending : partition.lendings.values()) {
+            partition.index.add(lending.toSearchableString(), lending);
+        }
+    }
+
+    /**
+     * @brief   Appends lendings to the partitions of their years, and to the loaded partitions.
+     * @details Lendings that may have been archived before, i.e. with an ID not higher than the highest archived one,
+     *          are recorded in the ledger as well, since their older copy may be in the partition of another year. The
+     *          new highest archived ID is recorded in the ledger too.
+     *
+     * @param   archived            The lendings to archive.
+     * @param   maxArchivedLendingId The highest ID of the lendings archived so far.
+     * @return  `true` if the lendings were appended, `false` if a partition can't be written.
+     */
+    boolean append(Collection<Lending> archived, int maxArchivedLendingId) {
+        Map<Integer, StringBuilder> linesByYear = new TreeMap<>();
+        StringBuilder ledgerLines = new StringBuilder();
+        int newMaxLendingId = maxArchivedLendingId;
+        for (Lending lending : archived) {
+            newMaxLendingId = Math.max(newMaxLendingId, lending.getLendingId());
+            int year = lending.getReturnDate().getYear();
+            linesByYear.computeIfAbsent(year, key -> new StringBuilder())
+                    .append(lending.toDBString()).append(System.lineSeparator());
+
+            if (lending.getLendingId() <= maxArchivedLendingId) {
+                ledgerLines.append(lending.getLendingId()).append(YEAR_SEPARATOR).append(year)
+                        .append(System.lineSeparator());
+            }
+        }
+
+        ledgerLines.append(MAX_ID_PREFIX).append(newMaxLendingId).append(System.lineSeparator());
+
+        // The ledger goes first: until the lines are appended, it only points to a copy that isn't there yet, and
+        // holds an ID higher than the archived ones, which is only skipped
+        if (!this.appendToLedger(ledgerLines.toString())) return false;
+        if (this.ledger != null) this.maxLendingId = Math.max(this.maxLendingId, newMaxLendingId);
+
+        for (Map.Entry<Integer, StringBuilder> entry : linesByYear.entrySet()) {
+            Partition partition = this.partition(entry.getKey());
+            if (!appendLines(partition.file, entry.getValue().toString())) return false;
+            partition.hash = null;
+        }
+
+        for (Lending lending : archived) {
+            this.forget(lending);
+            if (this.ledger != null && lending.getLendingId() <= maxArchivedLendingId) {
+                this.ledger.put(lending.getLendingId(), lending.getReturnDate().getYear());
+            }
+
+            Partition partition = this.partitions().get(lending.getReturnDate().getYear());
+            if (partition.lendings != null) {
+                partition.lendings.put(lending.getLendingId(), lending);
+                partition.index.add(lending.toSearchableString(), lending);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @brief   Records the removal of a lending, which is no longer archived.
+     *
+     * @param   lending The removed lending.
+     * @return  `true` if the removal was recorded, `false` if the ledger can't be written.
+     */
+    boolean appendRemoval(Lending lending) {
+        this.forget(lending);
+        if (this.ledger != null) this.ledger.put(lending.getLendingId(), REMOVED);
+
+        return this.appendToLedger(TOMBSTONE_PREFIX + lending.getLendingId() + System.lineSeparator());
+    }
+
+    /**
+     * @brief   Drops a lending from the loaded partitions, e.g. because it is back in the live set. The files are not
+     *          changed.
+     * @param   lending The lending.
+     */
+    void forget(Lending lending) {
+        for (Partition partition : this.partitions().values()) {
+            if (partition.lendings == null) continue;
+
+            Lending archived = partition.lendings.remove(lending.getLendingId());
+            if (archived != null) partition.index.remove(archived);
+        }
+    }
+
+    /**
+     * @brief   Gets the highest ID of the archived lendings, as recorded in the ledger. No partition is read.
+     * @return  The highest archived ID, or 0 if no lending is archived.
+     */
+    int getMaxLendingId() {
+        this.ledger();
+        return this.maxLendingId;
+    }
+
+    /**
+     * @brief   Gets the partitions, listing the partition files the first time.
+     * @return  The partitions by year.
+     */
+    private TreeMap<Integer, Partition> partitions() {
+        if (this.partitions != null) return this.partitions;
+
+        this.partitions = new TreeMap<>();
+        Path directory = this.file.toAbsolutePath().getParent();
+        String prefix = this.file.getFileName() + ".";
+
+        if (directory != null && Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+                for (Path partitionFile : files) {
+                    String suffix = partitionFile.getFileName().toString().substring(prefix.length());
+                    if (suffix.matches("\\d{1,9}")) {
+                        this.partitions.put(Integer.parseInt(suffix), new Partition(this.getPartitionFile(
+                                Integer.parseInt(suffix))));
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return this.partitions;
+    }
+
+    /**
+     * @brief   Gets the partition of a year, adding it if there is none yet. The partition file is not created.
+     *
+     * @param   year The year.
+     * @return  The partition.
+     */
+    private Partition partition(int year) {
+        return this.partitions().computeIfAbsent(year, key -> {
+            Partition partition = new Partition(this.getPartitionFile(year));
+            // A new partition holds nothing yet, so it's loaded as it is
+            partition.lendings = new HashMap<>();
+            partition.index = new Index<>();
+            return partition;
+        });
+    }
+
+    /**
+     * @brief   Gets the ledger, reading it the first time.
+     * @details The highest archived ID found in the ledger is kept in `maxLendingId`.
+     *
+     * @return  The year of each lending of the ledger, `REMOVED` for removed lendings.
+     */
+    private Map<Integer, Integer> ledger() {
+        if (this.ledger != null) return this.ledger;
+
+        this.ledger = new HashMap<>();
+        this.maxLendingId = 0;
+        Path ledgerFile = Path.of(this.file + LEDGER_EXTENSION);
+        if (!Files.exists(ledgerFile)) return this.ledger;
+
+        try (BufferedReader reader = Files.newBufferedReader(ledgerFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    if (line.startsWith(MAX_ID_PREFIX)) {
+                        this.maxLendingId = Math.max(this.maxLendingId,
+                                Integer.parseInt(line.substring(MAX_ID_PREFIX.length())));
+                    } else if (line.startsWith(TOMBSTONE_PREFIX)) {
+                        this.ledger.put(Integer.parseInt(line.substring(TOMBSTONE_PREFIX.length())), REMOVED);
+                    } else if (line.contains(YEAR_SEPARATOR)) {
+                        String[] fields = line.split(YEAR_SEPARATOR);
+                        this.ledger.put(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]));
+                    }
+                } catch (RuntimeException e) {
+                    // A crash while appending may leave a truncated last line
+                    System.err.println("Error parsing archive ledger line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return this.ledger;
+    }
+
+    /**
+     * @brief   Appends lines to the ledger.
+     *
+     * @param   lines The lines, each followed by a line separator.
+     * @return  `true` if the lines were appended, `false` otherwise.
+     */
+    private boolean appendToLedger(String lines) {
+        return appendLines(Path.of(this.file + LEDGER_EXTENSION), lines);
+    }
+
+    /**
+     * @brief   Appends lines to a file, creating it if needed, and forces them to disk.
+     *
+     * @param   file    The file.
+     * @param   lines   The lines, each followed by a line separator.
+     * @return  `true` if the lines were appended, `false` otherwise.
+     */
+    private static boolean appendLines(Path file, String lines) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+
+            Files.writeString(file, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -6,14 +6,18 @@
 package poco.company.group01pocolib.mvc.model;
 
 import poco.company.group01pocolib.db.DB;
+import poco.company.group01pocolib.db.HashStrategy;
+import poco.company.group01pocolib.db.LineDiff;
 import poco.company.group01pocolib.db.omnisearch.Index;
 import poco.company.group01pocolib.db.omnisearch.Search;
 import poco.company.group01pocolib.db.omnisearch.Search.*;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
 import static poco.company.group01pocolib.db.omnisearch.Search.distance;
@@ -29,6 +33,16 @@ import static poco.company.group01pocolib.db.omnisearch.Search.distance;
  *          optimization of search operations, as well as a mechanism to recover the data in the case of the application
  *          being run on a different machine or after an update that may have corrupted the serialized data. (This is
  *          due to serialization requiring the structure of all classes involved to remain the same between sessions)
+ *          <br><br>
+ *          Lendings are kept in two tiers. The live set (the Set, the DB file and the Index) only holds the active and
+ *          recently returned lendings, while lendings returned more than `archiveAgeDays` days ago are moved by
+ *          `archiveOldLendings` to an append-only archive next to the DB file, partitioned by the year of their
+ *          return date (see {@link poco.company.group01pocolib.mvc.model.LendingArchive LendingArchive}). The live set
+ *          is the recent partition, loaded eagerly, while each archive partition is only read, and indexed, when it is
+ *          needed: when the archive is searched explicitly, or, newest year first, when a search of the live set finds
+ *          fewer than `MIN_LIVE_SEARCH_RESULTS` lendings. Archiving a lending only appends to the partition of its
+ *          year, so rewriting and indexing the live set doesn't scale with the history, and each partition has its own
+ *          hash (see `getArchivePartitionHashes`).
  */
 public class LendingSet implements Serializable {
     @Serial
@@ -41,9 +55,29 @@ public class LendingSet implements Serializable {
     private Lending dummy;         ///< Used in methods as a dummy object for the `contains()` method of the Collection
 
     private String lastKnownDBHash;
+    private String lastKnownDBHashStrategy;     ///< Name of the hash strategy that calculated `lastKnownDBHash`
     private String DBPath;
     private String serializationPath;
 
+    // Lendings written since the last sync by ID, `null` for removed ones. The map itself is `null` while the DB file
+    // isn't known to hold the Set in ID order, since lines can only be patched in their place once it does
+    private transient Map<String, Lending> dirtyLendings;
+
+    private static final int DB_KEY_FIELD = 0;     ///< Position of the ID in the DB string of a lending
+    private static final Comparator<String> DB_KEY_ORDER = Comparator.comparingInt(Integer::parseInt);
+
+    public static final String ARCHIVE_EXTENSION = ".archive";
+    public static final int DEFAULT_ARCHIVE_AGE_DAYS = 365;
+    public static final int MIN_LIVE_SEARCH_RESULTS = 5;
+
+    private int archiveAgeDays;                 ///< 0 for `DEFAULT_ARCHIVE_AGE_DAYS`
+    private int maxArchivedLendingId;           ///< Highest ID of the archived lendings, so that IDs are never reused
+    private transient LendingArchive archive;   ///< `null` until it is first needed
+
+    // Sets the archived lendings are linked to when the archive is loaded
+    private transient BookSet bookSet;
+    private transient UserSet userSet;
+
     /**
      * @brief Default constructor only initializes an empty collection of `Lending` elements
      */
@@ -66,6 +100,7 @@ public class LendingSet implements Serializable {
      */
     public void setLendingSet(HashSet<Lending> lendingSet) {
         this.lendingSet = lendingSet;
+        this.dirtyLendings = null;
     }
 
     /**
@@ -98,6 +133,7 @@ public class LendingSet implements Serializable {
      */
     public void setLendingDB(DB lendingDB) {
         this.lendingDB = lendingDB;
+        this.dirtyLendings = null;
     }
 
     /**
@@ -108,11 +144,20 @@ public class LendingSet implements Serializable {
         return lastKnownDBHash;
     }
 
+    /**
+     * @brief   Get the name of the hash strategy that calculated the last known DB hash
+     * @return  The name of the hash strategy, or `null` if it is unknown
+     */
+    public String getLastKnownDBHashStrategy() {
+        return lastKnownDBHashStrategy;
+    }
+
     /**
      * @brief   Updates the `lastKnownDBHash` field by rehashing the current DB
      */
     public void updateLastKnownDBHash() {
         this.lastKnownDBHash = this.lendingDB.updateAndGetDBFileHash();
+        this.lastKnownDBHashStrategy = this.lendingDB.getHashStrategy().getName();
     }
 
     /**
@@ -148,8 +193,43 @@ public class LendingSet implements Serializable {
     }
 
     /**
-     * @brief   Get all the lendings in the collection as a list
-     * @return  A list of all the lendings in the collection
+     * @brief   Get the age after which returned lendings are archived
+     * @return  The number of days after its return date a returned lending is moved to the archive
+     */
+    public int getArchiveAgeDays() {
+        return archiveAgeDays > 0 ? archiveAgeDays : DEFAULT_ARCHIVE_AGE_DAYS;
+    }
+
+    /**
+     * @brief   Set the age after which returned lendings are archived
+     * @param   archiveAgeDays The number of days after its return date a returned lending is moved to the archive
+     * @throws  IllegalArgumentException If the age is not positive
+     */
+    public void setArchiveAgeDays(int archiveAgeDays) {
+        if (archiveAgeDays <= 0) {
+            throw new IllegalArgumentException("The archive age must be positive");
+        }
+        this.archiveAgeDays = archiveAgeDays;
+    }
+
+    /**
+     * @brief   Links the sets the archived lendings are resolved against when the archive is loaded
+     * @details The sets are linked by `loadFromSerialized` and `rebuildFromDB`, so this is only needed for a
+     *          `LendingSet` set up by hand.
+     *
+     * @param   bookSet The BookSet to link
+     * @param   userSet The UserSet to link
+     */
+    public void linkSets(BookSet bookSet, UserSet userSet) {
+        this.bookSet = bookSet;
+        this.userSet = userSet;
+    }
+
+    /**
+     * @brief   Get all the lendings in the live set as a list
+     * @details Archived lendings are not included, see `getArchivedLendings`.
+     *
+     * @return  A list of all the lendings in the live set
      */
     public List<Lending> getAllLendingsAsList() {
         return new ArrayList<>(lendingSet);
@@ -160,6 +240,9 @@ public class LendingSet implements Serializable {
      * @details If the DB file has changed since the last serialization, the `LendingSet` will be rebuilt from the DB
      *          file. Otherwise, it will be loaded as is. This includes re-hydrating the Index and the DB object itself.
      *          (This is done to avoid rebuilding the DB's internal Cache from scratch)
+     *          <br><br>
+     *          When the metadata sidecar of the DB file shows that the file didn't change, the deserialized DB object is
+     *          used as is, and the DB file is not read at all.
      *
      * @param   serializationPath The path to the serialized `LendingSet`
      * @param   DBPath  The path to the DB file
@@ -187,8 +270,28 @@ public class LendingSet implements Serializable {
             return lendingSet;
         }
 
+        lendingSet.linkSets(bookSet, userSet);
+
+        // The DB deserialized along with the set still holds the content of the DB file: if the metadata sidecar
+        // shows that the file didn't change since, neither of them has to be read again
+        DB serializedDB = lendingSet.getLendingDB();
+        if (serializedDB != null) {
+            serializedDB.setDBPath(DBPath);
+            if (serializedDB.resumeIfUnchanged(lendingSet.getLastKnownDBHash())) {
+                lendingSet.setDBPath(DBPath);
+                lendingSet.restoreLendingCounter();
+                lendingSet.resumeKeyOrder();
+                return lendingSet;
+            }
+        }
+
         // Create a new DB object using the provided DB path
-        DB currentDB = new DB(DBPath);
+        DB currentDB = new DB(DBPath, true);
+        // Hash the file the same way the last known hash was calculated, so that the two can be compared
+        HashStrategy lastStrategy = HashStrategy.forName(lendingSet.getLastKnownDBHashStrategy());
+        if (lastStrategy != null) {
+            currentDB.setHashStrategy(lastStrategy);
+        }
         String currentDBHash = currentDB.forceHashOnFile();
 
         // Check if the DB file has changed since the last serialization by comparing hashes
@@ -196,6 +299,7 @@ public class LendingSet implements Serializable {
             // Technically these two lines are not needed because these parameters are restored in serialization, but they ensure that the paths and DB object are correct
             lendingSet.setDBPath(DBPath);
             lendingSet.setLendingDB(currentDB);
+            lendingSet.resumeKeyOrder();
             // Restore the lending counter from the loaded set, necessary because serialization does not preserve static fields like the lending counter
             lendingSet.restoreLendingCounter();
             return lendingSet;
@@ -216,6 +320,11 @@ public class LendingSet implements Serializable {
      * @author  Giovanni Orsini
      */
     public void rebuildFromDB(String DBPath, BookSet bookSet, UserSet userSet) {
+        // The archive is loaded again when needed, linked to the given sets
+        this.linkSets(bookSet, userSet);
+        this.dirtyLendings = null;
+        this.archive = new LendingArchive(Path.of(DBPath + ARCHIVE_EXTENSION));
+
         // Check if file exists at specified path
         File dbFile = new File(DBPath);
         if (!dbFile.exists()) {
@@ -230,70 +339,99 @@ public class LendingSet implements Serializable {
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            this.lendingDB = new DB(DBPath);
+            this.lendingDB = new DB(DBPath, true);
             this.lendingSet = new HashSet<>();
             this.lendingIndex = new Index<>();
+            resumeKeyOrder();
             return;
         }
 
         //Initialize the DB object for rebuilding
-        this.lendingDB = new DB(DBPath);
+        this.lendingDB = new DB(DBPath, true);
 
         // Clear in-memory data structures before reloading
         this.lendingSet.clear();
         this.lendingIndex = new Index<>();
 
-        int i = 0;
-        String line;
-        int lastLendingId = 0;
-
-        // Iterate through each line in the DB file and parse it into a Lending object
-        while ((line = this.lendingDB.readNthLine(i)) != null) {
-            try {
-
-                Lending lending = Lending.fromDBString(line, bookSet, userSet);
-
-                // Skip lending if book or user is null (corrupted data)
-                if (lending.getBook() == null || lending.getUser() == null) {
-                    System.err.println("Warning: Skipping corrupted lending at line " + i + 
-                                     " - book or user not found in database");
-                    System.err.println("  Line content: " + line);
-                    i++;
-                    continue;
-                }
+        // IDs of archived lendings must not be reused either, the ledger of the archive knows the highest one
+        this.maxArchivedLendingId = this.archive.getMaxLendingId();
+        int lastLendingId = this.maxArchivedLendingId;
 
+        // Load the binary record snapshot if it is up to date, it only holds lendings that were valid when written
+        List<Lending> lendings = this.lendingDB.readRecordSnapshot(Lending.recordCodec(bookSet, userSet));
+        if (lendings != null && lendings.stream().allMatch(l -> l.getBook() != null && l.getUser() != null)) {
+            for (Lending lending : lendings) {
                 this.lendingSet.add(lending);
                 String searchableString = lending.toSearchableString();
                 if (!searchableString.isEmpty()) {
                     this.lendingIndex.add(searchableString, lending);
                 }
+                lastLendingId = Math.max(lastLendingId, lending.getLendingId());
+            }
+
+            Lending.setLendingCounter(lastLendingId);
+            resumeKeyOrder();
+            updateLastKnownDBHash();
+            return;
+        }
 
-                // Track the last lending ID to restore the counter
-                if (lending.getLendingId() > lastLendingId) {
-                    lastLendingId = lending.getLendingId();
+        // Stream the lines of the DB file and parse them into Lending objects. This is done sequentially, since
+        // lendings are resolved against the book and user sets, whose lookups are not thread-safe. The stream holds a
+        // snapshot of the DB until it is closed
+        try (Stream<String> stream = this.lendingDB.lines()) {
+            Iterator<String> lines = stream.iterator();
+            for (int i = 0; lines.hasNext(); i++) {
+                String line = lines.next();
+                if (line == null) {
+                    System.err.println("Warning: Skipping damaged lending at line " + i + " - checksum mismatch");
+                    continue;
                 }
 
-            } catch (Exception e) {
-                System.err.println("Error parsing lending at line " + i + ": " + e.getMessage());
-                e.printStackTrace();
+                try {
+
+                    Lending lending = Lending.fromDBString(line, bookSet, userSet);
+
+                    // Skip lending if book or user is null (corrupted data)
+                    if (lending.getBook() == null || lending.getUser() == null) {
+                        System.err.println("Warning: Skipping corrupted lending at line " + i + 
+                                         " - book or user not found in database");
+                        System.err.println("  Line content: " + line);
+                        continue;
+                    }
+
+                    this.lendingSet.add(lending);
+                    String searchableString = lending.toSearchableString();
+                    if (!searchableString.isEmpty()) {
+                        this.lendingIndex.add(searchableString, lending);
+                    }
+
+                    // Track the last lending ID to restore the counter
+                    if (lending.getLendingId() > lastLendingId) {
+                        lastLendingId = lending.getLendingId();
+                    }
+
+                } catch (Exception e) {
+                    System.err.println("Error parsing lending at line " + i + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
             }
-            i++;
         }
 
         // Restore the lending counter to continue from the last ID found
         Lending.setLendingCounter(lastLendingId);
         System.out.println("Restored lending counter to: " + lastLendingId);
 
+        resumeKeyOrder();
         updateLastKnownDBHash();
     }
 
     /**
      * @brief   Restores the lending counter from the current set of lendings.
-     * @details Finds the maximum lending ID in the set and sets the counter accordingly.
+     * @details Finds the maximum lending ID in the set (and in the archive) and sets the counter accordingly.
      *          This ensures new lendings won't reuse existing IDs.
      */
     private void restoreLendingCounter() {
-        int lastLendingId = 0;
+        int lastLendingId = maxArchivedLendingId;
         for (Lending lending : lendingSet) {
             if (lending.getLendingId() > lastLendingId) {
                 lastLendingId = lending.getLendingId();
@@ -303,18 +441,109 @@ public class LendingSet implements Serializable {
         System.out.println("Restored lending counter to: " + lastLendingId);
     }
 
+    /**
+     * @brief   Applies the changes made to the DB file by someone else, as found by {@link
+     *          poco.company.group01pocolib.db.DB#reconcile DB.reconcile()}
+     * @details Only the records on the removed and inserted lines are parsed, and only they are removed from (or added
+     *          to) the Set and the Index, so that editing a single record by hand doesn't cost a full rebuild. A record
+     *          edited in place shows up as both removed and inserted, so it ends up replaced. If some inserted line is
+     *          damaged or can't be parsed, the removed records not replaced by the other inserted lines are kept, since
+     *          that line may be their new version, and they are written back on the next sync.
+     *          <br><br>
+     *          Changes to the books and users should be applied first, so that the lendings are linked to the new ones.
+     *
+     * @param   diff The lines removed from and inserted in the DB file
+     * @param   bookSet The BookSet to link
+     * @param   userSet The UserSet to link
+     */
+    public void applyExternalChanges(LineDiff diff, BookSet bookSet, UserSet userSet) {
+        // The lines were edited in place, possibly out of ID order: the next sync rewrites the DB file in order
+        this.dirtyLendings = null;
+
+        this.linkSets(bookSet, userSet);
+
+        // The inserted lines are parsed first: if some of them can't be parsed (or link a missing book or user), a
+        // removed lending is kept unless one of the others replaces it, since the line that can't be parsed may be its
+        // new version
+        List<Lending> insertedLendings = new ArrayList<>();
+        boolean unparsedLines = diff.getDamagedCount() > 0;
+        for (String line : diff.getInserted()) {
+            try {
+                Lending lending = Lending.fromDBString(line, bookSet, userSet);
+
+                // Skip lending if book or user is null (corrupted data)
+                if (lending.getBook() == null || lending.getUser() == null) {
+                    System.err.println("Warning: Skipping corrupted lending - book or user not found in database");
+                    System.err.println("  Line content: " + line);
+                    unparsedLines = true;
+                    continue;
+                }
+                insertedLendings.add(lending);
+            } catch (Exception e) {
+                e.printStackTrace();
+                unparsedLines = true;
+            }
+        }
+
+        for (String line : diff.getRemoved()) {
+            try {
+                // Lendings are equal when they have the same ID, the book and user don't matter to remove them
+                Lending lending = Lending.fromDBString(line, bookSet, userSet);
+                if (unparsedLines && !insertedLendings.contains(lending)) {
+                    System.err.println("Warning: Keeping lending " + lending.getLendingId()
+                            + ", its new line can't be parsed");
+                    continue;
+                }
+
+                if (this.lendingSet.remove(lending)) {
+                    this.lendingIndex.remove(lending);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        for (Lending lending : insertedLendings) {
+            try {
+                if (this.lendingSet.remove(lending)) {
+                    this.lendingIndex.remove(lending);
+                }
+                this.lendingSet.add(lending);
+                String searchableString = lending.toSearchableString();
+                if (!searchableString.isEmpty()) {
+                    this.lendingIndex.add(searchableString, lending);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        // New lendings may have been added with higher IDs
+        restoreLendingCounter();
+
+        // The DB already holds the changes, its hash was updated while reconciling
+        this.lastKnownDBHash = lendingDB.getDBFileHash();
+        this.lastKnownDBHashStrategy = lendingDB.getHashStrategy().getName();
+    }
+
     /**
      * @brief   Adds a Lending to the collection. If the Lending already exists (based on lending ID), it is edited.
+     * @details An archived Lending that is edited goes back to the live set.
+     *
      * @param   lending The Lending object to add or edit.
      */
     public void addOrEditLending(Lending lending) {
         // Removes the lending if it already exists
         lendingSet.remove(lending);
         lendingIndex.remove(lending);
+        if (archive != null) {
+            archive.forget(lending);
+        }
 
         // Adds the lending (new or updated)
         lendingSet.add(lending);
         lendingIndex.add(lending.toSearchableString(), lending);
+        markDirty(String.valueOf(lending.getLendingId()), lending);
 
         // Syncs the changes to DB and serialized file
         syncOnWrite();
@@ -334,11 +563,108 @@ public class LendingSet implements Serializable {
         
         lendingSet.remove(lending);
         lendingIndex.remove(lending);
+        if (lending != null) {
+            markDirty(String.valueOf(lending.getLendingId()), null);
+        }
+
+        // The lending may be archived too, in which case the archive has to forget it
+        LendingArchive archive = this.archive();
+        if (lending != null && archive != null && lending.getLendingId() <= maxArchivedLendingId
+                && !archive.getYears().isEmpty()) {
+            archive.appendRemoval(lending);
+        }
 
         // Syncs the changes to DB and serialized file
         syncOnWrite();
     }
 
+    /**
+     * @brief   Moves the returned lendings older than the archive age from the live set to the archive
+     * @details The lendings are appended to the partitions of their years before the DB file is rewritten without
+     *          them: if the application stops in between, the lendings are in both files, and the copy in the live set
+     *          wins when the partition is loaded. The partitions of the other years are not touched.
+     *
+     * @return  The number of lendings archived
+     */
+    public int archiveOldLendings() {
+        LendingArchive archive = this.archive();
+        if (archive == null) return 0;
+
+        LocalDate threshold = LocalDate.now().minusDays(getArchiveAgeDays());
+        List<Lending> oldLendings = new ArrayList<>();
+        for (Lending lending : lendingSet) {
+            if (lending.isReturned() && lending.getReturnDate().isBefore(threshold)) {
+                oldLendings.add(lending);
+            }
+        }
+
+        if (oldLendings.isEmpty() || !archive.append(oldLendings, maxArchivedLendingId)) return 0;
+
+        oldLendings.forEach(lendingSet::remove);
+        for (Lending lending : oldLendings) {
+            maxArchivedLendingId = Math.max(maxArchivedLendingId, lending.getLendingId());
+            markDirty(String.valueOf(lending.getLendingId()), null);
+        }
+
+        // Most of the index usually goes away, so it's rebuilt instead of removing each lending from it
+        lendingIndex = new Index<>();
+        for (Lending lending : lendingSet) {
+            lendingIndex.add(lending.toSearchableString(), lending);
+        }
+
+        syncOnWrite();
+        return oldLendings.size();
+    }
+
+    /**
+     * @brief   Get all the archived lendings as a list, loading the archive if needed
+     * @return  A list of the archived lendings, empty if the archive can't be loaded
+     */
+    public List<Lending> getArchivedLendings() {
+        LendingArchive archive = this.loadedArchive();
+        return archive == null ? new ArrayList<>() : new ArrayList<>(archive.getLendings());
+    }
+
+    /**
+     * @brief   Get the hash of each partition of the archive, so that a change to the archive can be told apart by year
+     * @return  The hash of the file of each partition, by year, empty if the set has no DB path
+     */
+    public Map<Integer, String> getArchivePartitionHashes() {
+        Map<Integer, String> hashes = new TreeMap<>();
+        LendingArchive archive = this.archive();
+        if (archive == null) return hashes;
+
+        for (int year : archive.getYears()) {
+            hashes.put(year, archive.getPartitionHash(year));
+        }
+        return hashes;
+    }
+
+    /**
+     * @brief   Gets the archive of the set, creating it if needed. The archive files are not read.
+     * @return  The archive, or `null` if the set has no DB path
+     */
+    private LendingArchive archive() {
+        if (archive == null && DBPath != null) {
+            archive = new LendingArchive(Path.of(DBPath + ARCHIVE_EXTENSION));
+        }
+        return archive;
+    }
+
+    /**
+     * @brief   Gets the archive of the set, reading and indexing the partitions not loaded yet
+     * @return  The loaded archive, or `null` if the set has no DB path or isn't linked to a BookSet and a UserSet
+     */
+    private LendingArchive loadedArchive() {
+        LendingArchive archive = this.archive();
+        if (archive == null || bookSet == null || userSet == null) return null;
+
+        if (!archive.isLoaded()) {
+            archive.load(bookSet, userSet, lendingSet);
+        }
+        return archive;
+    }
+
     /**
      * @brief   Gets a Lending by its ID.
      * @details Iterates through the lending set to find the lending with the specified ID.
@@ -358,6 +684,9 @@ public class LendingSet implements Serializable {
 
     /**
      * @brief   Perform search on the indexed lendings with ranking
+     * @details The live set is searched first. If fewer than `MIN_LIVE_SEARCH_RESULTS` lendings are found, the
+     *          partitions of the archive are searched as well, newest year first, loading each one only if the ones
+     *          before it still found too few lendings.
      *
      * @param   rawQuery The raw search query
      * @return  A list of lendings matching the search query, ranked by relevance
@@ -367,6 +696,47 @@ public class LendingSet implements Serializable {
 
         if (rawSearchResults == null) return null;
 
+        LendingArchive archive = this.archive();
+        if (archive != null && bookSet != null && userSet != null) {
+            for (int year : archive.getYears()) {
+                if (rawSearchResults.size() >= MIN_LIVE_SEARCH_RESULTS) break;
+
+                archive.loadYear(year, bookSet, userSet, lendingSet);
+                rawSearchResults.addAll(archive.search(rawQuery, year));
+            }
+        }
+        return rank(rawQuery, rawSearchResults);
+    }
+
+    /**
+     * @brief   Perform search on the indexed lendings with ranking, optionally including the archived ones
+     *
+     * @param   rawQuery        The raw search query
+     * @param   includeArchive  `true` to search the archive as well, loading it if needed
+     * @return  A list of lendings matching the search query, ranked by relevance
+     */
+    public List<SearchResult<Lending>> search(String rawQuery, boolean includeArchive) {
+        List<SearchResult<Lending>> rawSearchResults = Search.search(rawQuery, lendingIndex);
+
+        if (rawSearchResults == null) return null;
+
+        LendingArchive archive = includeArchive ? this.loadedArchive() : null;
+        if (archive != null) {
+            for (int year : archive.getYears()) {
+                rawSearchResults.addAll(archive.search(rawQuery, year));
+            }
+        }
+        return rank(rawQuery, rawSearchResults);
+    }
+
+    /**
+     * @brief   Ranks the results of a search by relevance
+     *
+     * @param   rawQuery            The raw search query
+     * @param   rawSearchResults    The matching lendings, as found by the indexes
+     * @return  The matching lendings, ranked by relevance
+     */
+    private List<SearchResult<Lending>> rank(String rawQuery, List<SearchResult<Lending>> rawSearchResults) {
         List<SearchResult<Lending>> rankedResults = new ArrayList<>();
 
         for (SearchResult<Lending> result : rawSearchResults) {
@@ -437,29 +807,98 @@ public class LendingSet implements Serializable {
 
     /**
      * @brief   Synchronizes the current state of the LendingSet to the DB and serialized file on write operations
+     * @details The DB file is kept in ID order, so that the same lendings are always written in the same way. Once
+     *          it is, only the lines of the lendings written since the last sync are patched, in a single batch (which
+     *          in journal mode only appends those lines to the journal). The whole DB file is rewritten if it wasn't
+     *          in order when loaded (see `resumeKeyOrder`), after the DB or the Set are replaced or the DB file is edited by someone else, and when so many lendings
+     *          changed that the batch would rewrite it anyway.
      * @author  Giovanni Orsini
      */
     private void syncOnWrite() {
-        // Clear the DB file
+        boolean synced = dirtyLendings != null && dirtyLendings.size() <= DB.MAX_BATCH_JOURNAL_RECORDS
+                && lendingDB.getKeyField() == DB_KEY_FIELD && patchDB();
+        if (!synced) {
+            synced = rewriteDB();
+        }
+        this.dirtyLendings = synced ? new HashMap<>() : null;
+
+        // The hash was already updated by the commit
+        this.lastKnownDBHash = lendingDB.getDBFileHash();
+        this.lastKnownDBHashStrategy = lendingDB.getHashStrategy().getName();
+    }
+
+    /**
+     * @brief   Patches the lines of the lendings written since the last sync in the DB file, in a single batch
+     * @return  `true` if the DB file was patched, `false` if it couldn't be (in which case it wasn't changed)
+     */
+    private boolean patchDB() {
+        lendingDB.beginBatch();
+
+        for (Map.Entry<String, Lending> entry : dirtyLendings.entrySet()) {
+            if (entry.getValue() == null) {
+                lendingDB.deleteLineByKey(entry.getKey());
+            } else if (!lendingDB.writeLineInKeyOrder(entry.getValue().toDBString(), DB_KEY_ORDER)) {
+                lendingDB.rollback();
+                return false;
+            }
+        }
+
+        return lendingDB.commit();
+    }
+
+    /**
+     * @brief   Rewrites the whole DB file from the Set, in ID order
+     * @return  `true` if the DB file was rewritten, `false` otherwise
+     */
+    private boolean rewriteDB() {
+        // Clear and rewrite the DB file in a single batch, so that it is written (and hashed) only once
+        lendingDB.beginBatch();
         lendingDB.clear();
+        lendingDB.setKeyField(DB_KEY_FIELD);
+
+        List<Lending> lendings = new ArrayList<>(lendingSet);
+        lendings.sort(Comparator.comparingInt(Lending::getLendingId));
 
         StringBuilder newDBContent = new StringBuilder();
 
         // Add all lendings to the newDBContent, separated by line separators (all but the last line)
-        for (Lending lending : lendingSet) {
+        for (Lending lending : lendings) {
             newDBContent.append(lending.toDBString()).append(lendingDB.getLineSeparator());
         }
 
         // Remove the last line separator if there are any lendings
-        if (!lendingSet.isEmpty()) {
+        if (!lendings.isEmpty()) {
             newDBContent.setLength(newDBContent.length() - lendingDB.getLineSeparator().length());
         }
 
         // Write the new content to the DB file
         lendingDB.rebuildDBFromString(newDBContent.toString());
+        return lendingDB.commit();
+    }
 
-        // Update the hash after writing to DB
-        updateLastKnownDBHash();
+    /**
+     * @brief   Sets the key field of the DB, and lets the next sync patch the DB file if it already holds the Set in
+     *          ID order
+     * @details Called once the Set and the DB are loaded, so that the first edit of a session only patches the line
+     *          of the lending edited, like the ones after it. The lines of the DB file are checked in a single pass: if
+     *          some of them are damaged, out of order, or weren't loaded in the Set, the next sync rewrites the whole
+     *          DB file instead.
+     */
+    private void resumeKeyOrder() {
+        lendingDB.setKeyField(DB_KEY_FIELD);
+        this.dirtyLendings = lendingDB.countLinesInKeyOrder(DB_KEY_ORDER) == lendingSet.size() ? new HashMap<>() : null;
+    }
+
+    /**
+     * @brief   Records a lending written since the last sync, so that only its line is patched in the DB file
+     *
+     * @param   id      The ID of the lending
+     * @param   lending The lending, or `null` if it was removed
+     */
+    private void markDirty(String id, Lending lending) {
+        if (dirtyLendings != null) {
+            dirtyLendings.put(id, lending);
+        }
     }
 
     /**
@@ -467,6 +906,14 @@ public class LendingSet implements Serializable {
      * @author  Giovanni Orsini
      */
     public void saveToSerialized() {
+        if (this.lendingDB != null) {
+            this.lendingDB.writeRecordSnapshot(Lending.recordCodec(null, null), this.lendingSet);
+
+            // Writing the snapshot forced the hash of the DB file, which the serialized set is in sync with
+            this.lastKnownDBHash = this.lendingDB.getDBFileHash();
+            this.lastKnownDBHashStrategy = this.lendingDB.getHashStrategy().getName();
+        }
+
         if (serializationPath == null || serializationPath.isEmpty()) {
             return;
         }
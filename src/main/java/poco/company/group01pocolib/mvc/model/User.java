@@ -8,6 +8,10 @@
 
 package poco.company.group01pocolib.mvc.model;
 
+import poco.company.group01pocolib.db.FieldType;
+import poco.company.group01pocolib.db.RecordCodec;
+import poco.company.group01pocolib.db.RecordSchema;
+import poco.company.group01pocolib.db.StringPool;
 import poco.company.group01pocolib.exceptions.UserDataNotValidException;
 
 import java.io.Serial;
@@ -347,15 +351,46 @@ public class User implements Comparable<User>, Serializable {
             throw new IllegalArgumentException("Wrong format for User DB string");
         }
 
-        return new User(fields[0],                      // id
-                        fields[1],                      // name
-                        fields[2],                      // surname
-                        fields[3],                      // email
-                        Integer.parseInt(fields[4]),    // borrowedBooksCount
-                        Integer.parseInt(fields[5])     // borrowedBooksEverCount
+        // Names and surnames repeat across many users
+        return new User(fields[0],                              // id
+                        StringPool.SHARED.intern(fields[1]),    // name
+                        StringPool.SHARED.intern(fields[2]),    // surname
+                        fields[3],                              // email
+                        Integer.parseInt(fields[4]),            // borrowedBooksCount
+                        Integer.parseInt(fields[5])             // borrowedBooksEverCount
         );
     }
 
+    /**
+     * @brief   Codec storing Users as binary records, with the same fields of the DB string representation.
+     */
+    public static final RecordCodec<User> RECORD_CODEC = new RecordCodec<>() {
+        private final RecordSchema schema = new RecordSchema()
+                .add("id", FieldType.STRING)
+                .add("name", FieldType.STRING)
+                .add("surname", FieldType.STRING)
+                .add("email", FieldType.STRING)
+                .add("borrowedBooksCount", FieldType.INT)
+                .add("borrowedBooksEverCount", FieldType.INT);
+
+        @Override
+        public RecordSchema getSchema() {
+            return schema;
+        }
+
+        @Override
+        public Object[] toRecord(User user) {
+            return new Object[] {user.getId(), user.getName(), user.getSurname(), user.getEmail(),
+                                 user.getBorrowedBooksCount(), user.getBorrowedBooksEverCount()};
+        }
+
+        @Override
+        public User fromRecord(Object[] record) {
+            return new User((String) record[0], (String) record[1], (String) record[2], (String) record[3],
+                            (Integer) record[4], (Integer) record[5]);
+        }
+    };
+
     /**
      * @brief   Get a string containing only the searchable info of the user
      * @details This includes id, name, surname and email.
@@ -8,7 +8,10 @@
 
 package poco.company.group01pocolib.mvc.model;
 
+import poco.company.group01pocolib.db.BloomFilter;
 import poco.company.group01pocolib.db.DB;
+import poco.company.group01pocolib.db.HashStrategy;
+import poco.company.group01pocolib.db.LineDiff;
 import poco.company.group01pocolib.db.omnisearch.Index;
 import poco.company.group01pocolib.db.omnisearch.Search;
 import poco.company.group01pocolib.db.omnisearch.Search.*;
@@ -16,6 +19,7 @@ import poco.company.group01pocolib.db.omnisearch.Search.*;
 import java.io.*;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
 import static poco.company.group01pocolib.db.omnisearch.Search.distance;
@@ -43,8 +47,17 @@ public class UserSet implements Serializable {
     private User dummy;     ///< This attribute is used for fast searches based on ID
 
     private String lastKnownDBHash;
+    private String lastKnownDBHashStrategy;     ///< Name of the hash strategy that calculated `lastKnownDBHash`
     private String DBPath;
     private String serializationPath;
+    private BloomFilter idFilter;   ///< Filter of the IDs of the Set, `null` until it's first needed
+
+    // Users written since the last sync by ID, `null` for removed ones. The map itself is `null` while the DB file
+    // isn't known to hold the Set in ID order, since lines can only be patched in their place once it does
+    private transient Map<String, User> dirtyUsers;
+
+    private static final int DB_KEY_FIELD = 0;     ///< Position of the ID in the DB string of a user
+    private static final Comparator<String> DB_KEY_ORDER = Comparator.naturalOrder();
 
     /**
      * @brief   Default constructor only initializes an empty collection of User elements
@@ -70,6 +83,8 @@ public class UserSet implements Serializable {
      */
     public void setUserSet(Set<User> userSet) {
         this.userSet = userSet;
+        this.idFilter = null;
+        this.dirtyUsers = null;
     }
 
     /**
@@ -102,6 +117,7 @@ public class UserSet implements Serializable {
      */
     public void setUserDB(DB userDB) {
         this.userDB = userDB;
+        this.dirtyUsers = null;
     }
 
     /**
@@ -112,11 +128,20 @@ public class UserSet implements Serializable {
         return lastKnownDBHash;
     }
 
+    /**
+     * @brief   Get the name of the hash strategy that calculated the last known DB hash
+     * @return  The name of the hash strategy, or `null` if it is unknown
+     */
+    public String getLastKnownDBHashStrategy() {
+        return lastKnownDBHashStrategy;
+    }
+
     /**
      * @brief   Updates the `lastKnownDBHash` field by rehashing the current DB
      */
     public void updateLastKnownDBHash() {
         this.lastKnownDBHash = this.userDB.updateAndGetDBFileHash();
+        this.lastKnownDBHashStrategy = this.userDB.getHashStrategy().getName();
     }
 
     /**
@@ -164,6 +189,9 @@ public class UserSet implements Serializable {
      * @details If the DB file has changed since the last serialization, the `UserSet` will be rebuilt from the DB
      *          file. Otherwise, it will be loaded as is. This includes re-hydrating the Index and the DB object itself.
      *          (This is done to avoid rebuilding the DB's internal Cache from scratch)
+     *          <br><br>
+     *          When the metadata sidecar of the DB file shows that the file didn't change, the deserialized DB object is
+     *          used as is, and the DB file is not read at all.
      *
      * @param   serializationPath The path to the serialized `UserSet`
      * @param   DBPath The path to the DB file
@@ -187,8 +215,26 @@ public class UserSet implements Serializable {
             return userSet;
         }
 
+        // The DB deserialized along with the set still holds the content of the DB file: if the metadata sidecar
+        // shows that the file didn't change since, neither of them has to be read again
+        DB serializedDB = userSet.getUserDB();
+        if (serializedDB != null) {
+            serializedDB.setDBPath(DBPath);
+            if (serializedDB.resumeIfUnchanged(userSet.getLastKnownDBHash())) {
+                userSet.setDBPath(DBPath);
+                userSet.setSerializationPath(serializationPath);
+                userSet.resumeKeyOrder();
+                return userSet;
+            }
+        }
+
         // Create a new DB object using the provided DB path
-        DB currentDB = new DB(DBPath);
+        DB currentDB = new DB(DBPath, true);
+        // Hash the file the same way the last known hash was calculated, so that the two can be compared
+        HashStrategy lastStrategy = HashStrategy.forName(userSet.getLastKnownDBHashStrategy());
+        if (lastStrategy != null) {
+            currentDB.setHashStrategy(lastStrategy);
+        }
         String currentDBHash = currentDB.forceHashOnFile();
 
         // Check if the DB file has changed since the last serialization by comparing hashes
@@ -197,6 +243,7 @@ public class UserSet implements Serializable {
             userSet.setDBPath(DBPath);
             userSet.setSerializationPath(serializationPath);
             userSet.setUserDB(currentDB);
+            userSet.resumeKeyOrder();
             return userSet;
         } else {
             userSet.setDBPath(DBPath);
@@ -212,6 +259,10 @@ public class UserSet implements Serializable {
      * @param   DBPath The path to the DB file
      */
     public void rebuildFromDB(String DBPath) {
+        // The filter is built again from the new Set when it's first needed
+        this.idFilter = null;
+        this.dirtyUsers = null;
+
         // Check if file exists at specified path
         File dbFile = new File(DBPath);
         if (!dbFile.exists()) {
@@ -222,36 +273,114 @@ public class UserSet implements Serializable {
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            this.userDB = new DB(DBPath);
+            this.userDB = new DB(DBPath, true);
             this.userSet = new HashSet<>();
             this.userIndex = new Index<>();
+            resumeKeyOrder();
             return;
         }
 
         // Initialize the DB object for rebuilding
-        this.userDB = new DB(DBPath);
+        this.userDB = new DB(DBPath, true);
 
         // Clear in-memory data structures before reloading
         this.userSet.clear();
         this.userIndex = new Index<>(); 
-        int i = 0;
-        String line;
 
-        // Iterate through each line in the DB file and parse it into a User object
-        while ((line = this.userDB.readNthLine(i)) != null) {
+        // Load the binary record snapshot if it is up to date, otherwise parse the lines of the DB file in
+        // parallel, then add the users in file order
+        List<User> users = this.userDB.readRecordSnapshot(User.RECORD_CODEC);
+        if (users == null) {
+            // The stream holds a snapshot of the DB until it is closed
+            try (Stream<String> lines = this.userDB.lines()) {
+                users = lines.parallel()
+                        .filter(Objects::nonNull)   // Damaged lines, already quarantined by the DB
+                        .map(line -> {
+                            try {
+                                return User.fromDBString(line);
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                                return null;
+                            }
+                        })
+                        .filter(Objects::nonNull)
+                        .toList();
+            }
+        }
+
+        for (User user : users) {
+            this.userSet.add(user);
+            this.userIndex.add(user.toSearchableString(), user);
+        }
+
+        resumeKeyOrder();
+        updateLastKnownDBHash();
+    }
+
+    /**
+     * @brief   Applies the changes made to the DB file by someone else, as found by {@link
+     *          poco.company.group01pocolib.db.DB#reconcile DB.reconcile()}
+     * @details Only the records on the removed and inserted lines are parsed, and only they are removed from (or added
+     *          to) the Set and the Index, so that editing a single record by hand doesn't cost a full rebuild. A record
+     *          edited in place shows up as both removed and inserted, so it ends up replaced. If some inserted line is
+     *          damaged or can't be parsed, the removed records not replaced by the other inserted lines are kept, since
+     *          that line may be their new version, and they are written back on the next sync.
+     *
+     * @param   diff The lines removed from and inserted in the DB file
+     */
+    public void applyExternalChanges(LineDiff diff) {
+        // The lines were edited in place, possibly out of ID order: the next sync rewrites the DB file in order
+        this.dirtyUsers = null;
+
+        // The inserted lines are parsed first: if some of them can't be parsed, a removed user is kept unless one of
+        // the others replaces it, since the line that can't be parsed may be its new version
+        List<User> insertedUsers = new ArrayList<>();
+        boolean unparsedLines = diff.getDamagedCount() > 0;
+        for (String line : diff.getInserted()) {
+            try {
+                insertedUsers.add(User.fromDBString(line));
+            } catch (Exception e) {
+                e.printStackTrace();
+                unparsedLines = true;
+            }
+        }
+
+        for (String line : diff.getRemoved()) {
             try {
                 User user = User.fromDBString(line);
-                
-                this.userSet.add(user);
-                this.userIndex.add(user.toSearchableString(), user);
+                if (unparsedLines && !insertedUsers.contains(user)) {
+                    System.err.println("Warning: Keeping user " + user.getId() + ", its new line can't be parsed");
+                    continue;
+                }
 
+                if (userSet.remove(user) && idFilter != null) {
+                    idFilter.recordRemoval();
+                }
+                userIndex.fastRemove(user.toSearchableString(), user);
             } catch (Exception e) {
                 e.printStackTrace();
             }
-            i++;
         }
 
-        updateLastKnownDBHash();
+        for (User user : insertedUsers) {
+            try {
+                // An edited user was already removed with its old line, unless that line was damaged
+                if (userSet.remove(user)) {
+                    userIndex.remove(user);
+                }
+                userSet.add(user);
+                userIndex.add(user.toSearchableString(), user);
+                if (idFilter != null) {
+                    idFilter.add(user.getId());
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        // The DB already holds the changes, its hash was updated while reconciling
+        this.lastKnownDBHash = userDB.getDBFileHash();
+        this.lastKnownDBHashStrategy = userDB.getHashStrategy().getName();
     }
 
     /**
@@ -269,6 +398,10 @@ public class UserSet implements Serializable {
         // Adds the user (new or updated)
         userSet.add(user);
         userIndex.add(user.toSearchableString(), user);
+        if (idFilter != null) {
+            idFilter.add(user.getId());
+        }
+        markDirty(user.getId(), user);
         
         // Syncs the changes to DB and serialized file
         syncOnWrite();
@@ -283,8 +416,11 @@ public class UserSet implements Serializable {
         dummy.setId(id);
         
         // Removes the user from the set and index
-        userSet.remove(dummy);
+        if (userSet.remove(dummy) && idFilter != null) {
+            idFilter.recordRemoval();
+        }
         userIndex.remove(dummy);
+        markDirty(id, null);
         
         // Syncs the changes to DB and serialized file
         syncOnWrite();
@@ -310,13 +446,17 @@ public class UserSet implements Serializable {
      * @brief   Checks whether a user is already registered in the Set
      * @details The search is performed on the Collection used to store the UserSet. Two users are
      *          {@link poco.company.group01pocolib.mvc.model.User#equals equal} when they have the same unique
-     *          identifier (`id`).
+     *          identifier (`id`). The Bloom filter of the IDs is checked first, so that most IDs that aren't
+     *          stored are told apart without looking at the Collection.
      * 
      * @param   user The user to search 
      * @return  Returns `true` if a result is found for the user's unique identifier
      * @author  Giovanni Orsini
      */
     public boolean isStored(User user) {
+        if (user != null && user.getId() != null && !idFilter().mightContain(user.getId())) {
+            return false;
+        }
         return userSet.contains(user);
     }
 
@@ -324,17 +464,40 @@ public class UserSet implements Serializable {
      * @brief   Checks whether a user is already registered in the Set
      * @details The search is performed on the Collection used to store the UserSet. Two users are
      *          {@link poco.company.group01pocolib.mvc.model.Book#equals equal} when they have the same unique
-     *          identifier (`id`).
+     *          identifier (`id`). The Bloom filter of the IDs is checked first, so that most IDs that aren't
+     *          stored are told apart without looking at the Collection.
      * 
      * @param   id The unique identifier of the user to search
      * @return  Returns `true` if a result is found for the user's unique identifier
      * @author  Giovanni Orsini
      */
     public boolean isStored(String id) {
+        if (id != null && !idFilter().mightContain(id)) {
+            return false;
+        }
         dummy.setId(id);
         return userSet.contains(dummy);
     }
 
+    /**
+     * @brief   Get the Bloom filter of the IDs in the Set, building it again if it's missing or worn out
+     * @details The filter is rebuilt from the Set when more users were added than it was sized for, or when too many
+     *          of them were removed (see {@link poco.company.group01pocolib.db.BloomFilter#needsRebuild
+     *          needsRebuild()}).
+     *
+     * @return  The filter
+     */
+    private BloomFilter idFilter() {
+        if (idFilter == null || idFilter.needsRebuild()) {
+            List<String> keys = new ArrayList<>(userSet.size());
+            for (User user : userSet) {
+                if (user.getId() != null) keys.add(user.getId());
+            }
+            idFilter = BloomFilter.of(keys, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+        }
+        return idFilter;
+    }
+
 
     /**
      * @brief   Perform search on the indexed users with ranking
@@ -402,30 +565,110 @@ public class UserSet implements Serializable {
         return score;
     }
 
+    /**
+     * @brief   Synchronizes the current state of the UserSet to the DB and serialized file on write operations
+     * @details The DB file is kept in ID order, so that the same users are always written in the same way. Once
+     *          it is, only the lines of the users written since the last sync are patched, in a single batch (which
+     *          in journal mode only appends those lines to the journal). The whole DB file is rewritten if it wasn't
+     *          in order when loaded (see `resumeKeyOrder`), after the DB or the Set are replaced or the DB file is edited by someone else, and when so many users
+     *          changed that the batch would rewrite it anyway.
+     */
     private void syncOnWrite() {
-        // Clear the DB file
+        boolean synced = dirtyUsers != null && dirtyUsers.size() <= DB.MAX_BATCH_JOURNAL_RECORDS
+                && userDB.getKeyField() == DB_KEY_FIELD && patchDB();
+        if (!synced) {
+            synced = rewriteDB();
+        }
+        this.dirtyUsers = synced ? new HashMap<>() : null;
+
+        // The hash was already updated by the commit
+        this.lastKnownDBHash = userDB.getDBFileHash();
+        this.lastKnownDBHashStrategy = userDB.getHashStrategy().getName();
+    }
+
+    /**
+     * @brief   Patches the lines of the users written since the last sync in the DB file, in a single batch
+     * @return  `true` if the DB file was patched, `false` if it couldn't be (in which case it wasn't changed)
+     */
+    private boolean patchDB() {
+        userDB.beginBatch();
+
+        for (Map.Entry<String, User> entry : dirtyUsers.entrySet()) {
+            if (entry.getValue() == null) {
+                userDB.deleteLineByKey(entry.getKey());
+            } else if (!userDB.writeLineInKeyOrder(entry.getValue().toDBString(), DB_KEY_ORDER)) {
+                userDB.rollback();
+                return false;
+            }
+        }
+
+        return userDB.commit();
+    }
+
+    /**
+     * @brief   Rewrites the whole DB file from the Set, in ID order
+     * @return  `true` if the DB file was rewritten, `false` otherwise
+     */
+    private boolean rewriteDB() {
+        // Clear and rewrite the DB file in a single batch, so that it is written (and hashed) only once
+        userDB.beginBatch();
         userDB.clear();
+        userDB.setKeyField(DB_KEY_FIELD);
+
+        List<User> users = new ArrayList<>(userSet);
+        users.sort(Comparator.comparing(User::getId, DB_KEY_ORDER));
 
         StringBuilder newDBContent = new StringBuilder();
 
         // Add all users to the newDBContent, separated by line separators (all but the last line)
-        for (User user : userSet) {
+        for (User user : users) {
             newDBContent.append(user.toDBString()).append(userDB.getLineSeparator());
         }
 
         // Remove the last line separator if there are any users
-        if (!userSet.isEmpty()) {
+        if (!users.isEmpty()) {
             newDBContent.setLength(newDBContent.length() - userDB.getLineSeparator().length());
         }
 
         // Write the new content to the DB file
         userDB.rebuildDBFromString(newDBContent.toString());
-        
-        // Update the hash after writing to DB
-        updateLastKnownDBHash();
+        return userDB.commit();
+    }
+
+    /**
+     * @brief   Sets the key field of the DB, and lets the next sync patch the DB file if it already holds the Set in
+     *          ID order
+     * @details Called once the Set and the DB are loaded, so that the first edit of a session only patches the line
+     *          of the user edited, like the ones after it. The lines of the DB file are checked in a single pass: if
+     *          some of them are damaged, out of order, or weren't loaded in the Set, the next sync rewrites the whole
+     *          DB file instead.
+     */
+    private void resumeKeyOrder() {
+        userDB.setKeyField(DB_KEY_FIELD);
+        this.dirtyUsers = userDB.countLinesInKeyOrder(DB_KEY_ORDER) == userSet.size() ? new HashMap<>() : null;
+    }
+
+    /**
+     * @brief   Records a user written since the last sync, so that only its line is patched in the DB file
+     *
+     * @param   id   The ID of the user
+     * @param   user The user, or `null` if it was removed
+     */
+    private void markDirty(String id, User user) {
+        if (dirtyUsers != null) {
+            dirtyUsers.put(id, user);
+        }
     }
 
     public void saveToSerialized() {
+        if (this.userDB != null) {
+            this.userDB.writeRecordSnapshot(User.RECORD_CODEC, this.userSet);
+
+            // Writing the snapshot forced the hash of the DB file, which the serialized set is in sync with
+            this.lastKnownDBHash = this.userDB.getDBFileHash();
+            this.lastKnownDBHashStrategy = this.userDB.getHashStrategy().getName();
+        }
+
         if (serializationPath == null || serializationPath.isEmpty()) {
             return;
         }
@@ -0,0 +1,159 @@
+/**
+ * @file BinaryRecordFileTest.java
+ * @brief Unit tests for the BinaryRecordFile class and the record snapshots of DB.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class BinaryRecordFileTest
+ * @brief Contains unit tests to verify writing and reading binary records, and the validation of their header.
+ */
+class BinaryRecordFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+
+    /**
+     * @brief A codec storing each record as the array itself, for every field type.
+     */
+    private static final RecordCodec<Object[]> CODEC = new RecordCodec<>() {
+        private final RecordSchema schema = new RecordSchema()
+                .add("name", FieldType.STRING)
+                .add("tags", FieldType.STRING_LIST)
+                .add("count", FieldType.INT)
+                .add("flag", FieldType.BOOLEAN)
+                .add("date", FieldType.DATE);
+
+        @Override
+        public RecordSchema getSchema() {
+            return schema;
+        }
+
+        @Override
+        public Object[] toRecord(Object[] item) {
+            return item;
+        }
+
+        @Override
+        public Object[] fromRecord(Object[] record) {
+            return record;
+        }
+    };
+
+    /**
+     * @brief Sets up a temporary file before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("records.rec");
+    }
+
+    /**
+     * @brief Test method for writing records and reading them back.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Test
+    void testRoundTrip() throws IOException {
+        List<Object[]> items = new ArrayList<>();
+        items.add(new Object[] {"Plain", List.of("a", "b"), 42, true, LocalDate.of(2024, 1, 31)});
+        items.add(new Object[] {"Unicode è€ 📚", List.of(), -1, false, LocalDate.of(1970, 1, 1)});
+        items.add(new Object[] {null, List.of("x".repeat(70000)), Integer.MAX_VALUE, true, LocalDate.MIN});
+
+        BinaryRecordFile.write(file, CODEC, items, "hash");
+        List<Object[]> read = BinaryRecordFile.read(file, CODEC, "hash");
+
+        assertNotNull(read);
+        assertEquals(items.size(), read.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertTrue(Arrays.equals(items.get(i), read.get(i)), "Record " + i + " differs");
+        }
+        assertFalse(Files.exists(tempDir.resolve("records.rec" + DB.TEMP_EXTENSION)));
+    }
+
+    /**
+     * @brief Test method for rejecting records written from a different content or with a different schema.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Test
+    void testHeaderMismatch() throws IOException {
+        List<Object[]> items = List.<Object[]>of(new Object[] {"One", List.of(), 1, true, LocalDate.of(2024, 1, 1)});
+        BinaryRecordFile.write(file, CODEC, items, "hash");
+
+        assertNull(BinaryRecordFile.read(file, CODEC, "other hash"));
+
+        RecordCodec<String> otherCodec = new RecordCodec<>() {
+            @Override
+            public RecordSchema getSchema() {
+                return new RecordSchema().add("name", FieldType.STRING);
+            }
+
+            @Override
+            public Object[] toRecord(String item) {
+                return new Object[] {item};
+            }
+
+            @Override
+            public String fromRecord(Object[] record) {
+                return (String) record[0];
+            }
+        };
+        assertNull(BinaryRecordFile.read(file, otherCodec, "hash"));
+
+        Files.writeString(file, "Not a record file");
+        assertNull(BinaryRecordFile.read(file, CODEC, "hash"));
+    }
+
+    /**
+     * @brief Test method for the record snapshot of a DB, which is only read back while the DB content is unchanged.
+     * @throws IOException if an I/O error occurs creating the DB file.
+     */
+    @Test
+    void testDBSnapshot() throws IOException {
+        Path dbFile = Files.createFile(tempDir.resolve("snapshot.db"));
+        DB db = new DB(dbFile.toString());
+        for (int i = 0; i < 10; i++) {
+            db.appendLine("Line " + i);
+        }
+
+        RecordCodec<String> lineCodec = new RecordCodec<>() {
+            @Override
+            public RecordSchema getSchema() {
+                return new RecordSchema().add("line", FieldType.STRING);
+            }
+
+            @Override
+            public Object[] toRecord(String item) {
+                return new Object[] {item};
+            }
+
+            @Override
+            public String fromRecord(Object[] record) {
+                return (String) record[0];
+            }
+        };
+
+        List<String> lines = db.lines().toList();
+        assertTrue(db.writeRecordSnapshot(lineCodec, lines));
+        assertEquals(lines, new DB(dbFile.toString()).readRecordSnapshot(lineCodec));
+
+        db.appendLine("Line 10");
+        db.forceHashOnFile();
+        assertNull(new DB(dbFile.toString()).readRecordSnapshot(lineCodec));
+    }
+}
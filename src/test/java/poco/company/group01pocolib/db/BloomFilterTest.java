@@ -0,0 +1,91 @@
+/**
+ * @file BloomFilterTest.java
+ * @brief Unit tests for the BloomFilter class.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class BloomFilterTest
+ * @brief Contains unit tests to verify the answers, the sizing and the rebuild policy of a BloomFilter.
+ */
+class BloomFilterTest {
+
+    /**
+     * @brief Test method for the absence of false negatives, and for a false positive rate close to the expected one.
+     */
+    @Test
+    void testMightContain() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            keys.add("978-" + i);
+        }
+        BloomFilter filter = BloomFilter.of(keys, 0.01);
+
+        for (String key : keys) {
+            assertTrue(filter.mightContain(key));
+        }
+
+        // The filter is half full, so false positives are well below the rate it was sized for
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("979-" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 1000, "False positives: " + falsePositives);
+        assertEquals(7, filter.getHashCount());
+    }
+
+    /**
+     * @brief Test method for the rebuild policy, on over capacity and on removals.
+     */
+    @Test
+    void testNeedsRebuild() {
+        BloomFilter filter = new BloomFilter(100, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+        for (int i = 0; i < 100; i++) {
+            filter.add("Key " + i);
+        }
+        assertFalse(filter.needsRebuild());
+        filter.add("Key 100");
+        assertTrue(filter.needsRebuild());
+
+        filter = new BloomFilter(1000, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+        for (int i = 0; i < 400; i++) {
+            filter.add("Key " + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            filter.recordRemoval();
+        }
+        assertFalse(filter.needsRebuild());
+        filter.recordRemoval();
+        assertTrue(filter.needsRebuild());
+
+        // Removed keys still answer "maybe" until the filter is rebuilt
+        assertTrue(filter.mightContain("Key 0"));
+    }
+
+    /**
+     * @brief Test method for saving and reading back a filter.
+     */
+    @Test
+    void testSerialization() throws IOException, ClassNotFoundException {
+        BloomFilter filter = BloomFilter.of(List.of("12345", "67890"), BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(filter);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            BloomFilter read = (BloomFilter) input.readObject();
+            assertTrue(read.mightContain("12345"));
+            assertTrue(read.mightContain("67890"));
+            assertEquals(filter.getBitCount(), read.getBitCount());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * @file ChunkedLineListTest.java
+ * @brief Unit tests for the ChunkedLineList class.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class ChunkedLineListTest
+ * @brief Contains unit tests to verify editing and snapshotting of a ChunkedLineList.
+ */
+class ChunkedLineListTest {
+
+    /**
+     * @brief Test method for editing a list the same way as an ArrayList, across chunk splits and drops.
+     */
+    @Test
+    void testEdits() {
+        ChunkedLineList lines = new ChunkedLineList();
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 5 * ChunkedLineList.CHUNK_LINES; i++) {
+            lines.add("Line " + i);
+            expected.add("Line " + i);
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            int index = random.nextInt(expected.size());
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    lines.add(index, "Inserted " + i);
+                    expected.add(index, "Inserted " + i);
+                }
+                case 1 -> assertEquals(expected.set(index, "Replaced " + i), lines.set(index, "Replaced " + i));
+                default -> assertEquals(expected.remove(index), lines.remove(index));
+            }
+        }
+        assertEquals(expected, lines);
+
+        lines.clear();
+        assertTrue(lines.isEmpty());
+        lines.add("Line");
+        assertEquals(List.of("Line"), lines);
+        assertThrows(IndexOutOfBoundsException.class, () -> lines.get(1));
+    }
+
+    /**
+     * @brief Test method for snapshots keeping their lines while the list is edited, and for their release.
+     */
+    @Test
+    void testSnapshots() {
+        ChunkedLineList lines = new ChunkedLineList();
+        for (int i = 0; i < 3 * ChunkedLineList.CHUNK_LINES; i++) {
+            lines.add("Line " + i);
+        }
+        List<String> before = new ArrayList<>(lines);
+
+        List<String> snapshot = lines.snapshot();
+        Runnable release = lines.snapshotReleaser();
+        assertEquals(1, lines.getOpenSnapshots());
+
+        lines.set(0, "Replaced");
+        lines.add(ChunkedLineList.CHUNK_LINES, "Inserted");
+        lines.remove(lines.size() - 1);
+        lines.add("Appended");
+
+        assertEquals(before, snapshot);
+        assertEquals("Replaced", lines.get(0));
+        assertEquals("Inserted", lines.get(ChunkedLineList.CHUNK_LINES));
+        assertEquals("Appended", lines.getLast());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.set(0, "Line"));
+
+        // A second snapshot sees the edits, the first one still doesn't
+        List<String> second = lines.snapshot();
+        List<String> after = new ArrayList<>(lines);
+        lines.clear();
+        assertEquals(before, snapshot);
+        assertEquals(after, second);
+
+        release.run();
+        lines.snapshotReleaser().run();
+        assertEquals(0, lines.getOpenSnapshots());
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * @file CompressedLineListTest.java
+ * @brief Unit tests for the CompressedLineList class.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class CompressedLineListTest
+ * @brief Contains unit tests to verify conversion, block loading and editing of a CompressedLineList.
+ */
+class CompressedLineListTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+
+    /**
+     * @brief Sets up a temporary file before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("compressed.db");
+    }
+
+    /**
+     * @brief Writes a list over its file, the way a DB replaces its file, and reloads it.
+     * @param lines The list to write.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    private void writeAndReload(CompressedLineList lines) throws IOException {
+        Path tempFile = tempDir.resolve("compressed.db.tmp");
+        try (OutputStream output = Files.newOutputStream(tempFile)) {
+            lines.writeTo(output);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        lines.reload();
+    }
+
+    /**
+     * @brief Test method for converting a text file to the compressed format.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testTextConversion() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("978-88-").append(i).append("\u001Ctrue\u001C2024-01-01\n");
+        }
+        Files.writeString(file, content.toString());
+
+        CompressedLineList lines = new CompressedLineList(file, 100, 2);
+        lines.reload();
+        assertFalse(CompressedLineList.isCompressed(file));
+        assertEquals(1000, lines.size());
+        List<String> expected = new ArrayList<>(lines);
+
+        writeAndReload(lines);
+        assertTrue(CompressedLineList.isCompressed(file));
+        assertTrue(Files.size(file) < content.length() / 4);
+        assertEquals(0, lines.getLoadedBlockCount());
+        assertEquals(expected, new ArrayList<>(lines));
+        assertEquals(2, lines.getLoadedBlockCount());
+
+        Files.writeString(file, "");
+        lines.reload();
+        assertTrue(lines.isEmpty());
+    }
+
+    /**
+     * @brief Test method for editing blocks, verifying that only edited blocks change and blocks split and disappear.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testEdits() throws IOException {
+        CompressedLineList lines = new CompressedLineList(file, 4, 1);
+        List<String> expected = new ArrayList<>();
+        lines.reload();
+
+        for (int i = 0; i < 20; i++) {
+            lines.add("Line " + i);
+            expected.add("Line " + i);
+        }
+        writeAndReload(lines);
+        assertEquals(expected, new ArrayList<>(lines));
+
+        lines.set(0, "Line 0 edited");
+        expected.set(0, "Line 0 edited");
+        for (int i = 0; i < 6; i++) {
+            lines.add(9, "Inserted " + i);
+            expected.add(9, "Inserted " + i);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals(expected.remove(16), lines.remove(16));
+        }
+        assertEquals(expected, new ArrayList<>(lines));
+
+        writeAndReload(lines);
+        assertEquals(expected, new ArrayList<>(lines));
+        assertEquals(1, lines.getLoadedBlockCount());
+
+        lines.clear();
+        writeAndReload(lines);
+        assertTrue(lines.isEmpty());
+        assertTrue(CompressedLineList.isCompressed(file));
+    }
+}
@@ -10,10 +10,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -446,4 +457,749 @@ class DBTest {
         assertEquals("Keep this line", removed);
         assertEquals("Keep this too", db.readNthLine(0));
     }
-}
\ No newline at end of file
+
+    /**
+     * @brief Test method for journal mode, verifying that edits go to the journal and are replayed on open.
+     * @throws IOException if an I/O error occurs reading the files.
+     */
+    @Test
+    void testJournalReplay() throws IOException {
+        db.appendLine("Line 0");
+        db.appendLine("Line 1");
+        db.setJournaled(true);
+        assertTrue(db.isJournaled());
+
+        assertTrue(db.appendLine("Line 2"));
+        assertTrue(db.writeNthLineReplace(0, "Line 0 edited"));
+        assertEquals("Line 1", db.removeNthLine(1));
+        assertTrue(db.writeNthLineWShift(0, "Line -1"));
+
+        // The DB file is untouched, the edits only live in the journal
+        assertEquals("Line 0\nLine 1", Files.readString(dbPath).replace("\r\n", "\n"));
+        assertTrue(Files.exists(db.getJournalPath()));
+
+        // Reopening the DB replays the journal and folds it into the DB file
+        DB reopened = new DB(dbPath);
+        assertEquals("Line -1", reopened.readNthLine(0));
+        assertEquals("Line 0 edited", reopened.readNthLine(1));
+        assertEquals("Line 2", reopened.readNthLine(2));
+        assertNull(reopened.readNthLine(3));
+        assertFalse(Files.exists(reopened.getJournalPath()));
+        assertEquals(reopened.getDBFileHash(), Hash.getMerkleFileHash(dbPath, reopened.getHashStrategy()));
+    }
+
+    /**
+     * @brief Test method for checkpoints and for journals that don't apply to the current DB file.
+     * @throws IOException if an I/O error occurs writing the files.
+     */
+    @Test
+    void testJournalCheckpointAndStaleJournal() throws IOException {
+        DB journaled = new DB(dbPath, true);
+        journaled.appendLine("Line 0");
+        journaled.appendLine("Line 1");
+
+        assertTrue(journaled.checkpoint());
+        assertFalse(Files.exists(journaled.getJournalPath()));
+        assertEquals(journaled.updateAndGetDBFileHash(), journaled.forceHashOnFile());
+
+        // A journal recorded on a different version of the DB file must not be replayed
+        journaled.appendLine("Line 2");
+        Files.writeString(dbPath, "Externally edited");
+        DB reopened = new DB(dbPath);
+        assertEquals("Externally edited", reopened.readNthLine(0));
+        assertNull(reopened.readNthLine(1));
+        assertFalse(Files.exists(reopened.getJournalPath()));
+    }
+
+    /**
+     * @brief Test method for the base of a journal, verifying that it is checked without the sidecar as well.
+     * @throws IOException if an I/O error occurs reading the files.
+     */
+    @Test
+    void testJournalBase() throws IOException {
+        DB journaled = new DB(dbPath, true);
+        assertTrue(journaled.appendLine("Line 0"));
+
+        // The base names the hash strategy, and holds the same hash of the DB file recorded in the sidecar
+        String base = Files.readAllLines(journaled.getJournalPath()).get(0);
+        assertTrue(base.endsWith(" " + journaled.getHashStrategy().getName() + " "
+                                 + Hash.getMerkleFileHash(dbPath, journaled.getHashStrategy())));
+
+        Files.delete(journaled.getMetadataPath());
+        DB reopened = new DB(dbPath, true);
+        assertEquals("Line 0", reopened.readNthLine(0));
+        assertFalse(Files.exists(reopened.getJournalPath()));
+    }
+
+    /**
+     * @brief Test method for a journal whose last record was not completely written.
+     * @throws IOException if an I/O error occurs writing the files.
+     */
+    @Test
+    void testTornJournalRecord() throws IOException {
+        DB journaled = new DB(dbPath, true);
+        journaled.appendLine("Line 0");
+
+        // Simulate a crash in the middle of an append
+        Files.writeString(journaled.getJournalPath(), "I 1 Line 1 never comple",
+                          java.nio.file.StandardOpenOption.APPEND);
+
+        DB reopened = new DB(dbPath, true);
+        assertEquals("Line 0", reopened.readNthLine(0));
+        assertNull(reopened.readNthLine(1));
+
+        assertTrue(reopened.appendLine("Line 1"));
+        assertEquals("Line 1", new DB(dbPath).readNthLine(1));
+    }
+
+    /**
+     * @brief Test method for the durability policies, verifying that commits always replace the DB file atomically.
+     * @throws IOException if an I/O error occurs reading the files.
+     */
+    @Test
+    void testDurabilityPolicies() throws IOException {
+        Path tempFile = Path.of(dbPath + DB.TEMP_EXTENSION);
+        assertEquals(DurabilityPolicy.SYNC_EVERY_COMMIT, db.getDurabilityPolicy());
+
+        for (DurabilityPolicy policy : DurabilityPolicy.values()) {
+            db.setDurabilityPolicy(policy);
+            db.setSyncIntervalMillis(10);
+
+            assertTrue(db.appendLine(policy.name()));
+            assertFalse(Files.exists(tempFile));
+            assertTrue(Files.readString(dbPath).endsWith(policy.name()));
+        }
+
+        assertTrue(db.rebuildDBFromString("Line 0\nLine 1"));
+        assertFalse(Files.exists(tempFile));
+        assertEquals("Line 1", new DB(dbPath).readNthLine(1));
+        assertTrue(db.sync());
+    }
+
+    /**
+     * @brief Test method for a DB in paged cache mode, verifying it behaves like a fully cached one.
+     * @throws IOException if an I/O error occurs writing the file.
+     * @throws ClassNotFoundException if the DB can't be deserialized.
+     */
+    @Test
+    void testPagedCacheMode() throws IOException, ClassNotFoundException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            content.append("Line ").append(i).append("\n");
+        }
+        Files.writeString(dbPath, content.toString());
+
+        DB paged = new DB(dbPath, CacheMode.PAGED);
+        DB eager = new DB(dbPath);
+        paged.setMaxCachedPages(1);
+        assertEquals(CacheMode.PAGED, paged.getCacheMode());
+        assertEquals(eager.getDBFileHash(), paged.getDBFileHash());
+
+        assertEquals("Line 2999", paged.readNthLine(2999));
+        assertEquals("Line 0", paged.readNthLine(0));
+        assertNull(paged.readNthLine(3000));
+        assertEquals(1500, paged.findFirstInstanceOfPattern(Pattern.compile("^Line 1500$")));
+
+        assertTrue(paged.writeNthLineReplace(1, "Line 1 edited"));
+        assertEquals("Line 2", paged.removeNthLine(2));
+        assertTrue(paged.appendLine("Line 3000"));
+        assertEquals("Line 1 edited", paged.readNthLine(1));
+        assertEquals("Line 3", paged.readNthLine(2));
+
+        DB reopened = new DB(dbPath);
+        assertEquals("Line 1 edited", reopened.readNthLine(1));
+        assertEquals("Line 3000", reopened.readNthLine(2999));
+        assertEquals(reopened.getDBFileHash(), paged.updateAndGetDBFileHash());
+
+        // A paged DB is serialized without its lines, which are read from the DB file again
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(paged);
+        }
+        assertTrue(serialized.size() < content.length() / 10);
+        DB deserialized = deserialize(serialized.toByteArray());
+        assertEquals(CacheMode.PAGED, deserialized.getCacheMode());
+        assertEquals("Line 3000", deserialized.readNthLine(2999));
+        assertEquals(reopened.getDBFileHash(), deserialized.updateAndGetDBFileHash());
+
+        // The hash of a paged DB file is taken from the sidecar, or calculated from the file without the sidecar
+        assertEquals(reopened.getDBFileHash(), new DB(dbPath, CacheMode.PAGED).getDBFileHash());
+        Files.delete(paged.getMetadataPath());
+        assertEquals(reopened.getDBFileHash(), new DB(dbPath, CacheMode.PAGED).getDBFileHash());
+    }
+
+    /**
+     * @brief Test method for batches, verifying that edits are persisted only on commit and undone on rollback.
+     * @throws IOException if an I/O error occurs reading the file.
+     */
+    @Test
+    void testBatchCommitAndRollback() throws IOException {
+        assertTrue(db.rebuildDBFromString("Line 0\nLine 1"));
+        String hash = db.getDBFileHash();
+
+        db.beginBatch();
+        assertTrue(db.isInBatch());
+        assertThrows(IllegalStateException.class, db::beginBatch);
+        assertTrue(db.writeNthLineReplace(0, "Line 0 edited"));
+        assertEquals("Line 1", db.removeNthLine(1));
+        assertTrue(db.appendLine("Line 2"));
+        assertEquals("Line 0\nLine 1", Files.readString(dbPath));
+        db.rollback();
+
+        assertFalse(db.isInBatch());
+        assertEquals("Line 0", db.readNthLine(0));
+        assertEquals("Line 1", db.readNthLine(1));
+        assertNull(db.readNthLine(2));
+        assertEquals(hash, db.updateAndGetDBFileHash());
+
+        db.beginBatch();
+        db.clear();
+        assertTrue(db.rebuildDBFromString("Line A\nLine B"));
+        assertTrue(db.appendLine("Line C"));
+        assertTrue(db.commit());
+        assertThrows(IllegalStateException.class, db::commit);
+
+        assertEquals("Line C", new DB(dbPath).readNthLine(2));
+        assertEquals(Hash.getMerkleFileHash(dbPath, db.getHashStrategy()), db.getDBFileHash());
+    }
+
+    /**
+     * @brief Test method for batches committed concurrently on a journaled DB, sharing the fsync of the journal.
+     * @throws InterruptedException if the test is interrupted while waiting for the threads.
+     */
+    @Test
+    void testConcurrentBatches() throws InterruptedException {
+        DB journaledDB = new DB(dbPath, true);
+        Thread[] threads = new Thread[8];
+        boolean[] committed = new boolean[threads.length];
+
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                boolean allCommitted = true;
+                for (int i = 0; i < 10; i++) {
+                    journaledDB.beginBatch();
+                    journaledDB.appendLine("Thread " + thread + " line " + i);
+                    journaledDB.appendLine("Thread " + thread + " line " + i + " end");
+                    allCommitted &= journaledDB.commit();
+                }
+                committed[thread] = allCommitted;
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        DB reopened = new DB(dbPath, true);
+        for (int t = 0; t < threads.length; t++) {
+            assertTrue(committed[t]);
+        }
+        for (int i = 0; i < threads.length * 20; i += 2) {
+            // The two lines of a batch are always next to each other
+            assertEquals(reopened.readNthLine(i) + " end", reopened.readNthLine(i + 1));
+        }
+        assertNull(reopened.readNthLine(threads.length * 20));
+    }
+
+    /**
+     * @brief Test method for write-behind mode, verifying that edits reach the DB file once flushed.
+     * @throws IOException if an I/O error occurs reading the file.
+     */
+    @Test
+    void testWriteBehind() throws IOException {
+        for (boolean journaled : new boolean[] {false, true}) {
+            assertTrue(db.rebuildDBFromString("Line 0"));
+            db.setJournaled(journaled);
+            db.setWriteBehindCapacity(4);
+
+            assertTrue(db.setWriteBehind(true));
+            assertTrue(db.isWriteBehind());
+            for (int i = 1; i < 50; i++) {
+                assertTrue(db.appendLine("Line " + i));
+            }
+            assertTrue(db.writeNthLineReplace(0, "Line 0 edited"));
+            assertEquals("Line 1", db.removeNthLine(1));
+
+            db.beginBatch();
+            assertTrue(db.appendLine("Line 50"));
+            assertTrue(db.commit());
+            assertEquals("Line 50", db.readNthLine(49));
+
+            assertTrue(db.flush());
+            DB reopened = new DB(dbPath, journaled);
+            assertEquals("Line 0 edited", reopened.readNthLine(0));
+            assertEquals("Line 50", reopened.readNthLine(49));
+            assertNull(reopened.readNthLine(50));
+            // The sidecar written by the flusher holds the hash of what it wrote
+            assertEquals(reopened.getDBFileHash(), db.forceHashOnFile());
+
+            assertTrue(db.rebuildDBFromString("Line A\nLine B"));
+            assertTrue(db.close());
+            assertFalse(db.isWriteBehind());
+            assertEquals("Line B", new DB(dbPath, journaled).readNthLine(1));
+            assertEquals(db.getDBFileHash(), db.forceHashOnFile());
+        }
+    }
+
+    /**
+     * @brief Test method for write-behind mode on a read-only DB file, verifying that edits are kept pending.
+     * @throws IOException if an I/O error occurs reading the file.
+     */
+    @Test
+    void testWriteBehindFailure() throws IOException {
+        assertTrue(db.setWriteBehind(true));
+        dbPath.toFile().setReadOnly();
+
+        assertTrue(db.appendLine("Line 0"));
+        assertFalse(db.flush());
+        assertFalse(db.setWriteBehind(false));
+        assertTrue(db.isWriteBehind());
+
+        dbPath.toFile().setWritable(true);
+        assertTrue(db.close());
+        assertEquals("Line 0", Files.readString(dbPath));
+    }
+
+    /**
+     * @brief Test method for the key index, verifying it stays consistent on inserts, shifts, replaces and removes.
+     */
+    @Test
+    void testKeyIndex() {
+        String sep = String.valueOf(DB.FIELD_SEPARATOR);
+        assertTrue(db.rebuildDBFromString("a" + sep + "1\nb" + sep + "2\nc" + sep + "3"));
+        assertThrows(IllegalStateException.class, () -> db.findLineByKey("a"));
+
+        db.setKeyField(1);
+        assertEquals(1, db.findLineByKey("2"));
+        assertEquals("c" + sep + "3", db.readLineByKey("3"));
+        assertEquals(-1, db.findLineByKey("4"));
+
+        db.setKeyField(0);
+        assertEquals(2, db.findLineByKey("c"));
+
+        // Insert with shift, append and duplicate key
+        assertTrue(db.writeNthLineWShift(0, "z" + sep + "0"));
+        assertTrue(db.appendLine("b" + sep + "dup"));
+        assertEquals(0, db.findLineByKey("z"));
+        assertEquals(2, db.findLineByKey("b"));
+        assertEquals(3, db.findLineByKey("c"));
+
+        // Replace changes the key of a line
+        assertTrue(db.replaceLineByKey("a", "y" + sep + "1"));
+        assertEquals(-1, db.findLineByKey("a"));
+        assertEquals(1, db.findLineByKey("y"));
+
+        // Deleting the first occurrence of a duplicate key falls back to the next one
+        assertEquals("b" + sep + "2", db.deleteLineByKey("b"));
+        assertEquals("b" + sep + "dup", db.readLineByKey("b"));
+        assertEquals(2, db.findLineByKey("c"));
+        assertNull(db.deleteLineByKey("x"));
+
+        // Rolled back batches restore the index too
+        db.beginBatch();
+        assertEquals("z" + sep + "0", db.removeNthLine(0));
+        assertEquals(-1, db.findLineByKey("z"));
+        db.rollback();
+        assertEquals(0, db.findLineByKey("z"));
+
+        assertEquals("c", DB.extractKey("c", 0));
+        assertNull(DB.extractKey("c", 1));
+        assertEquals("", DB.extractKey(sep + sep, 1));
+    }
+
+    /**
+     * @brief Test method for writing lines in key order, verifying that replaced and inserted lines end up in their
+     *        place, and that an unchanged line isn't written again.
+     */
+    @Test
+    void testWriteLineInKeyOrder() throws IOException {
+        String sep = String.valueOf(DB.FIELD_SEPARATOR);
+        Comparator<String> numericOrder = Comparator.comparingInt(Integer::parseInt);
+        assertThrows(IllegalStateException.class, () -> db.writeLineInKeyOrder("1" + sep + "a", numericOrder));
+
+        db.setKeyField(0);
+        assertTrue(db.writeLineInKeyOrder("10" + sep + "a", numericOrder));
+        assertTrue(db.writeLineInKeyOrder("2" + sep + "b", numericOrder));
+        assertTrue(db.writeLineInKeyOrder("30" + sep + "c", numericOrder));
+        assertTrue(db.writeLineInKeyOrder("1" + sep + "d", numericOrder));
+        assertTrue(db.writeLineInKeyOrder("10" + sep + "e", numericOrder));
+        assertEquals(String.join(db.getLineSeparator(), "1" + sep + "d", "2" + sep + "b", "10" + sep + "e",
+                "30" + sep + "c"), Files.readString(dbPath));
+
+        // Writing a line that is already there leaves the DB file alone
+        FileTime lastModified = Files.getLastModifiedTime(dbPath);
+        Files.setLastModifiedTime(dbPath, FileTime.fromMillis(lastModified.toMillis() - 10000));
+        assertTrue(db.writeLineInKeyOrder("2" + sep + "b", numericOrder));
+        assertEquals(lastModified.toMillis() - 10000, Files.getLastModifiedTime(dbPath).toMillis());
+
+        // A damaged line in the middle doesn't send every new line before it
+        assertTrue(db.writeLineInKeyOrder("40" + sep + "f", numericOrder));
+        assertTrue(db.setChecksummed(true));
+        Files.writeString(dbPath, Files.readString(dbPath).replace("10" + sep + "e", "10" + sep + "x"));
+        DB damaged = new DB(dbPath);
+        damaged.setKeyField(0);
+        assertEquals(1, damaged.findDamagedLines().length);
+
+        assertTrue(damaged.writeLineInKeyOrder("50" + sep + "g", numericOrder));
+        assertTrue(damaged.writeLineInKeyOrder("3" + sep + "h", numericOrder));
+        assertEquals("50" + sep + "g", damaged.readNthLine(6));
+        assertEquals("3" + sep + "h", damaged.readNthLine(2));
+        assertNull(damaged.readNthLine(3));
+    }
+
+    /**
+     * @brief Test method for counting lines in key order, verifying that lines out of order, with the same key or
+     *        without a key are told apart.
+     */
+    @Test
+    void testCountLinesInKeyOrder() throws IOException {
+        String sep = String.valueOf(DB.FIELD_SEPARATOR);
+        Comparator<String> numericOrder = Comparator.comparingInt(Integer::parseInt);
+        assertThrows(IllegalStateException.class, () -> db.countLinesInKeyOrder(numericOrder));
+
+        db.setKeyField(0);
+        assertEquals(0, db.countLinesInKeyOrder(numericOrder));
+
+        db.rebuildDBFromString(String.join(db.getLineSeparator(), "2" + sep + "a", "10" + sep + "b"));
+        assertEquals(2, db.countLinesInKeyOrder(numericOrder));
+        assertEquals(-1, db.countLinesInKeyOrder(Comparator.naturalOrder()));
+
+        db.appendLine("10" + sep + "c");
+        assertEquals(-1, db.countLinesInKeyOrder(numericOrder));
+
+        db.rebuildDBFromString(String.join(db.getLineSeparator(), "2" + sep + "a", "x" + sep + "b"));
+        assertEquals(-1, db.countLinesInKeyOrder(numericOrder));
+    }
+
+    /**
+     * @brief Test method for multi-match scans, verifying that matches are returned in file order.
+     */
+    @Test
+    void testFindAllMatching() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append("Line ").append(i).append(i % 3 == 0 ? " match" : "").append("\n");
+        }
+        assertTrue(db.rebuildDBFromString(content.toString()));
+
+        int[] matches = db.findAllMatching(Pattern.compile("match$"));
+        assertEquals(3334, matches.length);
+        for (int i = 0; i < matches.length; i++) {
+            assertEquals(i * 3, matches[i]);
+        }
+
+        List<String> lines = db.readAllMatching(Pattern.compile("^Line 99\\d\\d match$"));
+        assertEquals(List.of("Line 9900 match", "Line 9903 match", "Line 9906 match"), lines.subList(0, 3));
+
+        List<Integer> visited = new ArrayList<>();
+        db.forEachMatching(Pattern.compile("^Line 1 |^Line 9999 "), (line, lineIndex) -> {
+            assertEquals(db.readNthLine(lineIndex), line);
+            visited.add(lineIndex);
+        });
+        assertEquals(List.of(9999), visited);
+        assertEquals(0, db.findAllMatching(Pattern.compile("nothing")).length);
+    }
+
+    /**
+     * @brief Test method for streaming the lines of DB, both from the cache and from the file.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testLines() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("Line ").append(i).append("\n");
+        }
+        Files.writeString(dbPath, content.toString());
+
+        for (CacheMode cacheMode : CacheMode.values()) {
+            DB streamed = new DB(dbPath, cacheMode);
+            streamed.setMaxCachedPages(1);
+
+            assertEquals(5000, streamed.lines().spliterator().getExactSizeIfKnown());
+            assertEquals("Line 4999", streamed.lines().skip(4999).findFirst().orElseThrow());
+
+            List<String> lines = streamed.lines().parallel().map(line -> line.substring(5)).toList();
+            assertEquals(5000, lines.size());
+            assertEquals("1234", lines.get(1234));
+        }
+
+        // A snapshot of the cache is not affected by later edits
+        Stream<String> snapshot = db.lines();
+        assertTrue(db.appendLine("Line 5000"));
+        assertEquals(5000, snapshot.count());
+        assertEquals(5001, db.lines().count());
+    }
+
+    /**
+     * @brief Test method for a DB in compressed cache mode, verifying it converts a text DB file and behaves like a
+     *        fully cached one.
+     * @throws IOException if an I/O error occurs writing the file.
+     * @throws ClassNotFoundException if the DB can't be deserialized.
+     */
+    @Test
+    void testCompressedCacheMode() throws IOException, ClassNotFoundException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            content.append("Line ").append(i).append("\n");
+        }
+        Files.writeString(dbPath, content.toString());
+
+        DB compressed = new DB(dbPath, CacheMode.COMPRESSED);
+        assertEquals(CacheMode.COMPRESSED, compressed.getCacheMode());
+        assertEquals("Line 2999", compressed.readNthLine(2999));
+
+        assertTrue(compressed.writeNthLineReplace(1, "Line 1 edited"));
+        assertTrue(compressed.appendLine("Line 3000"));
+        assertEquals("Line 2", compressed.removeNthLine(2));
+        assertTrue(Files.size(dbPath) < content.length() / 2);
+
+        DB reopened = new DB(dbPath, CacheMode.COMPRESSED);
+        reopened.setMaxCachedPages(1);
+        assertEquals("Line 1 edited", reopened.readNthLine(1));
+        assertEquals("Line 3000", reopened.readNthLine(2999));
+        assertEquals(compressed.updateAndGetDBFileHash(), reopened.forceHashOnFile());
+
+        // A compressed DB is serialized without its lines, and its hash is calculated from the file without the sidecar
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(reopened);
+        }
+        assertTrue(serialized.size() < Files.size(dbPath));
+        DB deserialized = deserialize(serialized.toByteArray());
+        assertEquals(CacheMode.COMPRESSED, deserialized.getCacheMode());
+        assertEquals("Line 3000", deserialized.readNthLine(2999));
+        Files.delete(reopened.getMetadataPath());
+        assertEquals(reopened.getDBFileHash(), new DB(dbPath, CacheMode.COMPRESSED).getDBFileHash());
+
+        assertTrue(reopened.rebuildDBFromString("Line A\nLine B"));
+        assertEquals("Line B", new DB(dbPath, CacheMode.COMPRESSED).readNthLine(1));
+        assertEquals(reopened.getDBFileHash(), reopened.forceHashOnFile());
+    }
+
+    /**
+     * @brief Test method for a DB in off-heap cache mode, verifying it behaves like a fully cached one, serialization
+     *        included.
+     * @throws IOException if an I/O error occurs writing the file.
+     * @throws ClassNotFoundException if the DB can't be deserialized.
+     */
+    @Test
+    void testOffHeapCacheMode() throws IOException, ClassNotFoundException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            content.append("Line ").append(i).append(" \u00E8\u4E2D").append("\n");
+        }
+        Files.writeString(dbPath, content.toString());
+
+        DB offHeap = new DB(dbPath, CacheMode.OFF_HEAP);
+        assertEquals(CacheMode.OFF_HEAP, offHeap.getCacheMode());
+        assertEquals(new DB(dbPath).getDBFileHash(), offHeap.getDBFileHash());
+        assertEquals("Line 2999 \u00E8\u4E2D", offHeap.readNthLine(2999));
+
+        assertTrue(offHeap.writeNthLineReplace(1, "Line 1 edited"));
+        assertEquals("Line 2 \u00E8\u4E2D", offHeap.removeNthLine(2));
+        assertTrue(offHeap.appendLine("Line 3000"));
+        assertEquals(new DB(dbPath).getDBFileHash(), offHeap.updateAndGetDBFileHash());
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(offHeap);
+        }
+        DB deserialized = deserialize(serialized.toByteArray());
+        assertEquals("Line 1 edited", deserialized.readNthLine(1));
+        assertEquals("Line 3000", deserialized.readNthLine(2999));
+        assertTrue(deserialized.resumeIfUnchanged(offHeap.getDBFileHash()));
+    }
+
+    /**
+     * @brief Test method for checksummed lines, verifying that a damaged line is quarantined on its own while the
+     *        other lines keep being read.
+     * @throws IOException if an I/O error occurs reading or writing the file.
+     */
+    @Test
+    void testChecksums() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(db.appendLine("Line " + i + "\u001Cfield"));
+        }
+        assertTrue(db.setChecksummed(true));
+        assertTrue(db.isChecksummed());
+        assertEquals("Line 3\u001Cfield", db.readNthLine(3));
+        assertEquals(db.getDBFileHash(), db.forceHashOnFile());
+
+        // The format is detected when the file is loaded, and edits keep their checksum
+        DB reopened = new DB(dbPath);
+        assertTrue(reopened.isChecksummed());
+        assertTrue(reopened.writeNthLineReplace(4, "Line 4 edited"));
+        assertEquals(0, new DB(dbPath).findDamagedLines().length);
+
+        // Damage a single byte of line 7
+        List<String> stored = Files.readAllLines(dbPath);
+        stored.set(7, stored.get(7).replace("Line 7", "Line 8"));
+        Files.write(dbPath, stored);
+
+        DB damaged = new DB(dbPath);
+        assertNull(damaged.readNthLine(7));
+        assertEquals("Line 6\u001Cfield", damaged.readNthLine(6));
+        assertArrayEquals(new int[] {7}, damaged.findDamagedLines());
+        assertArrayEquals(new int[] {8}, damaged.findAllMatching(Pattern.compile("Line 8")));
+        assertEquals(9, damaged.lines().filter(line -> line != null).count());
+        assertTrue(Files.readString(damaged.getQuarantinePath()).contains("Line 8\u001Cfield"));
+
+        // Overwriting the damaged line repairs it
+        assertTrue(damaged.writeNthLineReplace(7, "Line 7 restored"));
+        assertEquals("Line 7 restored", new DB(dbPath).readNthLine(7));
+
+        // A line written by hand, without the column, is read as it is and gets its column with the next rewrite
+        stored = Files.readAllLines(dbPath);
+        stored.add("Line 10\u001Cfield");
+        Files.write(dbPath, stored);
+        DB handEdited = new DB(dbPath);
+        assertEquals("Line 10\u001Cfield", handEdited.readNthLine(10));
+        assertEquals(0, handEdited.findDamagedLines().length);
+        assertTrue(handEdited.checkpoint());
+        assertTrue(ChecksummedLineList.hasChecksumColumn(Files.readAllLines(dbPath).get(10)));
+        assertEquals(handEdited.getDBFileHash(), new DB(dbPath).forceHashOnFile());
+
+        assertTrue(damaged.setChecksummed(false));
+        assertFalse(new DB(dbPath).isChecksummed());
+        assertEquals("Line 7 restored", Files.readAllLines(dbPath).get(7));
+    }
+
+    /**
+     * @brief Test method for switching the hash strategy, verifying that the hash is recalculated with the new
+     *        strategy and still matches the one calculated on the file.
+     */
+    @Test
+    void testHashStrategy() {
+        for (int i = 0; i < 600; i++) {
+            assertTrue(db.appendLine("Line " + i));
+        }
+        assertEquals(DB.DEFAULT_HASH_STRATEGY, db.getHashStrategy());
+        String defaultHash = db.updateAndGetDBFileHash();
+
+        Set<String> hashes = new HashSet<>();
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            db.setHashStrategy(algorithm);
+            hashes.add(db.getDBFileHash());
+            assertEquals(algorithm, db.getHashStrategy());
+            assertEquals(db.getDBFileHash(), db.forceHashOnFile());
+            assertEquals(Hash.getMerkleFileHash(dbPath, algorithm), db.getDBFileHash(), algorithm.getName());
+        }
+        assertEquals(HashAlgorithm.values().length, hashes.size());
+
+        db.setHashStrategy(DB.DEFAULT_HASH_STRATEGY);
+        assertEquals(defaultHash, db.getDBFileHash());
+    }
+
+    /**
+     * @brief Test method for the metadata sidecar, verifying that a DB deserialized along with its content is resumed
+     *        without reading the DB file as long as the file didn't change, and not anymore once it did.
+     * @throws IOException if an I/O error occurs reading or writing the files.
+     * @throws ClassNotFoundException if the DB can't be deserialized.
+     */
+    @Test
+    void testMetadataSidecar() throws IOException, ClassNotFoundException {
+        for (int i = 0; i < 600; i++) {
+            assertTrue(db.appendLine("Line " + i));
+        }
+        String hash = db.forceHashOnFile();
+        assertTrue(Files.exists(db.getMetadataPath()));
+        assertEquals(hash, new DB(dbPath).forceHashOnFile());
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(db);
+        }
+
+        DB resumed = deserialize(serialized.toByteArray());
+        assertTrue(resumed.resumeIfUnchanged(hash));
+        assertEquals("Line 599", resumed.readNthLine(599));
+        assertTrue(resumed.writeNthLineReplace(300, "Line 300 edited"));
+        assertEquals(Hash.getMerkleFileHash(dbPath, resumed.getHashStrategy()), resumed.updateAndGetDBFileHash());
+
+        // An edit made behind the back of the DB changes the metadata of the file
+        DB stale = deserialize(serialized.toByteArray());
+        assertFalse(stale.resumeIfUnchanged(hash));
+        assertFalse(deserialize(serialized.toByteArray()).resumeIfUnchanged("another hash"));
+
+        Files.writeString(dbPath, "Line A");
+        assertNotEquals(resumed.getDBFileHash(), resumed.forceHashOnFile());
+        assertEquals("Line A", resumed.readNthLine(0));
+    }
+
+    /**
+     * @brief Test method for reconciling a DB file edited by someone else, verifying that only the lines that changed
+     *        are reported, and that the writes of the DB itself are recognized as such.
+     * @throws IOException if an I/O error occurs reading or writing the file.
+     */
+    @Test
+    void testReconcile() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(db.appendLine("Line " + i));
+        }
+        assertTrue(db.reconcile().isEmpty());
+
+        List<String> lines = new ArrayList<>(Files.readAllLines(dbPath));
+        lines.set(3, "Line 3 edited");
+        lines.remove(5);
+        lines.add(0, "Line A");
+        lines.add("Line 0");
+        Files.write(dbPath, lines);
+
+        LineDiff diff = db.reconcile();
+        assertEquals(List.of("Line 3", "Line 5"), diff.getRemoved());
+        assertEquals(List.of("Line A", "Line 3 edited", "Line 0"), diff.getInserted());
+        assertEquals("Line 3 edited", db.readNthLine(4));
+        assertEquals(Hash.getMerkleFileHash(dbPath, db.getHashStrategy()), db.getDBFileHash());
+
+        assertTrue(db.reconcile().isEmpty());
+        assertTrue(db.writeNthLineReplace(0, "Line B"));
+        assertTrue(db.reconcile().isEmpty());
+    }
+
+    /**
+     * @brief Test method for snapshots of the DB, verifying that a snapshot keeps its lines while the DB is edited,
+     *        and can't be read once closed.
+     */
+    @Test
+    void testSnapshot() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(db.appendLine("Line " + i));
+        }
+
+        DBSnapshot snapshot = db.snapshot();
+        assertNotNull(snapshot);
+        assertTrue(db.writeNthLineReplace(0, "Line A"));
+        assertEquals("Line 500", db.removeNthLine(500));
+        assertTrue(db.appendLine("Line B"));
+
+        assertEquals(1000, snapshot.size());
+        assertEquals("Line 0", snapshot.readNthLine(0));
+        assertEquals("Line 500", snapshot.readNthLine(500));
+        assertNull(snapshot.readNthLine(1000));
+        assertEquals(499500L, snapshot.lines().parallel().mapToLong(line -> Long.parseLong(line.substring(5))).sum());
+
+        DBSnapshot current = db.snapshot();
+        assertNotEquals(snapshot.getVersion(), current.getVersion());
+        assertEquals(db.lines().toList(), current.getLines());
+        assertEquals("Line A", current.readNthLine(0));
+
+        snapshot.close();
+        current.close();
+        assertThrows(IllegalStateException.class, snapshot::size);
+    }
+
+    /**
+     * @brief Deserializes a DB.
+     * @param bytes The serialized DB.
+     * @return The deserialized DB.
+     * @throws IOException if the DB can't be read.
+     * @throws ClassNotFoundException if the DB can't be deserialized.
+     */
+    private static DB deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (DB) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class DBWatcherTest
+ * @brief Test class for the DBWatcher class.
+ */
+class DBWatcherTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * @brief Test method for watching a DB file, verifying that an external edit is reported with the lines it
+     *        changed, while the writes of the DB itself are not reported at all.
+     * @throws IOException if an I/O error occurs reading or writing the file.
+     * @throws InterruptedException if the test is interrupted while waiting for the watcher.
+     */
+    @Test
+    void testWatch() throws IOException, InterruptedException {
+        Path dbPath = tempDir.resolve("watched.db");
+        Files.writeString(dbPath, "Line 0\nLine 1\nLine 2");
+        DB db = new DB(dbPath);
+
+        BlockingQueue<LineDiff> diffs = new LinkedBlockingQueue<>();
+        try (DBWatcher watcher = new DBWatcher()) {
+            watcher.watch(db, diffs::add);
+
+            assertTrue(db.writeNthLineReplace(0, "Line 0 edited by the DB"));
+            assertNull(diffs.poll(DBWatcher.SETTLE_DELAY_MILLIS * 5, TimeUnit.MILLISECONDS));
+
+            Files.writeString(dbPath, "Line 0 edited by the DB\nLine 1 edited by hand\nLine 2");
+            LineDiff diff = diffs.poll(10, TimeUnit.SECONDS);
+
+            assertNotNull(diff);
+            assertEquals(List.of("Line 1"), diff.getRemoved());
+            assertEquals(List.of("Line 1 edited by hand"), diff.getInserted());
+            assertEquals("Line 1 edited by hand", db.readNthLine(1));
+        }
+    }
+}
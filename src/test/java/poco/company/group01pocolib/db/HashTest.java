@@ -12,9 +12,12 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -268,4 +271,91 @@ class HashTest {
         boolean resultDifferent = Hash.compareFileHashesFromLines(lines1, lines3, "\n", "\n");
         assertFalse(resultDifferent);
     }
-}
\ No newline at end of file
+
+    /**
+     * @brief Test method for the Merkle fingerprint, verifying it is the same whether calculated from a file, from
+     *        scratch or incrementally after edits.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testMerkleHash() throws IOException {
+        HashStrategy strategy = HashAlgorithm.XXH64;
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            lines.add("Line " + i);
+        }
+        Path file = tempDir.resolve("merkle.txt");
+        Files.writeString(file, String.join("\r\n", lines) + "\r\n");
+
+        String hash = Hash.getMerkleHashFromLines(lines, strategy);
+        assertEquals(hash, Hash.getMerkleFileHash(file, strategy));
+        assertNotEquals(hash, Hash.getMerkleHashFromLines(lines.subList(0, 4999), strategy));
+        assertNotEquals(Hash.getMerkleHashFromLines(List.of(), strategy),
+                       Hash.getMerkleHashFromLines(List.of(""), strategy));
+
+        MerkleTree tree = new MerkleTree(strategy);
+        assertEquals(hash, tree.getRoot(lines, true));
+
+        lines.set(10, "Line 10 edited");
+        tree.lineReplaced(10);
+        assertEquals(Hash.getMerkleHashFromLines(lines, strategy), tree.getRoot(lines, false));
+
+        lines.add("Line 5000");
+        tree.linesShifted(5000);
+        lines.remove(300);
+        tree.linesShifted(300);
+        assertEquals(Hash.getMerkleHashFromLines(lines, strategy), tree.getRoot(lines, true));
+
+        lines.subList(256, lines.size()).clear();
+        tree.linesShifted(256);
+        assertEquals(Hash.getMerkleHashFromLines(lines, strategy), tree.getRoot(lines, true));
+    }
+
+    /**
+     * @brief Test method for the built-in hash strategies, verifying known values and that feeding the bytes in chunks
+     *        doesn't change the hash.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testHashStrategies() throws IOException {
+        assertEquals("ef46db3751d8e999", hex(HashAlgorithm.XXH64, ""));
+        assertEquals("44bc2cf5ad770999", hex(HashAlgorithm.XXH64, "abc"));
+        assertEquals("e3069283", hex(HashAlgorithm.CRC32C, "123456789"));
+
+        byte[] bytes = "0123456789abcdefghijklmnopqrstuvwxyz".repeat(30).getBytes(StandardCharsets.UTF_8);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            assertSame(algorithm, HashStrategy.forName(algorithm.getName()));
+
+            HashStrategy.Hasher whole = algorithm.newHasher();
+            whole.update(bytes);
+
+            HashStrategy.Hasher chunked = algorithm.newHasher();
+            for (int offset = 0, length = 1; offset < bytes.length; offset += length, length = length % 40 + 1) {
+                if (length == 1) {
+                    chunked.update(bytes[offset]);
+                } else {
+                    chunked.update(bytes, offset, Math.min(length, bytes.length - offset));
+                }
+            }
+            assertArrayEquals(whole.digest(), chunked.digest(), algorithm.getName());
+        }
+        assertNull(HashStrategy.forName("MD5"));
+
+        Path file = tempDir.resolve("strategy.txt");
+        Files.write(file, bytes);
+        assertEquals(Hash.getFileHash(file), Hash.getFileHash(file, HashAlgorithm.SHA_256));
+        assertNotEquals(Hash.getFileHash(file, HashAlgorithm.XXH64), Hash.getFileHash(file, HashAlgorithm.CRC32C));
+    }
+
+    /**
+     * @brief Hashes a string with a strategy.
+     * @param strategy The hash strategy.
+     * @param text The string to hash.
+     * @return The hash, in hexadecimal.
+     */
+    private static String hex(HashStrategy strategy, String text) {
+        HashStrategy.Hasher hasher = strategy.newHasher();
+        hasher.update(text.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hasher.digest());
+    }
+}
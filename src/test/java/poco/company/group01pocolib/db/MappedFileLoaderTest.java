@@ -0,0 +1,94 @@
+/**
+ * @file MappedFileLoaderTest.java
+ * @brief Unit tests for the MappedFileLoader class.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class MappedFileLoaderTest
+ * @brief Contains unit tests to verify the single-pass loading of DB files.
+ */
+class MappedFileLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private List<String> lines;
+
+    /**
+     * @brief Sets up the file path and the list of loaded lines before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("mapped.db");
+        lines = new ArrayList<>();
+    }
+
+    /**
+     * @brief Test method for a file using a single line separator and no trailing line break.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testCanonicalFile() throws IOException {
+        Files.writeString(file, "Line 0\r\nLine 1\r\nLine 2");
+        MappedFileLoader.Result result = MappedFileLoader.load(file, lines::add);
+
+        assertEquals(List.of("Line 0", "Line 1", "Line 2"), lines);
+        assertEquals("\r\n", result.lineSeparator);
+        assertTrue(result.canonical);
+        assertEquals(Files.size(file), result.size);
+        assertEquals(Files.readString(file), String.join(result.lineSeparator, lines));
+    }
+
+    /**
+     * @brief Test method for files with mixed or trailing line breaks, and for empty files.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testNonCanonicalFiles() throws IOException {
+        Files.writeString(file, "Line 0\rLine 1\n\nLine 3\n");
+        MappedFileLoader.Result result = MappedFileLoader.load(file, lines::add);
+
+        assertEquals(List.of("Line 0", "Line 1", "", "Line 3"), lines);
+        assertEquals("\r", result.lineSeparator);
+        assertFalse(result.canonical);
+        assertEquals(Files.size(file), result.size);
+
+        lines.clear();
+        Files.writeString(file, "");
+        result = MappedFileLoader.load(file, lines::add);
+
+        assertTrue(lines.isEmpty());
+        assertNull(result.lineSeparator);
+        assertEquals(0, result.size);
+    }
+
+    /**
+     * @brief Test method for lines and multi-byte characters crossing the boundary between chunks.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testLinesAcrossChunks() throws IOException {
+        String longLine = "è".repeat(100_000);
+        Files.writeString(file, "Short\n" + longLine + "\r\n" + longLine + "\r");
+        MappedFileLoader.Result result = MappedFileLoader.load(file, lines::add);
+
+        assertEquals(List.of("Short", longLine, longLine), lines);
+        assertEquals("\n", result.lineSeparator);
+        assertFalse(result.canonical);
+        assertEquals(Files.size(file), result.size);
+    }
+}
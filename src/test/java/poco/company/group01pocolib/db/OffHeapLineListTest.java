@@ -0,0 +1,56 @@
+/**
+ * @file OffHeapLineListTest.java
+ * @brief Unit tests for the OffHeapLineList class.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class OffHeapLineListTest
+ * @brief Contains unit tests to verify editing and compaction of an OffHeapLineList.
+ */
+class OffHeapLineListTest {
+
+    /**
+     * @brief Test method for editing a list, verifying that the bytes of replaced lines are reclaimed.
+     */
+    @Test
+    void testEditsAndCompaction() {
+        OffHeapLineList lines = new OffHeapLineList();
+        List<String> expected = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            lines.add("Line " + i + " è");
+            expected.add("Line " + i + " è");
+        }
+        lines.add(0, "First");
+        expected.add(0, "First");
+        assertEquals(expected.remove(500), lines.remove(500));
+        assertEquals(expected, lines);
+
+        // Replacing the same line over and over only leaves garbage behind, which is dropped by compaction
+        long segmentSize = lines.getSegmentSize();
+        for (int i = 0; i < 100000; i++) {
+            lines.set(1, "Replaced " + i);
+        }
+        expected.set(1, "Replaced 99999");
+        assertEquals(expected, lines);
+        assertEquals(segmentSize, lines.getSegmentSize());
+
+        lines.set(2, "x".repeat(200000));
+        lines.set(2, "");
+        assertEquals("", lines.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> lines.get(lines.size()));
+
+        lines.clear();
+        assertTrue(lines.isEmpty());
+        lines.add("Line");
+        assertEquals(List.of("Line"), lines);
+    }
+}
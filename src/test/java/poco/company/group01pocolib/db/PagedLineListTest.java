@@ -0,0 +1,103 @@
+/**
+ * @file PagedLineListTest.java
+ * @brief Unit tests for the PagedLineList class.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class PagedLineListTest
+ * @brief Contains unit tests to verify indexing, paging and editing of a PagedLineList.
+ */
+class PagedLineListTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+
+    /**
+     * @brief Sets up a temporary file before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("paged.db");
+    }
+
+    /**
+     * @brief Test method for indexing files with every kind of line break.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testReindexLineBreaks() throws IOException {
+        Files.writeString(file, "Line 0\nLine 1\r\nLine 2\rLine 3\n\nLine 5\n");
+        PagedLineList lines = new PagedLineList(file, 2, 2);
+        lines.reindex();
+
+        assertEquals(List.of("Line 0", "Line 1", "Line 2", "Line 3", "", "Line 5"), new ArrayList<>(lines));
+
+        Files.writeString(file, "");
+        lines.reindex();
+        assertTrue(lines.isEmpty());
+    }
+
+    /**
+     * @brief Test method verifying that the number of pages kept in memory is bounded.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testPageBudget() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("Line ").append(i).append("\n");
+        }
+        Files.writeString(file, content.toString());
+
+        PagedLineList lines = new PagedLineList(file, 10, 3);
+        lines.reindex();
+        assertEquals(0, lines.getLoadedPageCount());
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Line " + i, lines.get(i));
+            assertTrue(lines.getLoadedPageCount() <= 3);
+        }
+
+        lines.setMaxPages(1);
+        assertEquals(1, lines.getLoadedPageCount());
+        assertEquals("Line 42", lines.get(42));
+        assertThrows(IndexOutOfBoundsException.class, () -> lines.get(100));
+    }
+
+    /**
+     * @brief Test method for edits made through the list.
+     * @throws IOException if an I/O error occurs writing the file.
+     */
+    @Test
+    void testEdits() throws IOException {
+        Files.writeString(file, "Line 0\nLine 1\nLine 2");
+        PagedLineList lines = new PagedLineList(file, 2, 1);
+        lines.reindex();
+
+        assertEquals("Line 1", lines.set(1, "Line 1 edited"));
+        lines.add(0, "Line -1");
+        lines.add(lines.size(), "Line 3");
+        assertEquals("Line 2", lines.remove(3));
+
+        assertEquals(List.of("Line -1", "Line 0", "Line 1 edited", "Line 3"), new ArrayList<>(lines));
+
+        // Reindexing discards the edits that never reached the file
+        lines.reindex();
+        assertEquals(List.of("Line 0", "Line 1", "Line 2"), new ArrayList<>(lines));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * @file StringPoolTest.java
+ * @brief Unit tests for the StringPool class.
+ */
+package poco.company.group01pocolib.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import poco.company.group01pocolib.mvc.model.Book;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @class StringPoolTest
+ * @brief Contains unit tests to verify canonicalization and statistics of a StringPool.
+ */
+class StringPoolTest {
+
+    /**
+     * @brief Test method for interning values, verifying that equal values share an instance and are counted.
+     */
+    @Test
+    void testIntern() {
+        StringPool pool = new StringPool();
+        String first = new String("Author");
+        String second = new String("Author");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertSame(first, pool.intern(first));
+        assertNull(pool.intern(null));
+
+        assertEquals(1, pool.size());
+        assertEquals(3, pool.getLookups());
+        assertEquals(1, pool.getHits());
+        assertEquals(24 + 24, pool.getBytesSaved());
+
+        String[] values = pool.internAll(new String[] {new String("Author"), new String("Autore è")});
+        assertSame(first, values[0]);
+        assertEquals(2, pool.size());
+
+        pool.resetStats();
+        assertEquals(0, pool.getLookups());
+        assertEquals(0, pool.getBytesSaved());
+    }
+
+    /**
+     * @brief Test method for interning from parallel threads, verifying that every thread gets the same instance.
+     */
+    @Test
+    void testConcurrentIntern() {
+        StringPool pool = new StringPool();
+
+        List<String> canonical = IntStream.range(0, 10_000).parallel()
+                .mapToObj(i -> pool.intern(new String("Author " + i % 10)))
+                .toList();
+
+        for (int i = 0; i < canonical.size(); i++) {
+            assertSame(canonical.get(i % 10), canonical.get(i));
+        }
+        assertEquals(10, pool.size());
+        assertEquals(10_000, pool.getLookups());
+        assertEquals(10_000 - 10, pool.getHits());
+    }
+
+    /**
+     * @brief Test method for the fields of entities parsed from different lines sharing the pooled instances.
+     */
+    @Test
+    void testSharedByEntities() {
+        Book first = Book.fromDBString("Title A\u001CAuthor X; Author Y\u001C1111111111111\u001C2000\u001C1\u001C0\u001C0");
+        Book second = Book.fromDBString("Title B\u001CAuthor Y\u001C2222222222222\u001C2001\u001C1\u001C0\u001C0");
+
+        assertSame(first.getAuthors().get(1), second.getAuthors().getFirst());
+    }
+}
@@ -18,6 +18,8 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
 
@@ -59,12 +61,12 @@ public class BookSetTest {
     public void tearDown() {
         // Cleanup: delete test serialization files and DB files
         deleteFileIfExists("testBookSet.ser");
-        deleteFileIfExists("testBooksDB");
+        deleteDBFiles("testBooksDB");
         deleteFileIfExists("anotherTestBookSet.ser");
-        deleteFileIfExists("anotherTestBooksDB");
+        deleteDBFiles("anotherTestBooksDB");
         deleteFileIfExists("testLoadHashMatch.ser");
         deleteFileIfExists("testLoadHashMismatch.ser");
-        deleteFileIfExists("testHashMismatchDB");
+        deleteDBFiles("testHashMismatchDB");
         deleteFileIfExists("testCorrupted.ser");
         deleteFileIfExists("testCycle.ser");
     }
@@ -76,6 +78,18 @@ public class BookSetTest {
         }
     }
 
+    /**
+     * @brief Deletes a DB file along with the files the DB keeps next to it (journal, sidecar, record snapshot...).
+     * @param DBPath The path of the DB file.
+     */
+    private void deleteDBFiles(String DBPath) {
+        deleteFileIfExists(DBPath);
+        for (String extension : new String[] {DB.JOURNAL_EXTENSION, DB.TEMP_EXTENSION, DB.RECORDS_EXTENSION,
+                                              DB.QUARANTINE_EXTENSION, DB.METADATA_EXTENSION}) {
+            deleteFileIfExists(DBPath + extension);
+        }
+    }
+
 
 
     /**
@@ -344,6 +358,30 @@ public class BookSetTest {
         Assertions.assertFalse( bookSet.isStored("978-0000000000"));
     }
 
+    /**
+     * @brief Tests that isStored follows additions and removals once the ISBN filter is built, across its rebuilds.
+     */
+    @Test
+    public void testIsStoredAfterRemovals() {
+        bookSet.addOrEditBook(book);
+        Assertions.assertTrue(bookSet.isStored(book));
+
+        for (int i = 0; i < 100; i++) {
+            bookSet.addOrEditBook(new Book("Book " + i, "Author", "isbn-" + i, 2000, 1));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            bookSet.removeBook("isbn-" + i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i % 2 == 1, bookSet.isStored("isbn-" + i));
+        }
+        bookSet.removeBook(book.getIsbn());
+        Assertions.assertFalse(bookSet.isStored(book));
+        bookSet.addOrEditBook(book);
+        Assertions.assertTrue(bookSet.isStored("978-0261102385"));
+    }
+
     /**
      * @brief Tests the editBook functionality by modifying an existing book.
      */
@@ -564,5 +602,123 @@ public class BookSetTest {
         
     }
 
+    /**
+     * @brief Tests applying changes made to the DB file by hand.
+     * @details Only the edited, removed and added books should change, in both the set and the index.
+     */
+    @Test
+    public void testApplyExternalChanges() throws IOException {
+        bookSet.addOrEditBook(book);
+        bookSet.addOrEditBook(book2);
+        bookDB.flush();
+
+        // Edit a book, remove the other one and add a third one, as someone editing the DB file would
+        Book editedBook = new Book("Il Signore degli Anelli", "J.R.R. Tolkien", "978-0261102385", 1954, 25);
+        Files.writeString(Path.of("testBooksDB"),
+                editedBook.toDBString() + "\n" + book3.toDBString());
+
+        bookSet.applyExternalChanges(bookDB.reconcile());
 
+        assertEquals(2, bookSet.getBookSet().size());
+        assertEquals(25, bookSet.getBook("978-0261102385").getCopiesAvailable());
+        assertNull(bookSet.getBook("978-0261102217"));
+        assertNotNull(bookSet.getBook("978-8807170106"));
+        assertEquals(book3, bookSet.search("Karl Marx").get(0).item);
+        assertEquals(0, bookSet.search("Lo Hobbit").stream().filter(result -> result.item.equals(book2)).count());
+        assertEquals(bookDB.getDBFileHash(), bookSet.getLastKnownDBHash());
+    }
+
+    /**
+     * @brief Tests applying changes made by hand to a checksummed DB file.
+     * @details A line written by hand, without its checksum, is taken as it is, while a book whose line was damaged
+     *          is kept in the set and written back on the next sync.
+     */
+    @Test
+    public void testApplyExternalChangesWithChecksums() throws IOException {
+        bookSet.addOrEditBook(book);
+        bookSet.addOrEditBook(book2);
+        Assertions.assertTrue(bookDB.setChecksummed(true));
+        bookDB.flush();
+
+        // The first line is edited in a text editor, dropping its checksum, the second one is damaged
+        List<String> stored = Files.readAllLines(Path.of("testBooksDB"));
+        Book editedBook = new Book("Lo Hobbit", "J.R.R. Tolkien", "978-0261102217", 1937, 30);
+        stored.set(0, editedBook.toDBString());
+        stored.set(1, stored.get(1).replace("Anelli", "Anelly"));
+        Files.write(Path.of("testBooksDB"), stored);
+
+        bookSet.applyExternalChanges(bookDB.reconcile());
+        assertEquals(30, bookSet.getBook("978-0261102217").getCopiesAvailable());
+        assertNotNull(bookSet.getBook("978-0261102385"));
+        assertEquals(1, bookDB.findDamagedLines().length);
+
+        // The next sync writes the damaged book back, and every line has its checksum again
+        bookSet.addOrEditBook(book3);
+        bookDB.flush();
+        DB reopened = new DB("testBooksDB");
+        assertEquals(0, reopened.findDamagedLines().length);
+        assertEquals(List.of(editedBook.toDBString(), book.toDBString(), book3.toDBString()),
+                reopened.lines().toList());
+    }
+
+    /**
+     * @brief Tests that the DB file is kept in ISBN order, and that once it is, a sync only journals the books that
+     *        changed.
+     */
+    @Test
+    public void testSyncOnWritePatchesChangedBooks() throws IOException {
+        DB journaledDB = new DB("testBooksDB", true);
+        bookSet.setBookDB(journaledDB);
+
+        // The first sync rewrites the DB file, the next ones only append the new books to the journal
+        bookSet.addOrEditBook(book);
+        bookSet.addOrEditBook(book3);
+        bookSet.addOrEditBook(book2);
+        assertEquals(book.toDBString(), Files.readString(Path.of("testBooksDB")));
+        assertEquals(List.of(book2.toDBString(), book.toDBString(), book3.toDBString()),
+                journaledDB.lines().toList());
+
+        // Editing a book appends a single record, about the size of its line
+        long journalSize = Files.size(journaledDB.getJournalPath());
+        book3.setCopiesAvailable(4);
+        bookSet.addOrEditBook(book3);
+        long delta = Files.size(journaledDB.getJournalPath()) - journalSize;
+        Assertions.assertTrue(delta > book3.toDBString().length() && delta < book3.toDBString().length() + 16,
+                "Journal grew by " + delta + " bytes");
+
+        // The journal is folded into the DB file when it is opened again, in ISBN order and with the same hash
+        bookSet.removeBook(book.getIsbn());
+        DB reopened = new DB("testBooksDB");
+        assertEquals(book2.toDBString() + reopened.getLineSeparator() + book3.toDBString(),
+                Files.readString(Path.of("testBooksDB")));
+        assertEquals(bookSet.getLastKnownDBHash(), reopened.forceHashOnFile());
+    }
+
+    /**
+     * @brief Tests that a DB file loaded in ISBN order is patched from the first sync on, while a DB file out of
+     *        order is rewritten.
+     */
+    @Test
+    public void testFirstSyncAfterLoad() throws IOException {
+        String sep = bookDB.getLineSeparator();
+        String orderedContent = book2.toDBString() + sep + book.toDBString();
+        Files.writeString(Path.of("testBooksDB"), orderedContent);
+        bookSet.rebuildFromDB("testBooksDB");
+
+        // The first edit only goes to the journal
+        bookSet.addOrEditBook(book3);
+        assertEquals(orderedContent, Files.readString(Path.of("testBooksDB")));
+        Assertions.assertTrue(Files.exists(bookSet.getBookDB().getJournalPath()));
+        assertEquals(List.of(book2.toDBString(), book.toDBString(), book3.toDBString()),
+                bookSet.getBookDB().lines().toList());
+
+        // Out of order, the first edit rewrites the DB file in order
+        deleteDBFiles("testBooksDB");
+        Files.writeString(Path.of("testBooksDB"), book.toDBString() + sep + book2.toDBString());
+        bookSet.rebuildFromDB("testBooksDB");
+
+        bookSet.addOrEditBook(book3);
+        assertEquals(String.join(sep, book2.toDBString(), book.toDBString(), book3.toDBString()),
+                Files.readString(Path.of("testBooksDB")));
+    }
 }
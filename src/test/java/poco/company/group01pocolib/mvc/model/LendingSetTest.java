@@ -18,7 +18,11 @@ import java.io.ObjectInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -90,16 +94,17 @@ public class LendingSetTest {
     public void tearDown() {
         // Cleanup: delete test serialization files and DB files
         deleteFileIfExists("testLendingSet.ser");
-        deleteFileIfExists("testLendingsDB");
+        deleteDBFiles("testLendingsDB");
+        deleteArchiveFiles();
         deleteFileIfExists("testBookSet.ser");
-        deleteFileIfExists("testBooksDB");
+        deleteDBFiles("testBooksDB");
         deleteFileIfExists("testUserSet.ser");
-        deleteFileIfExists("testUsersDB");
+        deleteDBFiles("testUsersDB");
         deleteFileIfExists("anotherTestLendingSet.ser");
-        deleteFileIfExists("anotherTestLendingsDB");
+        deleteDBFiles("anotherTestLendingsDB");
         deleteFileIfExists("testLoadHashMatch.ser");
         deleteFileIfExists("testLoadHashMismatch.ser");
-        deleteFileIfExists("testHashMismatchDB");
+        deleteDBFiles("testHashMismatchDB");
         deleteFileIfExists("testCorrupted.ser");
         deleteFileIfExists("nonExistent.ser");
     }
@@ -111,6 +116,29 @@ public class LendingSetTest {
         }
     }
 
+    /**
+     * @brief Deletes a DB file along with the files the DB keeps next to it (journal, sidecar, record snapshot...).
+     * @param DBPath The path of the DB file.
+     */
+    private void deleteDBFiles(String DBPath) {
+        deleteFileIfExists(DBPath);
+        for (String extension : new String[] {DB.JOURNAL_EXTENSION, DB.TEMP_EXTENSION, DB.RECORDS_EXTENSION,
+                                              DB.QUARANTINE_EXTENSION, DB.METADATA_EXTENSION}) {
+            deleteFileIfExists(DBPath + extension);
+        }
+    }
+
+    private void deleteArchiveFiles() {
+        // The archive file, its partitions and its ledger
+        File[] files = new File(".").listFiles((directory, name) ->
+                name.startsWith("testLendingsDB" + LendingSet.ARCHIVE_EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
     /**
      * @brief Tests that a LendingSet object is created correctly with default constructor.
      */
@@ -528,4 +556,116 @@ public class LendingSetTest {
 
     }
 
-}    
+    /**
+     * @brief Tests that old returned lendings are moved to the archive, which is searched when the live set has too
+     *        few results, survives a rebuild of the set and records removals.
+     */
+    @Test
+    public void testArchiveOldLendings() {
+        Lending old = new Lending(lending2.getBook(), lending3.getUser(), LocalDate.now().minusDays(400));
+        old.getUser().incrementBorrowedBooksCount();
+        old.getBook().lendCopy();
+        old.setReturned();
+        lendingSet.addOrEditLending(lending);
+        lendingSet.addOrEditLending(old);
+        lendingSet.linkSets(bookSet, userSet);
+
+        assertEquals(1, lendingSet.archiveOldLendings());
+        assertEquals(1, lendingSet.size());
+        assertNull(lendingSet.getLending(old.getLendingId()));
+        assertEquals(List.of(old), lendingSet.getArchivedLendings());
+        assertEquals(0, lendingSet.archiveOldLendings());
+
+        // Too few lendings of the live set match, so the archive is searched too
+        assertEquals(old, lendingSet.search("Hobbit").get(0).item);
+        assertTrue(lendingSet.search("Hobbit", false).stream().noneMatch(result -> result.item.equals(old)));
+
+        // The archive is found again by a rebuilt set, whose new lendings don't reuse the archived IDs
+        LendingSet rebuilt = new LendingSet();
+        rebuilt.rebuildFromDB("testLendingsDB", bookSet, userSet);
+        assertEquals(1, rebuilt.size());
+        assertEquals(List.of(old), rebuilt.getArchivedLendings());
+        assertTrue(Lending.getLendingCounter() >= old.getLendingId());
+
+        lendingSet.removeLending(old);
+        rebuilt.rebuildFromDB("testLendingsDB", bookSet, userSet);
+        assertTrue(rebuilt.getArchivedLendings().isEmpty());
+    }
+
+    /**
+     * @brief Tests that the archive is partitioned by return year, that partitions are loaded on their own, and that
+     *        only the partitions of the archived lendings are written.
+     */
+    @Test
+    public void testArchivePartitions() throws IOException {
+        // Return dates more than a year apart are in different years
+        Lending recent = new Lending(lending2.getBook(), lending3.getUser(), LocalDate.now().minusDays(400));
+        Lending older = new Lending(lending3.getBook(), lending2.getUser(), LocalDate.now().minusDays(800));
+        int recentYear = recent.getReturnDate().getYear();
+        int olderYear = older.getReturnDate().getYear();
+        for (Lending returned : List.of(recent, older)) {
+            returned.getUser().incrementBorrowedBooksCount();
+            returned.getBook().lendCopy();
+            returned.setReturned();
+            lendingSet.addOrEditLending(returned);
+        }
+        lendingSet.linkSets(bookSet, userSet);
+
+        assertEquals(2, lendingSet.archiveOldLendings());
+        Map<Integer, String> hashes = lendingSet.getArchivePartitionHashes();
+        assertEquals(Set.of(recentYear, olderYear), hashes.keySet());
+
+        // Partitions are read one at a time, and the highest archived ID is read from the ledger alone
+        LendingArchive archive = new LendingArchive(Path.of("testLendingsDB" + LendingSet.ARCHIVE_EXTENSION));
+        assertEquals(List.of(recentYear, olderYear), archive.getYears());
+        assertEquals(older.getLendingId(), archive.getMaxLendingId());
+        assertTrue(archive.getLendings().isEmpty());
+        archive.loadYear(recentYear, bookSet, userSet, Set.of());
+        assertFalse(archive.isLoaded());
+        assertEquals(List.of(recent), new ArrayList<>(archive.getLendings()));
+        assertNull(archive.get(older.getLendingId()));
+
+        // A lending archived again in another year is written to that partition only, and the ledger moves it there
+        lendingSet.addOrEditLending(recent);
+        recent.setReturnDate(older.getReturnDate());
+        lendingSet.addOrEditLending(recent);
+        assertEquals(1, lendingSet.archiveOldLendings());
+        assertEquals(hashes.get(recentYear), lendingSet.getArchivePartitionHashes().get(recentYear));
+        assertNotEquals(hashes.get(olderYear), lendingSet.getArchivePartitionHashes().get(olderYear));
+
+        archive = new LendingArchive(Path.of("testLendingsDB" + LendingSet.ARCHIVE_EXTENSION));
+        archive.loadYear(recentYear, bookSet, userSet, Set.of());
+        assertTrue(archive.getLendings().isEmpty());
+        archive.load(bookSet, userSet, Set.of());
+        assertEquals(Set.of(recent, older), new HashSet<>(archive.getLendings()));
+
+        // Removals go to the ledger, the partitions are not written
+        hashes = lendingSet.getArchivePartitionHashes();
+        lendingSet.removeLending(older);
+        assertEquals(hashes, lendingSet.getArchivePartitionHashes());
+        archive = new LendingArchive(Path.of("testLendingsDB" + LendingSet.ARCHIVE_EXTENSION));
+        archive.load(bookSet, userSet, Set.of());
+        assertEquals(List.of(recent), new ArrayList<>(archive.getLendings()));
+    }
+
+    /**
+     * @brief Tests that, once the DB file is loaded in ID order, a checkout only appends its lending to the journal,
+     *        whatever the size of the history.
+     */
+    @Test
+    public void testCheckoutAppendsToJournal() throws IOException {
+        String content = lending.toDBString() + lendingDB.getLineSeparator() + lending2.toDBString();
+        Files.writeString(Path.of("testLendingsDB"), content);
+        lendingSet.rebuildFromDB("testLendingsDB", bookSet, userSet);
+        DB journaledDB = lendingSet.getLendingDB();
+
+        lendingSet.addOrEditLending(lending3);
+        assertEquals(content, Files.readString(Path.of("testLendingsDB")));
+
+        long delta = Files.size(journaledDB.getJournalPath());
+        assertTrue(delta > lending3.toDBString().length() && delta < lending3.toDBString().length() + 128,
+                "Journal grew by " + delta + " bytes");
+        assertEquals(List.of(lending.toDBString(), lending2.toDBString(), lending3.toDBString()),
+                journaledDB.lines().toList());
+    }
+}
@@ -9,9 +9,11 @@ import org.junit.jupiter.api.Test;
 
 import poco.company.group01pocolib.db.DB;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
 import java.time.LocalDate;
 import java.util.Arrays;
 
@@ -47,6 +49,17 @@ public class LendingTest {
         testReturnDate = LocalDate.of(2025, 12, 31);
 
     }
+
+    /**
+     * @brief Deletes the DB files (and their metadata sidecars) created by the tests.
+     */
+    @AfterEach
+    public void tearDown() {
+        for (String DBPath : new String[] {"books.db", "users.db"}) {
+            new File(DBPath).delete();
+            new File(DBPath + DB.METADATA_EXTENSION).delete();
+        }
+    }
     
     /**
      * @brief Tests that a Lending object is created correctly when valid arguments are provided.
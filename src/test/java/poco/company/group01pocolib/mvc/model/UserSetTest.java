@@ -50,13 +50,13 @@ public class UserSetTest {
     public void tearDown() {
         // Cleanup: delete test serialization files and DB files
         deleteFileIfExists("testUserSet.ser");
-        deleteFileIfExists("testUsersDB");
-        deleteFileIfExists("newTestDB");
+        deleteDBFiles("testUsersDB");
+        deleteDBFiles("newTestDB");
         deleteFileIfExists("anotherTestUserSet.ser");
-        deleteFileIfExists("anotherTestUsersDB");
+        deleteDBFiles("anotherTestUsersDB");
         deleteFileIfExists("testLoadHashMatch.ser");
         deleteFileIfExists("testLoadHashMismatch.ser");
-        deleteFileIfExists("testHashMismatchDB");
+        deleteDBFiles("testHashMismatchDB");
         deleteFileIfExists("testCorrupted.ser");
         deleteFileIfExists("testCycle.ser");
     }
@@ -68,6 +68,18 @@ public class UserSetTest {
         }
     }
 
+    /**
+     * @brief Deletes a DB file along with the files the DB keeps next to it (journal, sidecar, record snapshot...).
+     * @param DBPath The path of the DB file.
+     */
+    private void deleteDBFiles(String DBPath) {
+        deleteFileIfExists(DBPath);
+        for (String extension : new String[] {DB.JOURNAL_EXTENSION, DB.TEMP_EXTENSION, DB.RECORDS_EXTENSION,
+                                              DB.QUARANTINE_EXTENSION, DB.METADATA_EXTENSION}) {
+            deleteFileIfExists(DBPath + extension);
+        }
+    }
+
 
     /**
      * @brief Tests that a UserSet object is created correctly.